@@ -0,0 +1,107 @@
+package com.example.orderdemo.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AIMD concurrency limit of one endpoint. Requests take a slot with {@link #tryAcquire()} and give it back
+ * with their latency; {@link #adjust(String)} runs on the control thread once per interval:
+ * any overload signal cuts the limit by {@code backoff}, otherwise it grows by {@code increase} while
+ * the limit is actually being used. Latency counts as a signal when the interval's mean exceeds
+ * {@code latencyTolerance} x the no-load baseline (and {@code latencyFloor}).
+ */
+final class AdaptiveLimit {
+    /* the limit only grows when requests came close to it during the interval */
+    private static final double USED_FRACTION = 0.8;
+    /* how fast the baseline follows latency upwards; it follows it downwards at once */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoff;
+    private final int increase;
+    private final double latencyTolerance;
+    private final long latencyFloorNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile int limit;
+    /* control thread only */
+    private double baselineNanos;
+
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double backoff, int increase,
+                  double latencyTolerance, long latencyFloorNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoff = backoff;
+        this.increase = increase;
+        this.latencyTolerance = latencyTolerance;
+        this.latencyFloorNanos = latencyFloorNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    boolean tryAcquire() {
+        int n;
+        do {
+            n = inFlight.get();
+            if (n >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(n, n + 1));
+        peakInFlight.accumulateAndGet(n + 1, Math::max);
+        return true;
+    }
+
+    /** @param overloaded the handler itself shed the request (429) or failed (5xx) */
+    void release(long elapsedNanos, boolean overloaded) {
+        inFlight.decrementAndGet();
+        completed.increment();
+        latencyNanos.add(elapsedNanos);
+        if (overloaded) {
+            failed.increment();
+        }
+    }
+
+    /**
+     * One control step.
+     *
+     * @param sharedSignal overload seen outside the endpoint (producer window, connection pool), null if none
+     * @return why the limit was cut, or null if it was not
+     */
+    String adjust(String sharedSignal) {
+        long n = completed.sumThenReset();
+        long total = latencyNanos.sumThenReset();
+        long failures = failed.sumThenReset();
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        double mean = n == 0 ? 0 : (double) total / n;
+
+        String signal = sharedSignal;
+        if (failures > 0) {
+            signal = "errors";
+        } else if (n > 0 && baselineNanos > 0 && mean > Math.max(baselineNanos * latencyTolerance, latencyFloorNanos)) {
+            signal = "latency";
+        }
+        if (signal != null) {
+            limit = Math.max(minLimit, (int) (limit * backoff));
+            return signal;
+        }
+        if (n > 0) {
+            baselineNanos = baselineNanos == 0 || mean < baselineNanos
+                    ? mean : baselineNanos + (mean - baselineNanos) * BASELINE_DRIFT;
+        }
+        if (peak >= limit * USED_FRACTION) {
+            limit = Math.min(maxLimit, limit + increase);
+        }
+        return null;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.orderdemo.controller;
+
+import com.example.orderdemo.rocketmq.ProducerPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 下单/支付/发货接口的自适应准入控制（app.admission.*，默认关闭，app.admission.enabled=true 时启用）
+ * 每个接口一个并发上限（AdaptiveLimit，AIMD）：在途请求达到上限时立即返回 429 + Retry-After，
+ * 不在 Tomcat 里排队等到一起超时，过载时尾延迟有界。
+ * 控制线程每个 interval 调整一次上限，下列任一信号出现就按 backoff 乘性下调，否则在上限被用满时加性上调：
+ * 生产者在途窗口占用超过 producerHighWater；Hikari 取连接平均等待超过 poolWait（hikaricp.connections.acquire）；
+ * 接口自身平均延迟超过基线的 latencyTolerance 倍；处理中被降载（BackpressureException → 429）或 5xx。
+ * 异步接口（pay / ship 返回 CompletableFuture）在异步完成时才释放名额。
+ */
+@Component
+@ConditionalOnProperty(name = "app.admission.enabled", havingValue = "true")
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final String BASE = "/api/orders";
+    private static final Pattern PAY = Pattern.compile("/api/orders/[^/]+/pay");
+    private static final Pattern SHIP = Pattern.compile("/api/orders/[^/]+/ship");
+    private static final List<String> SIGNALS = List.of("producer", "pool", "latency", "errors");
+
+    private final ProducerPool producers;
+    private final MeterRegistry registry;
+    private final double producerHighWater;
+    private final long poolWaitNanos;
+    private final String retryAfterSeconds;
+    private final Map<String, AdaptiveLimit> limits = new LinkedHashMap<>();
+    private final Map<String, Counter> rejected = new LinkedHashMap<>();
+    private final Map<String, Counter> decreases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService control;
+    /* cumulative Hikari acquire count / time at the previous step, control thread only */
+    private long lastAcquireCount;
+    private double lastAcquireNanos;
+
+    public AdmissionControlFilter(ProducerPool producers,
+                                  MeterRegistry registry,
+                                  @Value("${app.admission.interval:100ms}") Duration interval,
+                                  @Value("${app.admission.initialLimit:100}") int initialLimit,
+                                  @Value("${app.admission.minLimit:8}") int minLimit,
+                                  @Value("${app.admission.maxLimit:1000}") int maxLimit,
+                                  @Value("${app.admission.backoff:0.9}") double backoff,
+                                  @Value("${app.admission.increase:2}") int increase,
+                                  @Value("${app.admission.latencyTolerance:2.0}") double latencyTolerance,
+                                  @Value("${app.admission.latencyFloor:20ms}") Duration latencyFloor,
+                                  @Value("${app.admission.producerHighWater:0.8}") double producerHighWater,
+                                  @Value("${app.admission.poolWait:20ms}") Duration poolWait,
+                                  @Value("${app.admission.retryAfter:1s}") Duration retryAfter) {
+        this.producers = producers;
+        this.registry = registry;
+        this.producerHighWater = producerHighWater;
+        this.poolWaitNanos = poolWait.toNanos();
+        this.retryAfterSeconds = String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+        for (String endpoint : List.of("create", "batch", "pay", "ship")) {
+            AdaptiveLimit limit = new AdaptiveLimit(initialLimit, minLimit, maxLimit, backoff, increase,
+                    latencyTolerance, latencyFloor.toNanos());
+            limits.put(endpoint, limit);
+            Gauge.builder("http.admission.limit", limit, AdaptiveLimit::limit)
+                    .description("Current concurrency limit")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            Gauge.builder("http.admission.inflight", limit, AdaptiveLimit::inFlight)
+                    .description("Admitted requests not yet completed")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            rejected.put(endpoint, Counter.builder("http.admission.rejected")
+                    .description("Requests rejected with 429 because the endpoint was at its limit")
+                    .tag("endpoint", endpoint)
+                    .register(registry));
+            for (String signal : SIGNALS) {
+                decreases.put(endpoint + "/" + signal, Counter.builder("http.admission.decreases")
+                        .description("Limit cuts by the signal that caused them")
+                        .tag("endpoint", endpoint)
+                        .tag("signal", signal)
+                        .register(registry));
+            }
+        }
+        this.control = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("admission-control").daemon(true).factory());
+        long every = interval.toMillis();
+        this.control.scheduleWithFixedDelay(this::adjust, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return endpoint(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String endpoint = endpoint(request);
+        AdaptiveLimit limit = limits.get(endpoint);
+        if (!limit.tryAcquire()) {
+            rejected.get(endpoint).increment();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many concurrent " + endpoint + " requests\"}");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            limit.release(System.nanoTime() - start, true);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new Release(limit, start));
+        } else {
+            limit.release(System.nanoTime() - start, overloaded(response.getStatus()));
+        }
+    }
+
+    /* the slot of an async request is held until the response is complete */
+    private record Release(AdaptiveLimit limit, long start) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            int status = event.getSuppliedResponse() instanceof HttpServletResponse r ? r.getStatus() : 200;
+            limit.release(System.nanoTime() - start, overloaded(status));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private static boolean overloaded(int status) {
+        return status == HttpStatus.TOO_MANY_REQUESTS.value() || status >= 500;
+    }
+
+    private static String endpoint(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals(BASE)) {
+            return "create";
+        }
+        if (path.equals(BASE + "/batch")) {
+            return "batch";
+        }
+        if (PAY.matcher(path).matches()) {
+            return "pay";
+        }
+        if (SHIP.matcher(path).matches()) {
+            return "ship";
+        }
+        return null;
+    }
+
+    private void adjust() {
+        try {
+            double poolWait = meanPoolWaitNanos();
+            String shared = producers.inFlight() >= producers.maxInFlight() * producerHighWater ? "producer"
+                    : poolWaitNanos > 0 && poolWait > poolWaitNanos ? "pool" : null;
+            limits.forEach((endpoint, limit) -> {
+                String signal = limit.adjust(shared);
+                if (signal != null) {
+                    decreases.get(endpoint + "/" + signal).increment();
+                    log.debug("Admission limit of {} cut to {} ({})", endpoint, limit.limit(), signal);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Admission control step failed", e);
+        }
+    }
+
+    /** Mean Hikari connection acquire time since the previous step; 0 before the pool has metrics. */
+    private double meanPoolWaitNanos() {
+        long count = 0;
+        double nanos = 0;
+        for (Timer t : registry.find("hikaricp.connections.acquire").timers()) {
+            count += t.count();
+            nanos += t.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long n = count - lastAcquireCount;
+        double wait = nanos - lastAcquireNanos;
+        lastAcquireCount = count;
+        lastAcquireNanos = nanos;
+        return n <= 0 ? 0 : wait / n;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        control.shutdownNow();
+    }
+}
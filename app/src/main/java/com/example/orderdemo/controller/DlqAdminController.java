@@ -0,0 +1,94 @@
+package com.example.orderdemo.controller;
+
+import com.example.orderdemo.rocketmq.DlqReplayer;
+import com.example.orderdemo.rocketmq.DlqStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 死信回放管理接口
+ * GET  /admin/dlq               存储情况（按消费组、状态计数）与当前回放任务进度
+ * POST /admin/dlq/replay        {"group": "OrderFifoGroup", "limit": 10000, "rate": 200}，字段都可省略
+ * POST /admin/dlq/replay/rate   {"rate": 500}，运行中调整速率
+ * POST /admin/dlq/replay/stop   当前批次发完后停止，未发送的行保持 PENDING
+ */
+@RestController
+@RequestMapping("/admin/dlq")
+public class DlqAdminController {
+
+    private final DlqStore store;
+    private final DlqReplayer replayer;
+
+    public DlqAdminController(DlqStore store, DlqReplayer replayer) {
+        this.store = store;
+        this.replayer = replayer;
+    }
+
+    @GetMapping
+    public Map<String, Object> status() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("pending", store.pending());
+        res.put("capacity", store.capacity());
+        try {
+            res.put("groups", store.countByStatus());
+        } catch (RuntimeException e) {
+            res.put("groups", Map.of());
+        }
+        res.put("replay", replayer.status());
+        return res;
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<Object> replay(@RequestBody(required = false) Map<String, Object> body) {
+        Map<String, Object> req = body == null ? Map.of() : body;
+        Object group = req.get("group");
+        long limit;
+        try {
+            limit = req.containsKey("limit") ? Long.parseLong(String.valueOf(req.get("limit"))) : 0;
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be an integer"));
+        }
+        Double rate = req.containsKey("rate") ? parseRate(req.get("rate")) : null;
+        if (req.containsKey("rate") && rate == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "rate must be positive"));
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(replayer.start(group == null ? null : String.valueOf(group), limit, rate));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/replay/rate")
+    public ResponseEntity<Object> rate(@RequestBody Map<String, Object> body) {
+        Double rate = parseRate(body.get("rate"));
+        if (rate == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "rate must be positive"));
+        }
+        try {
+            return ResponseEntity.ok(replayer.setRate(rate));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/replay/stop")
+    public DlqReplayer.Status stop() {
+        return replayer.stop();
+    }
+
+    /** Returns the rate as a positive finite number, or null when it is missing or not one. */
+    private static Double parseRate(Object value) {
+        try {
+            double rate = Double.parseDouble(String.valueOf(value));
+            return rate > 0 && Double.isFinite(rate) ? rate : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.orderdemo.controller;
+
+import com.example.orderdemo.service.OrderAnalytics;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 订单实时统计（只读），数据来自本实例的内存计数，不查询 orders 表
+ * GET /admin/analytics?window=1m   最近一段时间（不超过 app.order.analytics.window）的各状态迁移速率、GMV、支付耗时分布
+ */
+@RestController
+@RequestMapping("/admin/analytics")
+public class OrderAnalyticsController {
+
+    private final OrderAnalytics analytics;
+
+    public OrderAnalyticsController(OrderAnalytics analytics) {
+        this.analytics = analytics;
+    }
+
+    @GetMapping
+    public ResponseEntity<Object> snapshot(@RequestParam(value = "window", defaultValue = "1m") String window) {
+        Duration d;
+        try {
+            d = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "window must be a duration such as 30s or 5m"));
+        }
+        if (d.isNegative() || d.isZero()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "window must be positive"));
+        }
+        return ResponseEntity.ok(analytics.snapshot(d));
+    }
+}
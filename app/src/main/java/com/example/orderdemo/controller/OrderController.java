@@ -1,37 +1,151 @@
 package com.example.orderdemo.controller;
 
+import com.example.orderdemo.model.OrderView;
+import com.example.orderdemo.rocketmq.BackpressureException;
+import com.example.orderdemo.service.AsyncOrderCreator;
+import com.example.orderdemo.service.BulkOrderCreator;
 import com.example.orderdemo.service.OrderService;
+import com.example.orderdemo.service.OrderStateCache;
+import com.example.orderdemo.service.OutboxOrderCreator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
     private final OrderService orderService;
+    private final AsyncOrderCreator asyncOrderCreator;
+    private final BulkOrderCreator bulkOrderCreator;
+    private final OutboxOrderCreator outboxOrderCreator;
+    private final OrderStateCache stateCache;
+    private final String createMode;
+    private final int maxBulkQuery;
+    private final int maxBatchCreate;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService,
+                           AsyncOrderCreator asyncOrderCreator,
+                           BulkOrderCreator bulkOrderCreator,
+                           OutboxOrderCreator outboxOrderCreator,
+                           OrderStateCache stateCache,
+                           @Value("${app.order.createMode:sync}") String createMode,
+                           @Value("${app.order.maxBulkQuery:200}") int maxBulkQuery,
+                           @Value("${app.order.batchCreate.maxSize:500}") int maxBatchCreate) {
         this.orderService = orderService;
+        this.asyncOrderCreator = asyncOrderCreator;
+        this.stateCache = stateCache;
+        this.maxBulkQuery = maxBulkQuery;
+        this.maxBatchCreate = maxBatchCreate;
+        this.bulkOrderCreator = bulkOrderCreator;
+        this.outboxOrderCreator = outboxOrderCreator;
+        this.createMode = createMode.toLowerCase();
     }
 
     @PostMapping
     public Map<String, Object> create (@RequestBody Map<String, Object> body) throws Exception {
         BigDecimal amount = new BigDecimal(String.valueOf(body.getOrDefault("amount", "0")));
-        String id = orderService.create(amount);
+        String id = switch (createMode) {
+            case "async" -> asyncOrderCreator.create(amount);
+            case "outbox" -> outboxOrderCreator.create(amount);
+            default -> orderService.create(amount);
+        };
         return Map.of("orderId", id, "status", "CREATED");
     }
 
+    /**
+     * Bulk create: {"orders": [{"amount": 10}, ...]}.
+     * Valid entries are created together (one transaction, one half message, one delay message per shard);
+     * invalid ones are reported as REJECTED, those of a shard whose transaction failed as FAILED.
+     * results[i] answers orders[i].
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Object>> createBatch (@RequestBody Map<String, List<Map<String, Object>>> body) throws Exception {
+        List<Map<String, Object>> orders = body.get("orders");
+        if (orders == null || orders.isEmpty() || orders.size() > maxBatchCreate) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "orders must contain 1.." + maxBatchCreate + " entries"));
+        }
+        List<Map<String, Object>> results = new ArrayList<>(orders.size());
+        List<BigDecimal> amounts = new ArrayList<>(orders.size());
+        List<Integer> accepted = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            BigDecimal amount = parseAmount(orders.get(i));
+            if (amount == null) {
+                results.add(Map.of("index", i, "status", "REJECTED", "error", "invalid amount"));
+            } else {
+                results.add(null);
+                amounts.add(amount);
+                accepted.add(i);
+            }
+        }
+        int created = 0;
+        if (!amounts.isEmpty()) {
+            List<String> ids = bulkOrderCreator.create(amounts);
+            for (int j = 0; j < ids.size(); j++) {
+                String id = ids.get(j);
+                if (id == null) {
+                    results.set(accepted.get(j), Map.of("index", accepted.get(j), "status", "FAILED",
+                            "error", "shard transaction failed"));
+                } else {
+                    results.set(accepted.get(j), Map.of("index", accepted.get(j), "orderId", id, "status", "CREATED"));
+                    created++;
+                }
+            }
+        }
+        return ResponseEntity.ok(Map.of("created", created, "results", results));
+    }
+
+    private static BigDecimal parseAmount(Map<String, Object> order) {
+        try {
+            BigDecimal amount = new BigDecimal(String.valueOf(order == null ? "0" : order.getOrDefault("amount", "0")));
+            return amount.signum() < 0 ? null : amount;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @GetMapping("/{orderId}")
+    public ResponseEntity<OrderView> get (@PathVariable String orderId) {
+        return ResponseEntity.of(stateCache.get(orderId));
+    }
+
+    /** Bulk status query: GET /api/orders?ids=a,b,c; unknown ids are omitted. */
+    @GetMapping
+    public ResponseEntity<Collection<OrderView>> getAll (@RequestParam("ids") List<String> ids) {
+        if (ids.size() > maxBulkQuery) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(stateCache.getAll(new LinkedHashSet<>(ids)).values());
+    }
+
     @PostMapping("/{orderId}/pay")
-    public Map<String, Object> pay (@PathVariable String orderId) throws Exception {
-        orderService.pay(orderId);
-        return Map.of("orderId", orderId, "event", "PAID(queued");
+    public CompletableFuture<Map<String, Object>> pay (@PathVariable String orderId) {
+        return orderService.pay(orderId)
+                .thenApply(r -> Map.of("orderId", orderId, "event", r == null ? "PAID(spooled)" : "PAID(queued)"));
     }
 
     @PostMapping("/{orderId}/ship")
-    public Map<String, Object> ship (@PathVariable String orderId) throws Exception {
-        orderService.ship(orderId);
-        return Map.of("orderId", orderId, "event", "SHIPPED(queued");
+    public CompletableFuture<Map<String, Object>> ship (@PathVariable String orderId) {
+        return orderService.ship(orderId)
+                .thenApply(r -> Map.of("orderId", orderId, "event", r == null ? "SHIPPED(spooled)" : "SHIPPED(queued)"));
+    }
+
+    /** Producer in-flight window is full: tell the caller to back off instead of queueing. */
+    @ExceptionHandler(BackpressureException.class)
+    public ResponseEntity<Map<String, Object>> backpressure (BackpressureException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
     }
 }
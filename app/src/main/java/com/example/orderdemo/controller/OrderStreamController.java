@@ -0,0 +1,55 @@
+package com.example.orderdemo.controller;
+
+import com.example.orderdemo.service.OrderStatusStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 订单状态推送（Server-Sent Events），替代对 GET /api/orders/{orderId} 的轮询
+ * 事件：status（一次状态变更，id 为序号）、snapshot（单订单订阅的当前状态）、
+ * reset（续传位置已不在缓冲内，应重新查询状态）、dropped（消费过慢被断开，可带 Last-Event-ID 重连）
+ * 续传：浏览器 EventSource 重连时自动带 Last-Event-ID；首次连接也可以用 ?since=序号
+ */
+@RestController
+@RequestMapping("/api/orders")
+public class OrderStreamController {
+
+    private final OrderStatusStream stream;
+
+    public OrderStreamController(OrderStatusStream stream) {
+        this.stream = stream;
+    }
+
+    /** Every transition applied by this instance. */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> all (@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                           @RequestParam(value = "since", required = false) Long since) {
+        try {
+            return ResponseEntity.ok(stream.subscribeAll(lastEventId != null ? lastEventId : since));
+        } catch (IllegalStateException e) {
+            return tooMany();
+        }
+    }
+
+    /** One order; the stream ends once the order is SHIPPED or CANCELLED. */
+    @GetMapping(path = "/{orderId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> one (@PathVariable String orderId,
+                                           @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                           @RequestParam(value = "since", required = false) Long since) {
+        try {
+            return ResponseEntity.ok(stream.subscribeOrder(orderId, lastEventId != null ? lastEventId : since));
+        } catch (IllegalStateException e) {
+            return tooMany();
+        }
+    }
+
+    private static ResponseEntity<SseEmitter> tooMany() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.orderdemo.controller;
+
+import com.example.orderdemo.sharding.ShardRebalancer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 分片搬迁管理接口（见 ShardRebalancer）
+ * GET  /admin/shards                   分片数与当前（或上一次）搬迁任务进度
+ * POST /admin/shards/rebalance         {"dryRun": true, "chunk": 1000}，字段都可省略（默认真实搬迁）
+ * POST /admin/shards/rebalance/stop    当前分块完成后停止，重新执行会从头扫描并接着搬
+ */
+@RestController
+@RequestMapping("/admin/shards")
+public class ShardAdminController {
+
+    private final ShardRebalancer rebalancer;
+
+    public ShardAdminController(ShardRebalancer rebalancer) {
+        this.rebalancer = rebalancer;
+    }
+
+    @GetMapping
+    public ShardRebalancer.Status status() {
+        return rebalancer.status();
+    }
+
+    @PostMapping("/rebalance")
+    public ResponseEntity<Object> rebalance(@RequestBody(required = false) Map<String, Object> body) {
+        Map<String, Object> req = body == null ? Map.of() : body;
+        boolean dryRun = Boolean.parseBoolean(String.valueOf(req.getOrDefault("dryRun", "false")));
+        int chunk;
+        try {
+            chunk = req.containsKey("chunk") ? Integer.parseInt(String.valueOf(req.get("chunk"))) : 0;
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "chunk must be an integer"));
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(rebalancer.start(dryRun, chunk));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/rebalance/stop")
+    public ShardRebalancer.Status stop() {
+        return rebalancer.stop();
+    }
+}
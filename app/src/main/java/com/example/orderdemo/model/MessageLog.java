@@ -6,17 +6,20 @@ import java.sql.Timestamp;
 
 /**
  * 用于实现 消息幂等性处理 的实体类，它在分布式消息系统中起到防止消息重复处理的关键作用。
+ * 按天分桶（bucket = UTC 纪元日），表按 bucket RANGE 分区；去重只在保留期内的桶中查找，
+ * 过期的桶由 MessageLogRetention 整个分区删除（见 sql/schema.sql）。
  */
 @Entity
 @Table(name = "message_log", indexes = {
-        @Index(name = "uk_dedup_key", columnList = "dedupKey", unique = true)
+        @Index(name = "uk_dedup_key_bucket", columnList = "dedupKey, bucket", unique = true),
+        @Index(name = "idx_bucket", columnList = "bucket")
 })
 public class MessageLog {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true, length = 128)
+    @Column(nullable = false, length = 128)
     private String dedupKey;
 
     @Column(length = 128)
@@ -25,9 +28,24 @@ public class MessageLog {
     @Column(nullable = false, length = 16)
     private String status = "Success";
 
+    @Column(nullable = false, updatable = false)
+    private int bucket;
+
     @Column(nullable = false, insertable = false, updatable = false)
     private java.sql.Timestamp processedAt;
 
+    private static final long MILLIS_PER_BUCKET = 24L * 60 * 60 * 1000;
+
+    /** Bucket (UTC epoch day) a row written at {@code epochMillis} belongs to. */
+    public static int bucketOf(long epochMillis) {
+        return (int) Math.floorDiv(epochMillis, MILLIS_PER_BUCKET);
+    }
+
+    /** Number of whole buckets needed to cover the retention window. */
+    public static int bucketsFor(java.time.Duration retention) {
+        return (int) Math.max(1, (retention.toMillis() + MILLIS_PER_BUCKET - 1) / MILLIS_PER_BUCKET);
+    }
+
     public String getStatus() {
         return status;
     }
@@ -48,6 +66,10 @@ public class MessageLog {
         return id;
     }
 
+    public int getBucket() {
+        return bucket;
+    }
+
     public void setDedupKey(String dedupKey) {
         this.dedupKey = dedupKey;
     }
@@ -59,4 +81,8 @@ public class MessageLog {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    public void setBucket(int bucket) {
+        this.bucket = bucket;
+    }
 }
@@ -6,7 +6,8 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "orders", indexes = {
-        @Index(name="uk_order_id", columnList="orderId", unique = true)
+        @Index(name="uk_order_id", columnList="orderId", unique = true),
+        @Index(name="idx_status_created_at", columnList="status, createdAt")
 })
 public class Order {
     @Id
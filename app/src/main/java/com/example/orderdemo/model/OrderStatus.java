@@ -1,10 +1,48 @@
 package com.example.orderdemo.model;
 
-
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 public enum OrderStatus {
     CREATED,
     PAID,
     SHIPPED,
-    CANCELLED
+    CANCELLED;
+
+    /*
+     * 显式状态迁移表：目标状态 → 允许的来源状态
+     * 规则不再依赖枚举声明顺序（ordinal），新增状态时必须在这里声明它的来源
+     * CREATED → PAID → SHIPPED；CREATED → SHIPPED 保留原有规则（FIFO 消费保证先付款后发货）
+     * 只有未支付（CREATED）的订单可以被关闭
+     */
+    private static final Map<OrderStatus, Set<OrderStatus>> ALLOWED_FROM = new EnumMap<>(OrderStatus.class);
+
+    static {
+        ALLOWED_FROM.put(CREATED, Collections.unmodifiableSet(EnumSet.noneOf(OrderStatus.class)));
+        ALLOWED_FROM.put(PAID, Collections.unmodifiableSet(EnumSet.of(CREATED)));
+        ALLOWED_FROM.put(SHIPPED, Collections.unmodifiableSet(EnumSet.of(CREATED, PAID)));
+        ALLOWED_FROM.put(CANCELLED, Collections.unmodifiableSet(EnumSet.of(CREATED)));
+    }
+
+    /** Statuses an order may be in for a transition to this status to apply. */
+    public Set<OrderStatus> allowedFrom() {
+        return ALLOWED_FROM.get(this);
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return target.allowedFrom().contains(this);
+    }
+
+    /** No transition leaves this status (SHIPPED, CANCELLED). */
+    public boolean isTerminal() {
+        for (OrderStatus target : values()) {
+            if (canTransitionTo(target)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
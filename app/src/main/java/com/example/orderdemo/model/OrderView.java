@@ -0,0 +1,18 @@
+package com.example.orderdemo.model;
+
+import java.math.BigDecimal;
+
+/**
+ * 订单状态的只读视图，供查询接口和本地近端缓存使用
+ */
+public record OrderView(String orderId, OrderStatus status, BigDecimal amount, long updatedAt) {
+
+    public static OrderView of(Order o) {
+        long updated = o.getUpdatedAt() != null ? o.getUpdatedAt().getTime() : System.currentTimeMillis();
+        return new OrderView(o.getOrderId(), o.getStatus(), o.getAmount(), updated);
+    }
+
+    public OrderView withStatus(OrderStatus newStatus, long at) {
+        return new OrderView(orderId, newStatus, amount, at);
+    }
+}
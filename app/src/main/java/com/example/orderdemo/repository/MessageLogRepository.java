@@ -2,7 +2,29 @@ package com.example.orderdemo.repository;
 
 import com.example.orderdemo.model.MessageLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface MessageLogRepository extends JpaRepository<MessageLog, Long> {
     Optional<MessageLog> findByDedupKey(String dedupKey);
+
+    /**
+     * Insert-if-absent across the live buckets.
+     * NOT EXISTS only reads buckets >= minBucket (older partitions are pruned); the INSERT ... SELECT
+     * takes shared locks on what it reads, and uk_dedup_key_bucket catches a concurrent insert of
+     * the same key into the same bucket.
+     * @return 1 if the row was inserted, 0 if the dedupKey already exists in a live bucket
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO message_log (dedup_key, message_id, status, bucket) " +
+            "SELECT :dedupKey, :messageId, :status, :bucket FROM DUAL WHERE NOT EXISTS " +
+            "(SELECT 1 FROM message_log WHERE dedup_key = :dedupKey AND bucket >= :minBucket)", nativeQuery = true)
+    int insertIfAbsent(@Param("dedupKey") String dedupKey,
+                       @Param("messageId") String messageId,
+                       @Param("status") String status,
+                       @Param("bucket") int bucket,
+                       @Param("minBucket") int minBucket);
 }
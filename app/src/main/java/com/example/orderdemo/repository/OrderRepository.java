@@ -1,10 +1,34 @@
 package com.example.orderdemo.repository;
 
 import com.example.orderdemo.model.Order;
+import com.example.orderdemo.model.OrderStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order, Long>{
     Optional<Order> findByOrderId(String orderId);
     boolean existsByOrderId(String orderId);
+
+    List<Order> findByOrderIdIn(Collection<? extends String> orderIds);
+
+    /** One index lookup for a whole batch of transaction back-checks. */
+    @Query("select o.orderId from Order o where o.orderId in :orderIds")
+    List<String> findExistingOrderIds(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * Compare-and-set status change: one UPDATE, no entity load.
+     * updated_at is maintained by the column's ON UPDATE CURRENT_TIMESTAMP.
+     * @return 1 if the order was in one of {@code from} and now has {@code target}, 0 otherwise
+     */
+    @Modifying
+    @Query("update Order o set o.status = :target where o.orderId = :orderId and o.status in :from")
+    int transition(@Param("orderId") String orderId,
+                   @Param("target") OrderStatus target,
+                   @Param("from") Collection<OrderStatus> from);
 }
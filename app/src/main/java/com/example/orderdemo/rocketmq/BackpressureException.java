@@ -0,0 +1,11 @@
+package com.example.orderdemo.rocketmq;
+
+/**
+ * 生产者在途消息数达到上限时立即抛出，由 Controller 转换为 429，
+ * 而不是让请求线程排队等待 send 超时。
+ */
+public class BackpressureException extends RuntimeException {
+    public BackpressureException(String message) {
+        super(message);
+    }
+}
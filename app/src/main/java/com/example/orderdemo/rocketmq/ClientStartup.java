@@ -0,0 +1,284 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.ClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * RocketMQ 客户端启动（app.rocketmq.startup.*）
+ * sequential（默认）：Bean 创建时逐个握手，和以前一样，任何一个失败应用就启动失败。
+ * parallel：所有客户端提交到后台线程池并行创建，Bean 创建不等待握手；失败按指数退避重试，直到成功或应用关闭。
+ *   生产者 Bean 是 DeferredProducer：就绪前的异步发送排在创建完成之后，同步调用最多等待 awaitTimeout。
+ *   必需的客户端（生产者）全部就绪前，健康检查 rocketmqClients 为 OUT_OF_SERVICE，它属于 readiness 组，
+ *   负载均衡不会把流量导到还没连上 Proxy 的节点。
+ * 延迟启动（startLazily，用于 DLQ 监听）：应用就绪且必需的客户端都起来之后，再等 lazyDelay 才创建，两种模式都适用。
+ * 每个客户端的开始时刻、握手耗时、尝试次数记录在健康详情（仅对已认证调用方展示）与 rocketmq.client.startup 指标中，
+ * 全部完成后打印一行汇总。
+ */
+@Component
+public class ClientStartup {
+    private static final Logger log = LoggerFactory.getLogger(ClientStartup.class);
+
+    private final boolean parallel;
+    private final long awaitTimeoutMillis;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    private final long lazyDelayMillis;
+    private final MeterRegistry registry;
+    private final ScheduledExecutorService executor;
+    private final long createdAt = System.nanoTime();
+    private final Map<String, Entry> clients = new LinkedHashMap<>();
+    private final List<Runnable> lazy = new ArrayList<>();
+    private volatile boolean closing;
+
+    /** Where one client's startup stands; offsets are from the start of the context. */
+    public record ClientTiming(String state, boolean required, long startedAtMillis, Long tookMillis,
+                               int attempts, String error) {}
+
+    private static final class Entry {
+        final boolean required;
+        final CompletableFuture<? extends Closeable> future;
+        volatile String state = "PENDING";
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile int attempts;
+        volatile String error;
+
+        Entry(boolean required, CompletableFuture<? extends Closeable> future) {
+            this.required = required;
+            this.future = future;
+        }
+    }
+
+    public ClientStartup(MeterRegistry registry,
+                         @Value("${app.rocketmq.startup.mode:sequential}") String mode,
+                         @Value("${app.rocketmq.startup.threads:8}") int threads,
+                         @Value("${app.rocketmq.startup.awaitTimeout:5s}") Duration awaitTimeout,
+                         @Value("${app.rocketmq.startup.retryBackoff:1s}") Duration retryBackoff,
+                         @Value("${app.rocketmq.startup.maxRetryBackoff:30s}") Duration maxRetryBackoff,
+                         @Value("${app.rocketmq.startup.lazyDelay:30s}") Duration lazyDelay) {
+        this.registry = registry;
+        this.parallel = switch (mode.toLowerCase()) {
+            case "parallel" -> true;
+            case "sequential" -> false;
+            default -> throw new IllegalArgumentException("app.rocketmq.startup.mode must be sequential or parallel, got " + mode);
+        };
+        this.awaitTimeoutMillis = awaitTimeout.toMillis();
+        this.retryBackoffMillis = Math.max(1, retryBackoff.toMillis());
+        this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+        this.lazyDelayMillis = lazyDelay.toMillis();
+        this.executor = Executors.newScheduledThreadPool(threads,
+                Thread.ofPlatform().name("rocketmq-startup-", 0).daemon(true).factory());
+    }
+
+    /**
+     * Build a client now (sequential) or in the background (parallel).
+     *
+     * @param required readiness waits for it
+     */
+    public <T extends Closeable> CompletableFuture<T> start(String name, boolean required, Callable<T> build) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Entry e = register(name, required, future);
+        if (!parallel) {
+            e.startedAt = System.nanoTime();
+            e.attempts = 1;
+            try {
+                T client = build.call();
+                up(name, e);
+                future.complete(client);
+            } catch (Exception ex) {
+                failed(e, ex);
+                throw ex;
+            }
+            return future;
+        }
+        submit(name, e, future, build, 0);
+        return future;
+    }
+
+    /** Build a client once the application is ready, the required clients are up and lazyDelay has passed. */
+    public <T extends Closeable> CompletableFuture<T> startLazily(String name, Callable<T> build) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Entry e = register(name, false, future);
+        e.state = "LAZY";
+        synchronized (lazy) {
+            lazy.add(() -> submit(name, e, future, build, 0));
+        }
+        return future;
+    }
+
+    private synchronized Entry register(String name, boolean required, CompletableFuture<? extends Closeable> future) {
+        Entry e = new Entry(required, future);
+        if (clients.putIfAbsent(name, e) != null) {
+            throw new IllegalArgumentException("RocketMQ client " + name + " is registered twice");
+        }
+        return e;
+    }
+
+    private <T extends Closeable> void submit(String name, Entry e, CompletableFuture<T> future, Callable<T> build, long delayMillis) {
+        try {
+            executor.schedule(() -> attempt(name, e, future, build), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException closed) {
+            future.completeExceptionally(new ClientException("Application is shutting down"));
+        }
+    }
+
+    private <T extends Closeable> void attempt(String name, Entry e, CompletableFuture<T> future, Callable<T> build) {
+        if (closing || future.isDone()) {
+            return;
+        }
+        if (e.attempts == 0) {
+            e.startedAt = System.nanoTime();
+        }
+        e.attempts++;
+        e.state = "STARTING";
+        try {
+            T client = build.call();
+            // UP before completing, so whatever runs on completion (the summary) sees it
+            up(name, e);
+            if (!future.complete(client)) {
+                // closed while the handshake was running
+                e.state = "CLOSED";
+                closeQuietly(name, client);
+            }
+        } catch (Exception ex) {
+            failed(e, ex);
+            long backoff = Math.min(maxRetryBackoffMillis, retryBackoffMillis << Math.min(20, e.attempts - 1));
+            log.warn("RocketMQ client {} failed to start (attempt {}), retrying in {} ms: {}", name, e.attempts, backoff, ex.toString());
+            submit(name, e, future, build, backoff);
+        }
+    }
+
+    private void up(String name, Entry e) {
+        e.finishedAt = System.nanoTime();
+        e.state = "UP";
+        e.error = null;
+        Timer.builder("rocketmq.client.startup")
+                .description("Time from the first attempt to a started client")
+                .tag("client", name)
+                .register(registry)
+                .record(e.finishedAt - e.startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private static void failed(Entry e, Exception ex) {
+        e.state = "FAILED";
+        e.error = String.valueOf(ex);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        CompletableFuture<?>[] required;
+        CompletableFuture<?>[] eager;
+        synchronized (this) {
+            required = clients.values().stream().filter(e -> e.required).map(e -> e.future).toArray(CompletableFuture[]::new);
+            eager = clients.values().stream().filter(e -> !"LAZY".equals(e.state)).map(e -> e.future).toArray(CompletableFuture[]::new);
+        }
+        CompletableFuture.allOf(eager).whenComplete((v, ex) -> logSummary());
+        CompletableFuture.allOf(required).thenRun(() -> {
+            List<Runnable> tasks;
+            synchronized (lazy) {
+                tasks = new ArrayList<>(lazy);
+                lazy.clear();
+            }
+            if (!tasks.isEmpty()) {
+                try {
+                    executor.schedule(() -> tasks.forEach(Runnable::run), lazyDelayMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException closed) {
+                    // shutting down, the lazy clients are never built
+                }
+            }
+        });
+    }
+
+    private void logSummary() {
+        Map<String, ClientTiming> t = timings();
+        long wall = t.values().stream().filter(c -> c.tookMillis() != null)
+                .mapToLong(c -> c.startedAtMillis() + c.tookMillis()).max().orElse(0);
+        long sum = t.values().stream().filter(c -> c.tookMillis() != null).mapToLong(ClientTiming::tookMillis).sum();
+        log.info("RocketMQ clients started ({}): done at +{} ms, handshakes total {} ms; {}",
+                parallel ? "parallel" : "sequential", wall, sum,
+                t.entrySet().stream()
+                        .map(en -> en.getKey() + "=" + (en.getValue().tookMillis() == null
+                                ? en.getValue().state() : en.getValue().tookMillis() + "ms"))
+                        .collect(Collectors.joining(", ")));
+    }
+
+    public synchronized Map<String, ClientTiming> timings() {
+        Map<String, ClientTiming> out = new LinkedHashMap<>();
+        clients.forEach((name, e) -> out.put(name, new ClientTiming(e.state, e.required,
+                e.startedAt == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(e.startedAt - createdAt),
+                "UP".equals(e.state) ? TimeUnit.NANOSECONDS.toMillis(e.finishedAt - e.startedAt) : null,
+                e.attempts, e.error)));
+        return out;
+    }
+
+    /** OUT_OF_SERVICE until every required client is up; per-client timings as details. */
+    public Health health() {
+        Map<String, ClientTiming> t = timings();
+        boolean ready = t.values().stream().filter(ClientTiming::required).allMatch(c -> "UP".equals(c.state()));
+        return (ready ? Health.up() : Health.outOfService()).withDetails(t).build();
+    }
+
+    /** Block for at most awaitTimeout on a client that is still starting. */
+    <T> T await(String name, CompletableFuture<T> client) throws ClientException {
+        try {
+            return client.get(awaitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ClientException("RocketMQ client " + name + " is not started yet");
+        } catch (ExecutionException e) {
+            throw new ClientException("RocketMQ client " + name + " failed to start", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Interrupted while waiting for RocketMQ client " + name, e);
+        } catch (CancellationException e) {
+            throw new ClientException("RocketMQ client " + name + " is closed");
+        }
+    }
+
+    /* a client closed before its build finished is closed by attempt() when the build returns */
+    static void close(String name, CompletableFuture<? extends Closeable> client) {
+        if (client.cancel(false) || client.isCompletedExceptionally()) {
+            return;
+        }
+        closeQuietly(name, client.join());
+    }
+
+    private static void closeQuietly(String name, Closeable c) {
+        try {
+            c.close();
+        } catch (Exception e) {
+            log.warn("Failed to close RocketMQ client {}", name, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closing = true;
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.consumer.PushConsumerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 为 RocketMQConfig 中的消费者套上 ShardedDispatcher（app.rocketmq.dispatcher.*）
+ * 未启用时原样返回监听器，消费者保持客户端默认的线程数；
+ * 启用时 consumptionThreads 个客户端线程负责把消息送进分片，FIFO 消费者同时打开 FifoConsumeAccelerator，
+ * 让同一队列里不同 messageGroup 的消息可以同时在途（组内仍然串行）。
+ * 消费者 Bean 依赖本组件，关闭时先关消费者、再停分发 worker。
+ */
+@Component
+public class ConsumerDispatchers {
+    private final boolean enabled;
+    private final int shards;
+    private final int queueCapacity;
+    private final Duration offerTimeout;
+    private final boolean virtualThreads;
+    private final int consumptionThreads;
+    private final MeterRegistry registry;
+    private final List<ShardedDispatcher> dispatchers = new CopyOnWriteArrayList<>();
+
+    public ConsumerDispatchers(MeterRegistry registry,
+                               @Value("${app.rocketmq.dispatcher.enabled:false}") boolean enabled,
+                               @Value("${app.rocketmq.dispatcher.shards:16}") int shards,
+                               @Value("${app.rocketmq.dispatcher.queueCapacity:64}") int queueCapacity,
+                               @Value("${app.rocketmq.dispatcher.offerTimeout:1s}") Duration offerTimeout,
+                               @Value("${app.rocketmq.dispatcher.virtualThreads:false}") boolean virtualThreads,
+                               @Value("${app.rocketmq.dispatcher.consumptionThreads:64}") int consumptionThreads) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.shards = shards;
+        this.queueCapacity = queueCapacity;
+        this.offerTimeout = offerTimeout;
+        this.virtualThreads = virtualThreads;
+        this.consumptionThreads = consumptionThreads;
+    }
+
+    /** Route the listener through a sharded dispatcher when enabled, and size the consumer for it. */
+    public PushConsumerBuilder apply(PushConsumerBuilder builder, String name, MessageListener listener) {
+        if (!enabled) {
+            return builder.setMessageListener(listener);
+        }
+        ShardedDispatcher dispatcher = new ShardedDispatcher(name, listener, shards, queueCapacity,
+                offerTimeout, virtualThreads, registry);
+        dispatchers.add(dispatcher);
+        return builder.setMessageListener(dispatcher)
+                .setConsumptionThreadCount(consumptionThreads)
+                .setEnableFifoConsumeAccelerator(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatchers.forEach(ShardedDispatcher::close);
+    }
+}
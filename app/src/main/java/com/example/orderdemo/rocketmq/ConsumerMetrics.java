@@ -0,0 +1,80 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费端指标（按 listener 标签区分 fifo / delay）
+ * rocketmq.consume.delay：消息可投递时刻（延时消息为 deliveryTimestamp，其余为 bornTimestamp）到进入监听器的时间
+ * rocketmq.consume.handler：监听器处理耗时
+ * rocketmq.consume.messages：按 result=success|failure|malformed 计数
+ * 两个 Timer 只发布少量固定边界的直方图桶，histogram_quantile 在 Prometheus 端计算分位数；
+ * 进程内每次记录只是桶计数（约 0.1µs），不维护分位数。
+ * 不用 publishPercentileHistogram：默认几十个桶，每个 listener/result 组合都会变成几十条时间序列
+ */
+public class ConsumerMetrics {
+    static final Duration[] HANDLER_BUCKETS = {
+            Duration.ofNanos(500_000), Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5),
+            Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100),
+            Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(5)};
+    static final Duration[] DELAY_BUCKETS = {
+            Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(1),
+            Duration.ofMinutes(5), Duration.ofMinutes(30)};
+
+    private final Timer delay;
+    private final Timer handler;
+    private final Counter success;
+    private final Counter failure;
+    private final Counter malformed;
+
+    public ConsumerMetrics(MeterRegistry registry, String listener) {
+        this.delay = Timer.builder("rocketmq.consume.delay")
+                .description("Time from when a message became deliverable until the listener got it")
+                .tag("listener", listener)
+                .serviceLevelObjectives(DELAY_BUCKETS)
+                .register(registry);
+        this.handler = Timer.builder("rocketmq.consume.handler")
+                .description("Time spent in the message listener")
+                .tag("listener", listener)
+                .serviceLevelObjectives(HANDLER_BUCKETS)
+                .register(registry);
+        this.success = counter(registry, listener, "success");
+        this.failure = counter(registry, listener, "failure");
+        this.malformed = counter(registry, listener, "malformed");
+    }
+
+    private static Counter counter(MeterRegistry registry, String listener, String result) {
+        return Counter.builder("rocketmq.consume.messages")
+                .tag("listener", listener)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** Record the delivery delay of the message; returns the handler start time for {@link #finish}. */
+    public long start(MessageView messageView) {
+        long now = System.currentTimeMillis();
+        long deliverable = messageView.getDeliveryTimestamp().orElse(messageView.getBornTimestamp());
+        delay.record(Math.max(0, now - deliverable), TimeUnit.MILLISECONDS);
+        return System.nanoTime();
+    }
+
+    public ConsumeResult finish(long startNanos, ConsumeResult result) {
+        handler.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        (result == ConsumeResult.SUCCESS ? success : failure).increment();
+        return result;
+    }
+
+    /** Malformed messages are acked without running the handler, so they are counted separately. */
+    public ConsumeResult malformed(long startNanos) {
+        handler.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        malformed.increment();
+        return ConsumeResult.SUCCESS;
+    }
+}
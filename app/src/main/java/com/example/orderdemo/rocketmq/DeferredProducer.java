@@ -0,0 +1,62 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.RecallReceipt;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A producer that is still being started by {@link ClientStartup} (parallel mode). Async calls are chained
+ * onto the start, blocking calls wait for at most awaitTimeout and then fail with a ClientException.
+ */
+final class DeferredProducer implements Producer {
+    private final String name;
+    private final CompletableFuture<Producer> client;
+    private final ClientStartup startup;
+
+    DeferredProducer(String name, CompletableFuture<Producer> client, ClientStartup startup) {
+        this.name = name;
+        this.client = client;
+        this.startup = startup;
+    }
+
+    @Override
+    public SendReceipt send(Message message) throws ClientException {
+        return startup.await(name, client).send(message);
+    }
+
+    @Override
+    public SendReceipt send(Message message, Transaction transaction) throws ClientException {
+        return startup.await(name, client).send(message, transaction);
+    }
+
+    @Override
+    public CompletableFuture<SendReceipt> sendAsync(Message message) {
+        Producer p = client.getNow(null);
+        return p != null ? p.sendAsync(message) : client.thenCompose(started -> started.sendAsync(message));
+    }
+
+    @Override
+    public Transaction beginTransaction() throws ClientException {
+        return startup.await(name, client).beginTransaction();
+    }
+
+    @Override
+    public RecallReceipt recallMessage(String topic, String recallHandle) throws ClientException {
+        return startup.await(name, client).recallMessage(topic, recallHandle);
+    }
+
+    @Override
+    public CompletableFuture<RecallReceipt> recallMessageAsync(String topic, String recallHandle) {
+        return client.thenCompose(started -> started.recallMessageAsync(topic, recallHandle));
+    }
+
+    @Override
+    public void close() {
+        ClientStartup.close(name, client);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A push consumer that is started in the background or lazily by {@link ClientStartup}.
+ * It consumes as soon as the start completes; nothing in the application waits for it.
+ */
+final class DeferredPushConsumer implements PushConsumer {
+    private final String name;
+    private final String consumerGroup;
+    private final Map<String, FilterExpression> subscriptions;
+    private final CompletableFuture<PushConsumer> client;
+    private final ClientStartup startup;
+
+    DeferredPushConsumer(String name, String consumerGroup, Map<String, FilterExpression> subscriptions,
+                         CompletableFuture<PushConsumer> client, ClientStartup startup) {
+        this.name = name;
+        this.consumerGroup = consumerGroup;
+        this.subscriptions = subscriptions;
+        this.client = client;
+        this.startup = startup;
+    }
+
+    @Override
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    @Override
+    public Map<String, FilterExpression> getSubscriptionExpressions() {
+        PushConsumer c = client.getNow(null);
+        return c != null ? c.getSubscriptionExpressions() : subscriptions;
+    }
+
+    @Override
+    public PushConsumer subscribe(String topic, FilterExpression filterExpression) throws ClientException {
+        return startup.await(name, client).subscribe(topic, filterExpression);
+    }
+
+    @Override
+    public PushConsumer unsubscribe(String topic) throws ClientException {
+        return startup.await(name, client).unsubscribe(topic);
+    }
+
+    @Override
+    public void close() {
+        ClientStartup.close(name, client);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.orderdemo.rocketmq;
+
+import com.example.orderdemo.service.OrderService;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 延时主题消息处理逻辑：CLOSE 事件 → orderService.autoClose
+ * 批量创建产生的 v2 消息一次携带多个订单 → orderService.autoCloseAll（一个事务、一次批量条件更新）
+ * 分库时按订单所在分片拆开，每个分片一次 autoCloseAll
+ */
+public class DelayEventListener implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(DelayEventListener.class);
+
+    private final OrderService orderService;
+    private final ShardRouter shards;
+    private final ConsumerMetrics metrics;
+
+    public DelayEventListener(OrderService orderService, ShardRouter shards, ConsumerMetrics metrics) {
+        this.orderService = orderService;
+        this.shards = shards;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ConsumeResult consume(MessageView messageView) {
+        long start = metrics.start(messageView);
+        List<OrderEvent> events = OrderEventCodec.decodeAll(messageView.getBody());
+        try {
+            if (events == null) {
+                log.warn("Malformed delay message, skipping. Body={}, MessageId={}",
+                        OrderEventCodec.describe(messageView.getBody()), messageView.getMessageId());
+                return metrics.malformed(start);
+            }
+            if (events.get(0).type() == OrderEventType.CLOSE) {
+                if (events.size() == 1) {
+                    orderService.autoClose(events.get(0).orderId());
+                } else {
+                    List<String> orderIds = new ArrayList<>(events.size());
+                    events.forEach(e -> orderIds.add(e.orderId()));
+                    for (List<String> group : shards.groupByShard(orderIds, id -> id)) {
+                        orderService.autoCloseAll(group);
+                    }
+                }
+            }
+            return metrics.finish(start, ConsumeResult.SUCCESS);
+        } catch (Exception e) {
+            log.error("Failed to process delay message. MessageId={}", messageView.getMessageId(), e);
+            return metrics.finish(start, ConsumeResult.FAILURE); // trigger retry/backoff
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 死信回放（app.rocketmq.dlqReplay.*，由 /admin/dlq 触发）
+ * 一个后台线程按 id 顺序从 dlq_message 领取 PENDING 行：短事务里 FOR UPDATE SKIP LOCKED 锁行、改为 REPLAYING 后立即提交
+ * （多节点不会重复领取），每批最多 batchSize 条且不超过约一秒的令牌数；
+ * 限速和发送都在事务之外，每条先从令牌桶取令牌再异步发布，批内全部回执到齐后再开一个短事务标记 REPLAYED，
+ * 失败的行 attempts+1 回到 PENDING，达到 maxAttempts 后停在 FAILED，不再自动回放；停止时没发出的行放回 PENDING。
+ * 消息按原样重发：topic / tag / keys / messageGroup / 消息体都不变，消费者的去重键（order:{id}:{step}）也就不变，
+ * 已经处理过的事件会被 IdempotentService 和条件更新丢弃。
+ * 不挤占线上流量：回放和线上发送共用生产者池，回放只使用在途窗口的 maxPoolShare，超过时让出并稍后再试；
+ * 速率可以在运行中调整。同一时刻本节点只跑一个回放任务。
+ */
+@Component
+public class DlqReplayer {
+    private static final Logger log = LoggerFactory.getLogger(DlqReplayer.class);
+    private static final long HEADROOM_BACKOFF_MILLIS = 10;
+
+    private final DlqStore store;
+    private final OrderEventPublisher publisher;
+    private final ProducerPool pool;
+    private final TransactionTemplate txTemplate;
+    private final double defaultRate;
+    private final int burst;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final double maxPoolShare;
+    private final long sendTimeoutMillis;
+    private final Counter replayed;
+    private final Counter failed;
+    private final Counter throttled;
+    private volatile Job current;
+
+    /** Progress of the current (or last) replay job. */
+    public record Status(String state, String consumerGroup, double ratePerSecond, long limit,
+                         long replayed, long failed, long throttled, double actualRate,
+                         Instant startedAt, Instant finishedAt, String lastError) {}
+
+    public DlqReplayer(DlqStore store,
+                       OrderEventPublisher publisher,
+                       ProducerPool pool,
+                       TransactionTemplate txTemplate,
+                       MeterRegistry registry,
+                       @Value("${app.rocketmq.dlqReplay.rate:200}") double defaultRate,
+                       @Value("${app.rocketmq.dlqReplay.burst:50}") int burst,
+                       @Value("${app.rocketmq.dlqReplay.batchSize:100}") int batchSize,
+                       @Value("${app.rocketmq.dlqReplay.maxAttempts:3}") int maxAttempts,
+                       @Value("${app.rocketmq.dlqReplay.maxPoolShare:0.5}") double maxPoolShare,
+                       @Value("${app.rocketmq.dlqReplay.sendTimeout:3s}") Duration sendTimeout) {
+        this.store = store;
+        this.publisher = publisher;
+        this.pool = pool;
+        this.txTemplate = txTemplate;
+        this.defaultRate = defaultRate;
+        this.burst = burst;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.maxPoolShare = maxPoolShare;
+        this.sendTimeoutMillis = sendTimeout.toMillis();
+        this.replayed = replayed(registry, "success");
+        this.failed = replayed(registry, "failure");
+        this.throttled = Counter.builder("rocketmq.dlq.replay.throttled")
+                .description("Times the replay yielded because live sends were using the producer window")
+                .register(registry);
+    }
+
+    private static Counter replayed(MeterRegistry registry, String result) {
+        return Counter.builder("rocketmq.dlq.replay.messages")
+                .description("Dead-lettered messages re-published by the replay job")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Start a replay of pending rows.
+     *
+     * @param consumerGroup only rows dead-lettered by this group, null for all
+     * @param limit         at most this many messages, &lt;= 0 for all pending
+     * @param rate          messages per second, null for the configured default
+     */
+    public synchronized Status start(String consumerGroup, long limit, Double rate) {
+        Job job = current;
+        if (job != null && job.isRunning()) {
+            throw new IllegalStateException("A DLQ replay is already running");
+        }
+        job = new Job(consumerGroup, limit <= 0 ? Long.MAX_VALUE : limit,
+                new TokenBucket(rate == null ? defaultRate : rate, burst));
+        current = job;
+        job.thread.start();
+        log.info("DLQ replay started: group={}, limit={}, rate={}/s", consumerGroup, limit, job.bucket.rate());
+        return job.status();
+    }
+
+    public Status setRate(double rate) {
+        Job job = current;
+        if (job == null) {
+            throw new IllegalStateException("No DLQ replay has been started");
+        }
+        job.bucket.setRate(rate);
+        return job.status();
+    }
+
+    public Status stop() {
+        Job job = current;
+        if (job == null) {
+            return status();
+        }
+        job.stop();
+        return job.status();
+    }
+
+    public Status status() {
+        Job job = current;
+        return job == null
+                ? new Status("IDLE", null, defaultRate, 0, 0, 0, 0, 0, null, null, null)
+                : job.status();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Job job = current;
+        if (job != null) {
+            job.stop();
+            job.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private final class Job implements Runnable {
+        private final String consumerGroup;
+        private final long limit;
+        private final TokenBucket bucket;
+        private final Thread thread;
+        private final AtomicLong replayedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong throttledCount = new AtomicLong();
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile String state = "RUNNING";
+        private volatile String lastError;
+        private volatile boolean running = true;
+        private long afterId;
+
+        Job(String consumerGroup, long limit, TokenBucket bucket) {
+            this.consumerGroup = consumerGroup;
+            this.limit = limit;
+            this.bucket = bucket;
+            this.thread = new Thread(this, "dlq-replay");
+            this.thread.setDaemon(true);
+        }
+
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+
+        /* no interrupt: the current batch finishes and marks what was already sent */
+        void stop() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long remaining = limit;
+                while (running && remaining > 0) {
+                    // about one second of tokens, so claimed rows are not left REPLAYING for long
+                    int n = (int) Math.min(Math.min(batchSize, remaining), Math.max(1, Math.ceil(bucket.rate())));
+                    int attempted = replayBatch(n);
+                    if (attempted == 0) {
+                        break;
+                    }
+                    remaining -= attempted;
+                }
+                state = running ? "DONE" : "STOPPED";
+            } catch (Exception e) {
+                if (running) {
+                    log.error("DLQ replay failed", e);
+                    lastError = String.valueOf(e);
+                    state = "FAILED";
+                } else {
+                    state = "STOPPED";
+                }
+            } finally {
+                finishedAt = Instant.now();
+                log.info("DLQ replay {}: replayed={}, failed={}", state, replayedCount.get(), failedCount.get());
+            }
+        }
+
+        /**
+         * Claim (short transaction), send under the rate limit with no transaction open, then mark the results
+         * (short transaction). Returns how many rows were attempted.
+         */
+        private int replayBatch(int n) {
+            List<DlqStore.Entry> entries = txTemplate.execute(status -> store.claim(consumerGroup, afterId, n));
+            if (entries == null || entries.isEmpty()) {
+                return 0;
+            }
+            List<CompletableFuture<SendReceipt>> sends = new ArrayList<>(entries.size());
+            try {
+                for (DlqStore.Entry e : entries) {
+                    bucket.acquire();
+                    CompletableFuture<SendReceipt> send = running ? sendWithHeadroom(e.message()) : null;
+                    if (send == null) {
+                        // stopped: rows not attempted yet are released below
+                        break;
+                    }
+                    sends.add(send);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+            List<Long> ok = new ArrayList<>(sends.size());
+            List<Long> bad = new ArrayList<>();
+            List<Long> unsent = new ArrayList<>();
+            for (int i = sends.size(); i < entries.size(); i++) {
+                unsent.add(entries.get(i).id());
+            }
+            for (int i = 0; i < sends.size(); i++) {
+                long id = entries.get(i).id();
+                try {
+                    sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    ok.add(id);
+                } catch (InterruptedException ie) {
+                    // the broker may still accept these; back to PENDING means at most one duplicate each
+                    Thread.currentThread().interrupt();
+                    running = false;
+                    for (int j = i; j < sends.size(); j++) {
+                        unsent.add(entries.get(j).id());
+                    }
+                    break;
+                } catch (Exception ex) {
+                    lastError = String.valueOf(ex.getCause() == null ? ex : ex.getCause());
+                    log.warn("DLQ replay of row {} failed", id, ex);
+                    bad.add(id);
+                }
+            }
+            txTemplate.executeWithoutResult(status -> {
+                store.markReplayed(ok);
+                store.markFailed(bad, maxAttempts);
+                store.release(unsent);
+            });
+            replayedCount.addAndGet(ok.size());
+            failedCount.addAndGet(bad.size());
+            replayed.increment(ok.size());
+            failed.increment(bad.size());
+            if (!sends.isEmpty()) {
+                afterId = entries.get(sends.size() - 1).id();
+            }
+            return sends.size();
+        }
+
+        /** Only use maxPoolShare of the producer window; live sends keep the rest. Null when stopped while waiting. */
+        private CompletableFuture<SendReceipt> sendWithHeadroom(Message msg) throws InterruptedException {
+            int allowed = Math.max(1, (int) (pool.maxInFlight() * maxPoolShare));
+            while (running) {
+                if (pool.inFlight() < allowed) {
+                    try {
+                        return publisher.sendReplayAsync(msg);
+                    } catch (BackpressureException full) {
+                        // raced with live traffic, yield below
+                    }
+                }
+                throttled.increment();
+                throttledCount.incrementAndGet();
+                TimeUnit.MILLISECONDS.sleep(HEADROOM_BACKOFF_MILLIS);
+            }
+            return null;
+        }
+
+        Status status() {
+            Instant end = finishedAt == null ? Instant.now() : finishedAt;
+            double seconds = Math.max(0.001, Duration.between(startedAt, end).toMillis() / 1000d);
+            return new Status(state, consumerGroup, bucket.rate(), limit == Long.MAX_VALUE ? 0 : limit,
+                    replayedCount.get(), failedCount.get(), throttledCount.get(),
+                    Math.round(replayedCount.get() / seconds * 10) / 10d,
+                    startedAt, finishedAt, lastError);
+        }
+    }
+}
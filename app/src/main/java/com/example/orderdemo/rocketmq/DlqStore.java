@@ -0,0 +1,259 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageBuilder;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 死信消息的本地存储 dlq_message（app.rocketmq.dlqReplay.*）
+ * DLQ 监控消费者把每条死信原样落库（回放目标 topic / tag / keys / messageGroup / 属性 / 消息体）后才返回 SUCCESS，
+ * 消息不再只是打一行日志就丢掉；DlqReplayer 按 id 顺序领取 PENDING 行重新发布。
+ * 领取是一个短事务：锁行后改为 REPLAYING 并记下 claimed_at 就提交，发送期间不持有行锁和连接；
+ * 回放进程中途退出留下的 REPLAYING 行，超过 claimTimeout 后由定时任务放回 PENDING。
+ * 有界：PENDING 行数达到 capacity 后返回 FAILURE，消息留在 Broker 的 DLQ 里由监控消费组稍后重投，不会无限堆积。
+ * 计数由定时任务从表中重算（多节点时各自计数，容量是近似上限）。
+ * FIFO 死信的 messageGroup 在 DLQ 中可能丢失，落库时用第一个 key（即订单号，与 buildFifo 一致）补回。
+ * 延时死信不保存原投递时间，回放时以领取时刻作为 deliveryTimestamp 立即投递（关单本来就已经超时）；
+ * OrderDelayTopic 是 DELAY 类型，不带投递时间的普通消息会被 Broker 拒绝。
+ */
+@Component
+public class DlqStore {
+    private static final Logger log = LoggerFactory.getLogger(DlqStore.class);
+
+    private static final String INSERT_SQL =
+            "INSERT IGNORE INTO dlq_message (consumer_group, message_id, topic, tag, msg_keys, message_group, properties, body) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String CLAIM_SQL =
+            "SELECT id, consumer_group, topic, tag, msg_keys, message_group, properties, body, attempts " +
+            "FROM dlq_message WHERE status = 'PENDING' AND consumer_group = ? AND id > ? " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String CLAIM_ALL_SQL =
+            "SELECT id, consumer_group, topic, tag, msg_keys, message_group, properties, body, attempts " +
+            "FROM dlq_message WHERE status = 'PENDING' AND id > ? " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String MARK_CLAIMED_SQL =
+            "UPDATE dlq_message SET status = 'REPLAYING', claimed_at = CURRENT_TIMESTAMP(3) WHERE id IN (:ids)";
+    private static final String RELEASE_SQL =
+            "UPDATE dlq_message SET status = 'PENDING', claimed_at = NULL WHERE id IN (:ids) AND status = 'REPLAYING'";
+    private static final String RELEASE_STALE_SQL =
+            "UPDATE dlq_message SET status = 'PENDING', claimed_at = NULL WHERE status = 'REPLAYING' AND claimed_at < ?";
+    private static final String MARK_REPLAYED_SQL =
+            "UPDATE dlq_message SET status = 'REPLAYED', replayed_at = CURRENT_TIMESTAMP(3), claimed_at = NULL " +
+            "WHERE id IN (:ids)";
+    // status first: MySQL applies SET assignments left to right
+    private static final String MARK_FAILED_SQL =
+            "UPDATE dlq_message SET status = CASE WHEN attempts + 1 >= :maxAttempts THEN 'FAILED' ELSE 'PENDING' END, " +
+            "attempts = attempts + 1, claimed_at = NULL WHERE id IN (:ids)";
+    private static final String COUNT_PENDING_SQL =
+            "SELECT COUNT(*) FROM dlq_message WHERE status IN ('PENDING', 'REPLAYING')";
+    private static final String COUNT_BY_STATUS_SQL =
+            "SELECT consumer_group, status, COUNT(*) AS n FROM dlq_message GROUP BY consumer_group, status";
+    private static final String PURGE_SQL =
+            "DELETE FROM dlq_message WHERE status = 'REPLAYED' AND replayed_at < ? LIMIT ?";
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final ClientServiceProvider provider;
+    private final String delayTopic;
+    private final long capacity;
+    private final Duration keepReplayed;
+    private final Duration claimTimeout;
+    private final int purgeChunk;
+    private final AtomicLong pending = new AtomicLong();
+    private final Counter stored;
+    private final Counter rejected;
+
+    /** A claimed row: the message to re-publish, its DLQ consumer group and failed replay attempts so far. */
+    public record Entry(long id, String consumerGroup, Message message, int attempts) {}
+
+    public DlqStore(JdbcTemplate jdbc,
+                    NamedParameterJdbcTemplate named,
+                    ClientServiceProvider provider,
+                    MeterRegistry registry,
+                    @Value("${app.rocketmq.delayTopic}") String delayTopic,
+                    @Value("${app.rocketmq.dlqReplay.capacity:100000}") long capacity,
+                    @Value("${app.rocketmq.dlqReplay.keepReplayed:7d}") Duration keepReplayed,
+                    @Value("${app.rocketmq.dlqReplay.purgeChunk:5000}") int purgeChunk,
+                    @Value("${app.rocketmq.dlqReplay.claimTimeout:5m}") Duration claimTimeout) {
+        this.jdbc = jdbc;
+        this.named = named;
+        this.provider = provider;
+        this.delayTopic = delayTopic;
+        this.capacity = capacity;
+        this.keepReplayed = keepReplayed;
+        this.purgeChunk = purgeChunk;
+        this.claimTimeout = claimTimeout;
+        Gauge.builder("rocketmq.dlq.store.pending", pending, AtomicLong::get)
+                .description("Dead-lettered messages stored and waiting for replay")
+                .register(registry);
+        this.stored = Counter.builder("rocketmq.dlq.store.messages")
+                .description("Dead-lettered messages written to dlq_message")
+                .tag("result", "stored")
+                .register(registry);
+        this.rejected = Counter.builder("rocketmq.dlq.store.messages")
+                .description("Dead-lettered messages written to dlq_message")
+                .tag("result", "rejected")
+                .register(registry);
+    }
+
+    /**
+     * DLQ watcher entry point: SUCCESS once the message is in dlq_message (or already was),
+     * FAILURE when the store is full or the insert failed so the broker keeps the message.
+     */
+    public ConsumeResult store(String consumerGroup, String replayTopic, boolean fifo, MessageView view) {
+        if (pending.get() >= capacity) {
+            rejected.increment();
+            log.warn("DLQ store full ({} pending), leaving message {} in the broker", pending.get(), view.getMessageId());
+            return ConsumeResult.FAILURE;
+        }
+        ByteBuffer src = view.getBody().duplicate();
+        byte[] body = new byte[src.remaining()];
+        src.get(body);
+        String firstKey = view.getKeys().isEmpty() ? null : view.getKeys().iterator().next();
+        String group = view.getMessageGroup().orElse(fifo ? firstKey : null);
+        try {
+            int inserted = jdbc.update(INSERT_SQL, consumerGroup, view.getMessageId().toString(), replayTopic,
+                    view.getTag().orElse(null),
+                    view.getKeys().isEmpty() ? null : String.join(",", view.getKeys()),
+                    group, OrderOutbox.encodeProperties(view.getProperties()), body);
+            if (inserted > 0) {
+                pending.incrementAndGet();
+                stored.increment();
+            }
+            return ConsumeResult.SUCCESS;
+        } catch (Exception e) {
+            log.error("Failed to store DLQ message {}", view.getMessageId(), e);
+            return ConsumeResult.FAILURE;
+        }
+    }
+
+    /**
+     * Lock up to {@code limit} pending rows after {@code afterId} and mark them REPLAYING; {@code consumerGroup}
+     * null means all groups. Commit right after: the rows stay out of other claims without holding their locks.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Entry> claim(String consumerGroup, long afterId, int limit) {
+        long now = System.currentTimeMillis();
+        RowMapper<Entry> mapper = (rs, i) -> {
+            String topic = rs.getString("topic");
+            MessageBuilder b = provider.newMessageBuilder()
+                    .setTopic(topic)
+                    .setBody(rs.getBytes("body"));
+            if (topic.equals(delayTopic)) {
+                // the delay topic only takes DELAY messages; the original close time has passed, deliver now
+                b.setDeliveryTimestamp(now);
+            }
+            String tag = rs.getString("tag");
+            if (tag != null) {
+                b.setTag(tag);
+            }
+            String keys = rs.getString("msg_keys");
+            if (keys != null) {
+                b.setKeys(keys.split(","));
+            }
+            String group = rs.getString("message_group");
+            if (group != null) {
+                b.setMessageGroup(group);
+            }
+            OrderOutbox.decodeProperties(rs.getString("properties"), b);
+            return new Entry(rs.getLong("id"), rs.getString("consumer_group"), b.build(), rs.getInt("attempts"));
+        };
+        List<Entry> entries = consumerGroup == null
+                ? jdbc.query(CLAIM_ALL_SQL, mapper, afterId, limit)
+                : jdbc.query(CLAIM_SQL, mapper, consumerGroup, afterId, limit);
+        if (!entries.isEmpty()) {
+            named.update(MARK_CLAIMED_SQL, new MapSqlParameterSource("ids", entries.stream().map(Entry::id).toList()));
+        }
+        return entries;
+    }
+
+    /** Hand claimed rows that were never sent back to PENDING. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            named.update(RELEASE_SQL, new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markReplayed(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            named.update(MARK_REPLAYED_SQL, new MapSqlParameterSource("ids", ids));
+            pending.addAndGet(-ids.size());
+        }
+    }
+
+    /** Count a failed attempt; rows reaching {@code maxAttempts} are parked as FAILED. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markFailed(List<Long> ids, int maxAttempts) {
+        if (!ids.isEmpty()) {
+            named.update(MARK_FAILED_SQL, new MapSqlParameterSource("ids", ids).addValue("maxAttempts", maxAttempts));
+        }
+    }
+
+    /** consumer group -> status -> rows. */
+    public Map<String, Map<String, Long>> countByStatus() {
+        Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        jdbc.query(COUNT_BY_STATUS_SQL, rs -> {
+            counts.computeIfAbsent(rs.getString("consumer_group"), g -> new LinkedHashMap<>())
+                    .put(rs.getString("status"), rs.getLong("n"));
+        });
+        return counts;
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Re-count pending rows (corrects drift from other nodes and restarts), release rows left REPLAYING by a
+     * replay that died longer than claimTimeout ago and purge old replayed rows.
+     */
+    @Scheduled(fixedDelayString = "${app.rocketmq.dlqReplay.recountIntervalMillis:10000}")
+    public void housekeeping() {
+        try {
+            int released = jdbc.update(RELEASE_STALE_SQL,
+                    new Timestamp(System.currentTimeMillis() - claimTimeout.toMillis()));
+            if (released > 0) {
+                log.warn("Released {} DLQ rows claimed more than {} ago back to PENDING", released, claimTimeout);
+            }
+            Long n = jdbc.queryForObject(COUNT_PENDING_SQL, Long.class);
+            pending.set(n == null ? 0 : n);
+            int deleted = jdbc.update(PURGE_SQL,
+                    new Timestamp(System.currentTimeMillis() - keepReplayed.toMillis()), purgeChunk);
+            if (deleted > 0) {
+                log.debug("Purged {} replayed DLQ rows", deleted);
+            }
+        } catch (Exception e) {
+            log.debug("DLQ store housekeeping failed", e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.orderdemo.rocketmq;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.service.OrderBatchService;
+import com.example.orderdemo.service.OrderBatchService.StatusEvent;
+import com.example.orderdemo.service.OrderService;
+import com.example.orderdemo.sharding.ShardRouter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 微批 FIFO 消费模式（app.rocketmq.fifoBatch.enabled=true）
+ * 消费线程按 tag 和 messageGroup 得到事件（OrderEventHandlers.route，不解码消息体）放入队列并等待结果；flush 线程按 "maxSize 条 或 window 时间" 攒批，
+ * 交给 OrderBatchService 在一个事务内批量处理，提交后各消费线程分别返回 SUCCESS（逐条 ack）。
+ * FIFO 消费者在上一条未 ack 前不会投递同一 messageGroup 的下一条，
+ * 批内再按到达顺序执行，因此同一订单的顺序不变。
+ * 整批失败时退化为逐条处理，避免一条坏消息拖垮整批的重试次数。
+ * 消费线程入队与等待结果共用一个 ackTimeout 截止时间；超时返回 FAILURE 时，这条事件可能仍在批里并随后提交，
+ * 重投后由 message_log 去重键（order:{orderId}:{step}）识别为已处理，不会重复迁移状态。
+ * 多个 FIFO 消费组（app.rocketmq.fifoGroups）共用这一个监听器和 flush 线程。
+ * 分库时一批按订单所在分片拆成多个子批，每个分片一个事务，失败退化也按子批进行。
+ */
+@Component
+@ConditionalOnProperty(name = "app.rocketmq.fifoBatch.enabled", havingValue = "true")
+public class FifoBatchListener implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(FifoBatchListener.class);
+
+    private final OrderBatchService batchService;
+    private final OrderService orderService;
+    private final ShardRouter shards;
+    private final int maxSize;
+    private final long windowNanos;
+    private final long ackTimeoutMillis;
+    private final BlockingQueue<Pending> queue;
+    private final ConsumerMetrics metrics;
+    private final DistributionSummary batchSize;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private record Pending(StatusEvent event, CompletableFuture<Boolean> done) {}
+
+    public FifoBatchListener(OrderBatchService batchService,
+                             OrderService orderService,
+                             ShardRouter shards,
+                             MeterRegistry registry,
+                             @Value("${app.rocketmq.fifoBatch.maxSize:64}") int maxSize,
+                             @Value("${app.rocketmq.fifoBatch.window:5ms}") Duration window,
+                             @Value("${app.rocketmq.fifoBatch.ackTimeout:10s}") Duration ackTimeout) {
+        this.batchService = batchService;
+        this.orderService = orderService;
+        this.shards = shards;
+        this.maxSize = maxSize;
+        this.windowNanos = window.toNanos();
+        this.ackTimeoutMillis = ackTimeout.toMillis();
+        this.queue = new ArrayBlockingQueue<>(maxSize * 4);
+        // same listener tag as the per-message mode, only one of the two consumes the topic
+        this.metrics = new ConsumerMetrics(registry, "fifo");
+        this.batchSize = DistributionSummary.builder("rocketmq.consume.batch.size")
+                .description("FIFO events applied by one batch transaction")
+                .register(registry);
+        this.flusher = new Thread(this::flushLoop, "fifo-batch-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /** Consumption threads needed to keep a full batch in flight. */
+    public int consumptionThreads() {
+        return maxSize * 2;
+    }
+
+    @Override
+    public ConsumeResult consume(MessageView messageView) {
+        long start = metrics.start(messageView);
+        OrderEventHandlers.Routed event = OrderEventHandlers.route(messageView);
+        OrderStatus target = event == null ? null : targetOf(event.type());
+        if (target == null) {
+            log.warn("Malformed fifo message, skipping. Body={}, MessageId={}",
+                    OrderEventCodec.describe(messageView.getBody()), messageView.getMessageId());
+            return metrics.malformed(start);
+        }
+        Pending p = new Pending(new StatusEvent(event.orderId(), target, messageView.getMessageId().toString()),
+                new CompletableFuture<>());
+        // one deadline for queueing and waiting; on timeout the event may still commit, redelivery is deduplicated
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackTimeoutMillis);
+        try {
+            if (!queue.offer(p, ackTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return metrics.finish(start, ConsumeResult.FAILURE);
+            }
+            boolean done = p.done().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return metrics.finish(start, done ? ConsumeResult.SUCCESS : ConsumeResult.FAILURE);
+        } catch (TimeoutException e) {
+            log.warn("Fifo batch did not acknowledge within {} ms, message will be redelivered. MessageId={}",
+                    ackTimeoutMillis, messageView.getMessageId());
+            return metrics.finish(start, ConsumeResult.FAILURE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return metrics.finish(start, ConsumeResult.FAILURE);
+        } catch (Exception e) {
+            log.error("Failed to process fifo message in batch. MessageId={}", messageView.getMessageId(), e);
+            return metrics.finish(start, ConsumeResult.FAILURE);
+        }
+    }
+
+    private static OrderStatus targetOf(OrderEventType type) {
+        switch (type) {
+            case PAID:
+                return OrderStatus.PAID;
+            case SHIPPED:
+                return OrderStatus.SHIPPED;
+            default:
+                return null;
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(maxSize);
+        while (running) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxSize) {
+                    long left = deadline - System.nanoTime();
+                    Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                for (List<Pending> group : shards.groupByShard(batch, p -> p.event().orderId())) {
+                    flush(group);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<StatusEvent> events = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            events.add(p.event());
+        }
+        batchSize.record(events.size());
+        try {
+            batchService.applyBatch(events);
+            batch.forEach(p -> p.done().complete(true));
+        } catch (Exception e) {
+            log.warn("Batch of {} fifo events failed, falling back to one transaction per event", batch.size(), e);
+            for (Pending p : batch) {
+                p.done().complete(applySingle(p.event()));
+            }
+        }
+    }
+
+    private boolean applySingle(StatusEvent e) {
+        try {
+            if (e.target() == OrderStatus.PAID) {
+                orderService.markPaid(e.orderId());
+            } else {
+                orderService.markShipped(e.orderId());
+            }
+            return true;
+        } catch (Exception ex) {
+            log.error("Failed to process fifo event. OrderId={}, MessageId={}", e.orderId(), e.messageId(), ex);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.done().complete(false);
+        }
+    }
+}
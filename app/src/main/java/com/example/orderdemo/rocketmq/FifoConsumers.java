@@ -0,0 +1,44 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The FIFO push consumers, one per consumer group of app.rocketmq.fifoGroups, as a single bean so they are
+ * closed together. groups maps each group to the event types it subscribes to.
+ */
+public final class FifoConsumers implements AutoCloseable {
+    private final Map<String, List<OrderEventType>> groups;
+    private final List<PushConsumer> consumers;
+
+    FifoConsumers(Map<String, List<OrderEventType>> groups, List<PushConsumer> consumers) {
+        this.groups = groups;
+        this.consumers = consumers;
+    }
+
+    public Map<String, List<OrderEventType>> groups() {
+        return groups;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (PushConsumer c : consumers) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FIFO 主题消息处理逻辑（逐条模式）
+ * 按消息 tag 分发到 OrderEventHandlers 中注册的处理器（order_paid → markPaid，order_shipped → markShipped），
+ * 订单号取自 messageGroup，不解码消息体；旧的 order_event 标签消息解码消息体（二进制或旧文本格式 订单ID:操作类型）
+ * 格式错误的消息记录日志后直接确认；处理异常返回 FAILURE 触发重试
+ */
+public class FifoEventListener implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(FifoEventListener.class);
+
+    private final OrderEventHandlers handlers;
+    private final ConsumerMetrics metrics;
+
+    public FifoEventListener(OrderEventHandlers handlers, ConsumerMetrics metrics) {
+        this.handlers = handlers;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ConsumeResult consume(MessageView messageView) {
+        long start = metrics.start(messageView);
+        OrderEventHandlers.Routed event = OrderEventHandlers.route(messageView);
+        try {
+            if (event == null) {
+                log.warn("Malformed fifo message, skipping. Body={}, MessageId={}",
+                        OrderEventCodec.describe(messageView.getBody()), messageView.getMessageId());
+                return metrics.malformed(start);
+            }
+            handlers.handle(event);
+            return metrics.finish(start, ConsumeResult.SUCCESS);
+        } catch (Exception e) {
+            log.error("Failed to process fifo message. MessageId={}", messageView.getMessageId(), e);
+            return metrics.finish(start, ConsumeResult.FAILURE);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.orderdemo.rocketmq;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 订单事件消息体（OrderEventCodec 编解码）
+ * amountCents 以分为单位，未携带金额时为 {@link #NO_AMOUNT}
+ */
+public record OrderEvent(String orderId, OrderEventType type, long amountCents, long timestamp) {
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    public static OrderEvent of(String orderId, OrderEventType type) {
+        return new OrderEvent(orderId, type, NO_AMOUNT, System.currentTimeMillis());
+    }
+
+    public static OrderEvent of(String orderId, OrderEventType type, BigDecimal amount) {
+        long cents = amount == null ? NO_AMOUNT : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        return new OrderEvent(orderId, type, cents, System.currentTimeMillis());
+    }
+
+    public boolean hasAmount() {
+        return amountCents != NO_AMOUNT;
+    }
+
+    public BigDecimal amount() {
+        return hasAmount() ? BigDecimal.valueOf(amountCents, 2) : null;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.orderdemo.rocketmq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单事件消息体编解码，生产者与所有消费者共用
+ *
+ * 二进制格式 v1（大端序，固定 20 字节头 + orderId）：
+ * <pre>
+ * 0      magic   0xB7（不是可打印字符，可与旧文本格式区分）
+ * 1      version 1
+ * 2      type    OrderEventType.code
+ * 3      len     orderId 字节数（ASCII，≤ 255）
+ * 4..11  timestamp 毫秒
+ * 12..19 amount  分，Long.MIN_VALUE 表示未携带
+ * 20..   orderId
+ * </pre>
+ * 批量格式 v2（一条消息携带同类型的多个订单事件，用于批量创建的半消息和延时关闭消息）：
+ * <pre>
+ * 0      magic   0xB7
+ * 1      version 2
+ * 2      type    OrderEventType.code（整批相同）
+ * 3      保留 0
+ * 4..11  timestamp 毫秒
+ * 12..13 count   事件数（≤ 65535）
+ * 14..   count 个条目：len(1) amount(8) orderId(len)
+ * </pre>
+ * v1 消费者会把 v2 消息当作格式错误跳过，批量消息只能在所有消费者升级后发送。
+ * 旧文本格式 "orderId:STEP"（兼容全角冒号）在灰度期间仍可解码。
+ * 解码直接读取 MessageView 的只读 ByteBuffer，只分配最终的 orderId 字符串。
+ */
+public final class OrderEventCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 1;
+    public static final byte BATCH_VERSION = 2;
+    static final int HEADER_SIZE = 20;
+    static final int BATCH_HEADER_SIZE = 14;
+    private static final int BATCH_ENTRY_OVERHEAD = 9;
+    private static final int MAX_ORDER_ID_LENGTH = 255;
+    public static final int MAX_BATCH_SIZE = 0xFFFF;
+
+    private static final byte[] FULL_WIDTH_COLON = "：".getBytes(StandardCharsets.UTF_8);
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_ORDER_ID_LENGTH]);
+
+    private OrderEventCodec() {
+    }
+
+    /** Encode into a right-sized array, the only allocation on the send path. */
+    public static byte[] encode(OrderEvent event) {
+        int len = checkedLength(event.orderId());
+        byte[] out = new byte[HEADER_SIZE + len];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        out[2] = event.type().code();
+        out[3] = (byte) len;
+        putLong(out, 4, event.timestamp());
+        putLong(out, 12, event.amountCents());
+        putAscii(out, HEADER_SIZE, event.orderId());
+        return out;
+    }
+
+    /**
+     * Encode events of one type into a single v2 body; the first event's timestamp is shared.
+     * Sized exactly in a first pass, so the array is the only allocation.
+     */
+    public static byte[] encodeBatch(List<OrderEvent> events) {
+        int count = events.size();
+        if (count == 0 || count > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("batch size out of range: " + count);
+        }
+        OrderEventType type = events.get(0).type();
+        int size = BATCH_HEADER_SIZE;
+        for (OrderEvent e : events) {
+            if (e.type() != type) {
+                throw new IllegalArgumentException("mixed event types in batch: " + type + ", " + e.type());
+            }
+            size += BATCH_ENTRY_OVERHEAD + checkedLength(e.orderId());
+        }
+        byte[] out = new byte[size];
+        out[0] = MAGIC;
+        out[1] = BATCH_VERSION;
+        out[2] = type.code();
+        putLong(out, 4, events.get(0).timestamp());
+        out[12] = (byte) (count >>> 8);
+        out[13] = (byte) count;
+        int at = BATCH_HEADER_SIZE;
+        for (OrderEvent e : events) {
+            int len = e.orderId().length();
+            out[at] = (byte) len;
+            putLong(out, at + 1, e.amountCents());
+            putAscii(out, at + BATCH_ENTRY_OVERHEAD, e.orderId());
+            at += BATCH_ENTRY_OVERHEAD + len;
+        }
+        return out;
+    }
+
+    /** Legacy "orderId:STEP" body, used while old consumers are still deployed. */
+    public static byte[] encodeText(OrderEvent event) {
+        return (event.orderId() + ":" + event.type().name()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode either format using absolute reads; the buffer position is left untouched.
+     * @return the event, or null if the body is malformed
+     */
+    public static OrderEvent decode(ByteBuffer buf) {
+        int start = buf.position();
+        int size = buf.remaining();
+        if (size > 0 && buf.get(start) == MAGIC) {
+            return decodeBinary(buf, start, size);
+        }
+        return decodeText(buf, start, size);
+    }
+
+    /**
+     * Decode a body carrying one event (v1 or text) or a batch (v2).
+     * @return the events in encoding order, or null if the body is malformed
+     */
+    public static List<OrderEvent> decodeAll(ByteBuffer buf) {
+        int start = buf.position();
+        int size = buf.remaining();
+        if (size > 1 && buf.get(start) == MAGIC && buf.get(start + 1) == BATCH_VERSION) {
+            return decodeBatch(buf, start, size);
+        }
+        OrderEvent event = decode(buf);
+        return event == null ? null : List.of(event);
+    }
+
+    private static List<OrderEvent> decodeBatch(ByteBuffer buf, int start, int size) {
+        if (size < BATCH_HEADER_SIZE) {
+            return null;
+        }
+        OrderEventType type = OrderEventType.fromCode(buf.get(start + 2));
+        int count = ((buf.get(start + 12) & 0xFF) << 8) | (buf.get(start + 13) & 0xFF);
+        if (type == null || count == 0) {
+            return null;
+        }
+        long timestamp = buf.getLong(start + 4);
+        List<OrderEvent> events = new ArrayList<>(count);
+        int at = start + BATCH_HEADER_SIZE;
+        int end = start + size;
+        for (int i = 0; i < count; i++) {
+            if (at + BATCH_ENTRY_OVERHEAD > end) {
+                return null;
+            }
+            int len = buf.get(at) & 0xFF;
+            if (len == 0 || at + BATCH_ENTRY_OVERHEAD + len > end) {
+                return null;
+            }
+            long amount = buf.getLong(at + 1);
+            events.add(new OrderEvent(ascii(buf, at + BATCH_ENTRY_OVERHEAD, len), type, amount, timestamp));
+            at += BATCH_ENTRY_OVERHEAD + len;
+        }
+        return events;
+    }
+
+    private static OrderEvent decodeBinary(ByteBuffer buf, int start, int size) {
+        if (size < HEADER_SIZE || buf.get(start + 1) != VERSION) {
+            return null;
+        }
+        OrderEventType type = OrderEventType.fromCode(buf.get(start + 2));
+        int len = buf.get(start + 3) & 0xFF;
+        if (type == null || len == 0 || size < HEADER_SIZE + len) {
+            return null;
+        }
+        long timestamp = buf.getLong(start + 4);
+        long amount = buf.getLong(start + 12);
+        return new OrderEvent(ascii(buf, start + HEADER_SIZE, len), type, amount, timestamp);
+    }
+
+    private static OrderEvent decodeText(ByteBuffer buf, int start, int size) {
+        int end = start + size;
+        int sep = -1;
+        int sepLen = 0;
+        for (int i = end - 1; i >= start; i--) {
+            if (buf.get(i) == ':') {
+                sep = i;
+                sepLen = 1;
+                break;
+            }
+            if (i + FULL_WIDTH_COLON.length <= end && matches(buf, i, FULL_WIDTH_COLON)) {
+                sep = i;
+                sepLen = FULL_WIDTH_COLON.length;
+                break;
+            }
+        }
+        int idLen = sep - start;
+        if (sep < 0 || idLen == 0 || idLen > MAX_ORDER_ID_LENGTH) {
+            return null;
+        }
+        OrderEventType type = textType(buf, sep + sepLen, end);
+        if (type == null) {
+            return null;
+        }
+        return new OrderEvent(ascii(buf, start, idLen), type, OrderEvent.NO_AMOUNT, 0L);
+    }
+
+    private static OrderEventType textType(ByteBuffer buf, int from, int to) {
+        for (OrderEventType t : OrderEventType.values()) {
+            String name = t.name();
+            if (to - from != name.length()) {
+                continue;
+            }
+            boolean eq = true;
+            for (int i = 0; i < name.length() && eq; i++) {
+                // ASCII upper-case fold
+                eq = (buf.get(from + i) & 0xDF) == name.charAt(i);
+            }
+            if (eq) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(ByteBuffer buf, int at, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buf.get(at + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(ByteBuffer buf, int at, int len) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + at, len, StandardCharsets.ISO_8859_1);
+        }
+        byte[] scratch = SCRATCH.get();
+        buf.get(at, scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int checkedLength(String orderId) {
+        int len = orderId.length();
+        if (len > MAX_ORDER_ID_LENGTH) {
+            throw new IllegalArgumentException("orderId too long: " + len);
+        }
+        return len;
+    }
+
+    private static void putAscii(byte[] out, int at, String orderId) {
+        for (int i = 0; i < orderId.length(); i++) {
+            char c = orderId.charAt(i);
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("orderId must be ASCII: " + orderId);
+            }
+            out[at + i] = (byte) c;
+        }
+    }
+
+    private static void putLong(byte[] out, int at, long v) {
+        for (int i = 7; i >= 0; i--) {
+            out[at + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /** Human readable form for logs (DLQ watchers etc.). */
+    public static String describe(ByteBuffer buf) {
+        List<OrderEvent> events = decodeAll(buf);
+        if (events == null) {
+            return StandardCharsets.UTF_8.decode(buf.duplicate()).toString();
+        }
+        return events.size() == 1 ? events.get(0).toString() : events.size() + " events " + events;
+    }
+}
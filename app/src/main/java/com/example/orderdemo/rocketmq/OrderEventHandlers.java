@@ -0,0 +1,80 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.FilterExpressionType;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * FIFO 事件处理器注册表（tag → 处理器，RocketMQConfig 中声明：on(PAID, orderService::markPaid)）
+ * 消费组只订阅自己负责的事件类型：filter 生成 TAG 过滤表达式（order_paid || order_shipped），由 Broker 端过滤；
+ * 收到的消息用 route 按 tag 得到事件类型，订单号取自 messageGroup（发送时即订单号），不解码消息体。
+ * 旧版本发送的 order_event 标签消息只能解码消息体得到类型，订阅了旧标签的消费组照样能处理。
+ * 新增事件类型：在 OrderEventType 中声明 tag，在这里注册处理器，再把它分配给一个消费组（app.rocketmq.fifoGroups）。
+ */
+public class OrderEventHandlers {
+
+    /** What a consumer acts on: the event type and the order. */
+    public record Routed(OrderEventType type, String orderId) {}
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(String orderId) throws Exception;
+    }
+
+    private final Map<OrderEventType, Handler> handlers = new EnumMap<>(OrderEventType.class);
+
+    public OrderEventHandlers on(OrderEventType type, Handler handler) {
+        if (handlers.putIfAbsent(type, handler) != null) {
+            throw new IllegalStateException("A handler for " + type + " is already registered");
+        }
+        return this;
+    }
+
+    public Set<OrderEventType> types() {
+        return Collections.unmodifiableSet(handlers.keySet());
+    }
+
+    /** TAG filter matching the given types, and the legacy tag when {@code legacy} is set. */
+    public static FilterExpression filter(Collection<OrderEventType> types, boolean legacy) {
+        StringJoiner tags = new StringJoiner(" || ");
+        types.forEach(t -> tags.add(t.tag()));
+        if (legacy) {
+            tags.add(OrderEventType.LEGACY_FIFO_TAG);
+        }
+        return new FilterExpression(tags.toString(), FilterExpressionType.TAG);
+    }
+
+    /**
+     * Type from the tag and order id from the message group (the first key as fallback). Only a message
+     * without a per-type tag or without either is decoded. Null if that message is malformed.
+     */
+    public static Routed route(MessageView view) {
+        OrderEventType type = OrderEventType.fromTag(view.getTag().orElse(null));
+        if (type != null) {
+            String orderId = view.getMessageGroup()
+                    .orElseGet(() -> view.getKeys().isEmpty() ? null : view.getKeys().iterator().next());
+            if (orderId != null) {
+                return new Routed(type, orderId);
+            }
+        }
+        OrderEvent event = OrderEventCodec.decode(view.getBody());
+        return event == null ? null : new Routed(event.type(), event.orderId());
+    }
+
+    /** @return false if no handler is registered for the type; the message is acknowledged as before */
+    public boolean handle(Routed routed) throws Exception {
+        Handler handler = handlers.get(routed.type());
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(routed.orderId());
+        return true;
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.orderdemo.rocketmq;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.rocketmq.client.apis.ClientException;
 import org.apache.rocketmq.client.apis.ClientServiceProvider;
 import org.apache.rocketmq.client.apis.message.Message;
 import org.apache.rocketmq.client.apis.producer.Producer;
@@ -8,34 +11,70 @@ import org.apache.rocketmq.client.apis.producer.Transaction;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 @Component
 public class OrderEventPublisher {
     private final ClientServiceProvider provider;
-    private final Producer fifoProducer;
+    private final ProducerPool fifoProducers;
+    private final PublishSpool spool;
     private final Producer txnProducer;
     private final String fifoTopic;
     private final String txnTopic;
     private final String delayTopic;
+    private final boolean textFormat;
+    private final SendTimers fifoSend;
+    private final SendTimers delaySend;
+    private final SendTimers halfSend;
+    private final SendTimers outboxSend;
+    private final SendTimers replaySend;
+    private final SendTimers commitTimers;
+    private final SendTimers rollbackTimers;
 
     /*
      * 依赖注入初始化
      * 注入 ClientServiceProvider：用于创建消息对象
-     * 注入 fifoProducer：FIFO 顺序消息生产者
+     * 注入 fifoProducers：FIFO 顺序消息生产者池（带在途窗口）
+     * 注入 spool：FIFO 事件发送失败或超时后的本地暂存（未开启时直接发送）
      * 注入 txnProducer：事务消息生产者
      * 获取配置的主题名称
+     * eventFormat：binary（默认）或 text，灰度期间旧消费者未升级完时设为 text
+     * 注入 MeterRegistry：rocketmq.send（type=fifo|delay|txn_half|outbox|dlq_replay）与 rocketmq.txn.end（outcome=commit|rollback）
+     * 两个直方图 Timer（固定桶边界，同 ConsumerMetrics），按 result=success|failure 区分
      */
     public OrderEventPublisher(ClientServiceProvider provider,
-                               Producer fifoProducer,
+                               ProducerPool fifoProducers,
+                               PublishSpool spool,
                                Producer txnProducer,
+                               MeterRegistry registry,
                                @Value("${app.rocketmq.fifoTopic}") String fifoTopic,
                                @Value("${app.rocketmq.txnTopic}") String txnTopic,
-                               @Value("${app.rocketmq.delayTopic}") String delayTopic) {
+                               @Value("${app.rocketmq.delayTopic}") String delayTopic,
+                               @Value("${app.rocketmq.eventFormat:binary}") String eventFormat) {
         this.provider = provider;
-        this.fifoProducer = fifoProducer;
+        this.fifoProducers = fifoProducers;
+        this.spool = spool;
         this.txnProducer = txnProducer;
         this.fifoTopic = fifoTopic;
         this.txnTopic = txnTopic;
         this.delayTopic = delayTopic;
+        this.textFormat = "text".equalsIgnoreCase(eventFormat);
+        this.fifoSend = new SendTimers(registry, "rocketmq.send", "type", "fifo");
+        this.delaySend = new SendTimers(registry, "rocketmq.send", "type", "delay");
+        this.halfSend = new SendTimers(registry, "rocketmq.send", "type", "txn_half");
+        this.outboxSend = new SendTimers(registry, "rocketmq.send", "type", "outbox");
+        this.replaySend = new SendTimers(registry, "rocketmq.send", "type", "dlq_replay");
+        this.commitTimers = new SendTimers(registry, "rocketmq.txn.end", "outcome", "commit");
+        this.rollbackTimers = new SendTimers(registry, "rocketmq.txn.end", "outcome", "rollback");
+    }
+
+    private byte[] body(OrderEvent event) {
+        return textFormat ? OrderEventCodec.encodeText(event) : OrderEventCodec.encode(event);
     }
 
     //delayTopic 变量在 sendDelayClose 方法中被实际使用，该方法用于发送一个延时消息来自动关闭超时未支付的订单。
@@ -44,19 +83,31 @@ public class OrderEventPublisher {
      * 发送 FIFO 顺序消息，用于订单状态变更事件
      * setTopic(fifoTopic)：设置目标主题
      * setKeys(orderId)：设置消息键（用于查询和过滤）
-     * setTag("order_event")：设置消息标签
+     * setTag(type.tag())：每种事件一个标签（order_paid / order_shipped），消费者按标签订阅与分发
      * setMessageGroup(orderId)：关键！设置消息组，确保同一订单的消息有序处理
-     * setBody(...)：消息体格式为 "订单ID:状态"
+     * setBody(...)：OrderEventCodec 编码的事件（或旧文本格式 "订单ID:状态"）
      */
-    public SendReceipt sendFifo(String orderId, String step) throws Exception {
-        Message msg = provider.newMessageBuilder()
+    public SendReceipt sendFifo(String orderId, OrderEventType type) throws Exception {
+        Message msg = buildFifo(orderId, type);
+        return fifoSend.time(() -> fifoProducers.send(msg));
+    }
+
+    /**
+     * Async FIFO send; throws {@link BackpressureException} at once when the in-flight window is full.
+     * With the spool enabled a failed or slow send completes with a null receipt once the event is spooled.
+     */
+    public CompletableFuture<SendReceipt> sendFifoAsync(String orderId, OrderEventType type) {
+        return spool.sendAsync(buildFifo(orderId, type), msg -> fifoSend.timeAsync(() -> fifoProducers.sendAsync(msg)));
+    }
+
+    private Message buildFifo(String orderId, OrderEventType type) {
+        return provider.newMessageBuilder()
                 .setTopic(fifoTopic)
                 .setKeys(orderId)
-                .setTag("order_event")
+                .setTag(type.tag())
                 .setMessageGroup(orderId)
-                .setBody((orderId + ":" + step).getBytes())
+                .setBody(body(OrderEvent.of(orderId, type)))
                 .build();
-        return fifoProducer.send(msg);
     }
 
     /*
@@ -67,49 +118,183 @@ public class OrderEventPublisher {
      * setTopic(txnTopic)：事务消息主题
      * setTag("order_created")：订单创建标签
      * addProperty("OrderId", orderId)：重要！添加属性，用于 transactionChecker 回查
-     * 消息体格式："created:订单ID"
+     * 消息体：CREATED 事件（含金额）
      * send(msg, tx)：发送半消息（事务预提交状态）
-     * TxHolder.set(tx)：将事务句柄存储到 ThreadLocal，供业务层使用
+     * 返回事务句柄，由调用方 commit / rollback（不经过 ThreadLocal，请求跑在虚拟线程或被换到其它线程上也成立）
      */
-    public void sendTxnCreated(String orderId) throws Exception {
+    /**
+     * 发送订单创建半消息，并把事务句柄直接返回给调用方。
+     * 同步创建在同一线程上结束事务，异步创建流水线在其它线程上 commit/rollback。
+     */
+    public Transaction beginTxnCreated(String orderId, BigDecimal amount) throws Exception {
         final Transaction tx = txnProducer.beginTransaction();
-        Message msg = provider.newMessageBuilder()
+        Message msg = createdMessage(orderId, amount);
+        halfSend.time(() -> txnProducer.send(msg, tx));
+        return new TimedTransaction(tx);
+    }
+
+    /** The order-created event: sent as a half message, or written to the outbox in createMode=outbox. */
+    public Message createdMessage(String orderId, BigDecimal amount) {
+        return provider.newMessageBuilder()
                 .setTopic(txnTopic)
                 .setKeys(orderId)
-                .setTag("order_created")
+                .setTag(OrderEventType.CREATED.tag())
                 .addProperty("OrderId", orderId)
-                .setBody(("created: " + orderId).getBytes())
+                .setBody(OrderEventCodec.encode(OrderEvent.of(orderId, OrderEventType.CREATED, amount)))
                 .build();
-        txnProducer.send(msg, tx);
-        TxHolder.set(tx);
     }
 
     /**
-     * 事务句柄的线程局部存储工具类
-     * set(Transaction t)：将事务对象存储到当前线程
-     * get()：获取当前线程的事务对象
-     * clear()：清除当前线程的事务对象（防止内存泄漏）
+     * 发件箱中继发送（createMode=outbox）：普通消息异步发送，走生产者池的在途窗口
+     * 窗口满时抛出 BackpressureException，由中继停止本批剩余消息的发送
+     */
+    public CompletableFuture<SendReceipt> sendOutboxAsync(Message msg) {
+        return outboxSend.timeAsync(() -> fifoProducers.sendAsync(msg));
+    }
+
+    /** DLQ replay (DlqReplayer): same pool and in-flight window as live sends, timed separately. */
+    public CompletableFuture<SendReceipt> sendReplayAsync(Message msg) {
+        return replaySend.timeAsync(() -> fifoProducers.sendAsync(msg));
+    }
+
+    /**
+     * 批量创建：整批订单共用一条半消息（v2 批量消息体，每个条目带金额）
+     * 属性 OrderId 取第一个订单号：整批订单在同一个本地事务中写入，回查时第一个订单存在即整批已提交
+     * 属性 OrderCount 记录订单数；Keys 为全部订单号，按任一订单号都能查到这条消息
      */
-    public static class TxHolder {
-        private static final ThreadLocal<Transaction> TL = new ThreadLocal<>();
-        public static void set(Transaction t) {TL.set(t);}
-        public static Transaction get() {return TL.get();}
-        public static void clear() {TL.remove();}
+    public Transaction beginTxnCreatedBatch(List<String> orderIds, List<BigDecimal> amounts) throws Exception {
+        List<OrderEvent> events = new ArrayList<>(orderIds.size());
+        for (int i = 0; i < orderIds.size(); i++) {
+            events.add(OrderEvent.of(orderIds.get(i), OrderEventType.CREATED, amounts.get(i)));
+        }
+        final Transaction tx = txnProducer.beginTransaction();
+        Message msg = provider.newMessageBuilder()
+                .setTopic(txnTopic)
+                .setKeys(orderIds.toArray(new String[0]))
+                .setTag(OrderEventType.CREATED.tag())
+                .addProperty("OrderId", orderIds.get(0))
+                .addProperty("OrderCount", String.valueOf(orderIds.size()))
+                .setBody(OrderEventCodec.encodeBatch(events))
+                .build();
+        halfSend.time(() -> txnProducer.send(msg, tx));
+        return new TimedTransaction(tx);
     }
 
     /** Schedule an auto-close message after `delayMillis` for a given orderId. */
     public SendReceipt sendDelayClose(String orderId, long delayMillis) throws Exception {
-        long ts = System.currentTimeMillis() + delayMillis;
+        Message msg = delayCloseMessage(orderId, delayMillis);
+        return delaySend.time(() -> fifoProducers.send(msg));
+    }
+
+    /** Non-blocking variant of {@link #sendDelayClose}, completes on the client's callback thread. */
+    public CompletableFuture<SendReceipt> sendDelayCloseAsync(String orderId, long delayMillis) {
+        return delaySend.timeAsync(() -> fifoProducers.sendAsync(delayCloseMessage(orderId, delayMillis)));
+    }
+
+    /**
+     * One delay message closing all given orders. With eventFormat=text the legacy consumers
+     * cannot read a batch body, so one message per order is sent instead.
+     */
+    public void sendDelayCloseBatch(List<String> orderIds, long delayMillis) throws Exception {
+        if (textFormat) {
+            for (String orderId : orderIds) {
+                sendDelayClose(orderId, delayMillis);
+            }
+            return;
+        }
+        List<OrderEvent> events = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            events.add(OrderEvent.of(orderId, OrderEventType.CLOSE));
+        }
         Message msg = provider.newMessageBuilder()
+                .setTopic(delayTopic)
+                .setKeys(orderIds.toArray(new String[0]))
+                .setTag(OrderEventType.CLOSE.tag())
+                .setDeliveryTimestamp(System.currentTimeMillis() + delayMillis)
+                .setBody(OrderEventCodec.encodeBatch(events))
+                .build();
+        delaySend.time(() -> fifoProducers.send(msg));
+    }
+
+    public Message delayCloseMessage(String orderId, long delayMillis) {
+        long ts = System.currentTimeMillis() + delayMillis;
+        return provider.newMessageBuilder()
                 .setTopic(delayTopic)
                 .setKeys(orderId)
-                .setTag("order_ttl")
-                .setMessageGroup(orderId)
+                .setTag(OrderEventType.CLOSE.tag())
+                // delay topic: the 5.x client rejects a message group together with a delivery timestamp
                 .setDeliveryTimestamp(ts)
-                .setBody((orderId + ":" + "CLOSE").getBytes())
+                .setBody(body(OrderEvent.of(orderId, OrderEventType.CLOSE)))
                 .build();
-        return fifoProducer.send(msg);
     }
 
+    /** Records the second phase of the half message (commit / rollback round trip to the proxy). */
+    private final class TimedTransaction implements Transaction {
+        private final Transaction delegate;
+
+        TimedTransaction(Transaction delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void commit() throws ClientException {
+            commitTimers.time(() -> {
+                delegate.commit();
+                return null;
+            });
+        }
+
+        @Override
+        public void rollback() throws ClientException {
+            rollbackTimers.time(() -> {
+                delegate.rollback();
+                return null;
+            });
+        }
+    }
+
+    /** A success / failure pair of histogram timers for one kind of broker call. */
+    private static final class SendTimers {
+        private final Timer success;
+        private final Timer failure;
 
+        SendTimers(MeterRegistry registry, String name, String tag, String value) {
+            this.success = timer(registry, name, tag, value, "success");
+            this.failure = timer(registry, name, tag, value, "failure");
+        }
+
+        private static Timer timer(MeterRegistry registry, String name, String tag, String value, String result) {
+            return Timer.builder(name)
+                    .tag(tag, value)
+                    .tag("result", result)
+                    .serviceLevelObjectives(ConsumerMetrics.HANDLER_BUCKETS)
+                    .register(registry);
+        }
+
+        <T, E extends Exception> T time(ThrowingCall<T, E> call) throws E {
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                T result = call.call();
+                ok = true;
+                return result;
+            } finally {
+                (ok ? success : failure).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /** Times until the client callback completes the future; the caller keeps the original future. */
+        <T> CompletableFuture<T> timeAsync(Supplier<CompletableFuture<T>> send) {
+            long start = System.nanoTime();
+            CompletableFuture<T> future = send.get();
+            future.whenComplete((r, e) -> (e == null ? success : failure)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            return future;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingCall<T, E extends Exception> {
+        T call() throws E;
+    }
 }
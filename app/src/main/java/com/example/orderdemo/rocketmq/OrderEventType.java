@@ -0,0 +1,54 @@
+package com.example.orderdemo.rocketmq;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单事件类型，code 写入二进制消息体，tag 写入消息标签，两者一旦发布都不可修改
+ * 消费者按 tag 在 Broker 端过滤、按 tag 分发（OrderEventHandlers），不需要先解码消息体
+ */
+public enum OrderEventType {
+    CREATED((byte) 1, "order_created"),
+    PAID((byte) 2, "order_paid"),
+    SHIPPED((byte) 3, "order_shipped"),
+    CLOSE((byte) 4, "order_ttl");
+
+    /** Tag of every FIFO event before per-type tags; such messages are routed by decoding the body. */
+    public static final String LEGACY_FIFO_TAG = "order_event";
+
+    private static final OrderEventType[] BY_CODE = new OrderEventType[5];
+    private static final Map<String, OrderEventType> BY_TAG = new HashMap<>();
+
+    static {
+        for (OrderEventType t : values()) {
+            BY_CODE[t.code] = t;
+            BY_TAG.put(t.tag, t);
+        }
+    }
+
+    private final byte code;
+    private final String tag;
+
+    OrderEventType(byte code, String tag) {
+        this.code = code;
+        this.tag = tag;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public String tag() {
+        return tag;
+    }
+
+    /** @return the type for a message tag, or null if the tag is not a per-type tag */
+    public static OrderEventType fromTag(String tag) {
+        return tag == null ? null : BY_TAG.get(tag);
+    }
+
+    /** @return the type for a wire code, or null if unknown */
+    public static OrderEventType fromCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.orderdemo.rocketmq;
+
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发件箱表 order_outbox（createMode=outbox）
+ * 业务事务内把待发送的消息原样写入（topic / tag / keys / messageGroup / deliveryTimestamp / 属性 / 消息体），
+ * 与订单行一起提交；OutboxRelay 按 id 顺序领取未发送的行，发送后批量标记 sent=1。
+ * sent: 0 待发送 -> 2 已领取（claimed_at 记下领取时间）-> 1 已发送，发送失败的行放回 0。
+ * 领取是一个短事务：FOR UPDATE SKIP LOCKED 锁行后改为 sent=2 就提交，多个节点的中继各自领取不同的行，
+ * 发送期间不持有行锁和连接；中继中途退出留下的 sent=2 行，超过 claimTimeout 后由中继放回 0 重新发送。
+ */
+@Component
+public class OrderOutbox {
+    private static final String INSERT_SQL =
+            "INSERT INTO order_outbox (topic, tag, msg_keys, message_group, deliver_at, properties, body) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String CLAIM_SQL =
+            "SELECT id, topic, tag, msg_keys, message_group, deliver_at, properties, body, created_at " +
+            "FROM order_outbox WHERE sent = 0 ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String MARK_CLAIMED_SQL =
+            "UPDATE order_outbox SET sent = 2, claimed_at = CURRENT_TIMESTAMP(3) WHERE id IN (:ids)";
+    private static final String RELEASE_SQL =
+            "UPDATE order_outbox SET sent = 0, claimed_at = NULL WHERE id IN (:ids) AND sent = 2";
+    private static final String RELEASE_STALE_SQL =
+            "UPDATE order_outbox SET sent = 0, claimed_at = NULL WHERE sent = 2 AND claimed_at < ?";
+    private static final String MARK_SENT_SQL =
+            "UPDATE order_outbox SET sent = 1, sent_at = CURRENT_TIMESTAMP(3), claimed_at = NULL WHERE id IN (:ids)";
+    private static final String PURGE_SQL =
+            "DELETE FROM order_outbox WHERE sent = 1 AND sent_at < ? LIMIT ?";
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final ClientServiceProvider provider;
+
+    /** A claimed row: the message to send and when it was written (for relay lag). */
+    public record Entry(long id, Message message, long createdAt) {}
+
+    public OrderOutbox(JdbcTemplate jdbc, NamedParameterJdbcTemplate named, ClientServiceProvider provider) {
+        this.jdbc = jdbc;
+        this.named = named;
+        this.provider = provider;
+    }
+
+    /** Store the messages in the caller's transaction; they become visible to the relay on commit. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(List<Message> messages) {
+        List<Object[]> args = new ArrayList<>(messages.size());
+        for (Message m : messages) {
+            ByteBuffer src = m.getBody().duplicate();
+            byte[] body = new byte[src.remaining()];
+            src.get(body);
+            args.add(new Object[]{m.getTopic(), m.getTag().orElse(null),
+                    m.getKeys().isEmpty() ? null : String.join(",", m.getKeys()),
+                    m.getMessageGroup().orElse(null), m.getDeliveryTimestamp().orElse(null),
+                    encodeProperties(m.getProperties()), body});
+        }
+        jdbc.batchUpdate(INSERT_SQL, args);
+    }
+
+    /**
+     * Lock up to {@code limit} unsent rows in id order and mark them claimed (sent=2). Commit right after:
+     * the rows stay out of other claims without holding their locks while they are sent.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Entry> claim(int limit) {
+        List<Entry> entries = jdbc.query(CLAIM_SQL, (rs, i) -> {
+            MessageBuilder b = provider.newMessageBuilder()
+                    .setTopic(rs.getString("topic"))
+                    .setBody(rs.getBytes("body"));
+            String tag = rs.getString("tag");
+            if (tag != null) {
+                b.setTag(tag);
+            }
+            String keys = rs.getString("msg_keys");
+            if (keys != null) {
+                b.setKeys(keys.split(","));
+            }
+            String group = rs.getString("message_group");
+            if (group != null) {
+                b.setMessageGroup(group);
+            }
+            long deliverAt = rs.getLong("deliver_at");
+            if (!rs.wasNull()) {
+                b.setDeliveryTimestamp(deliverAt);
+            }
+            decodeProperties(rs.getString("properties"), b);
+            Timestamp created = rs.getTimestamp("created_at");
+            return new Entry(rs.getLong("id"), b.build(), created == null ? System.currentTimeMillis() : created.getTime());
+        }, limit);
+        if (!entries.isEmpty()) {
+            named.update(MARK_CLAIMED_SQL, new MapSqlParameterSource("ids", entries.stream().map(Entry::id).toList()));
+        }
+        return entries;
+    }
+
+    /** Hand claimed rows that were not acknowledged back to the relay. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            named.update(RELEASE_SQL, new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    /** Return rows claimed before {@code before} by a relay that never marked them (autocommit). */
+    public int releaseStale(Timestamp before) {
+        return jdbc.update(RELEASE_STALE_SQL, before);
+    }
+
+    /** One statement for the whole batch. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markSent(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            named.update(MARK_SENT_SQL, new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    /** Delete sent rows older than {@code before}, at most {@code limit} per call (autocommit). */
+    public int purgeSent(Timestamp before, int limit) {
+        return jdbc.update(PURGE_SQL, before, limit);
+    }
+
+    /* "k=v" lines; the properties set by OrderEventPublisher never contain '=' or newlines in keys; shared with DlqStore */
+    static String encodeProperties(Map<String, String> properties) {
+        if (properties.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        properties.forEach((k, v) -> sb.append(k).append('=').append(v).append('\n'));
+        return sb.toString();
+    }
+
+    static void decodeProperties(String encoded, MessageBuilder b) {
+        if (encoded == null) {
+            return;
+        }
+        for (String line : encoded.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq > 0) {
+                b.addProperty(line.substring(0, eq), line.substring(eq + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.orderdemo.rocketmq;
+
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.sharding.ShardRouter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 事务消息检查器，用于处理事务消息的回查机制
+ * 当 RocketMQ 无法确定事务消息状态时，会调用此检查器
+ * 通过查询数据库中是否存在该订单来决定事务结果：
+ * 如果订单存在 → COMMIT（提交事务消息）
+ * 如果订单不存在 → ROLLBACK（回滚事务消息）
+ * 这是分布式事务一致性的关键组件
+ *
+ * Broker 故障切换后会集中回查大量半消息：
+ * 1) 本地缓存最近已提交/已回滚的订单号，大部分回查直接在内存中应答
+ * 2) 未命中的回查在一个短窗口内合并成一次 WHERE order_id IN (...) 查询
+ * 只缓存确定的结果：本节点记录的提交/回滚，以及数据库中已存在的订单
+ * 分库时先按订单号所在分片并行查询；在所属分片上没找到的再到全部分片上查一遍，
+ * 误判 ROLLBACK 会丢掉已落库订单的创建事件，而增加分片后尚未搬迁的行还在旧分片上
+ */
+/** Transaction checker used by txnProducer to resolve unknown states via cache + batched DB lookup. */
+@Component
+public class OrderTransactionChecker implements TransactionChecker {
+    private static final Logger log = LoggerFactory.getLogger(OrderTransactionChecker.class);
+
+    private final OrderRepository orderRepo;
+    private final ShardRouter shards;
+    private final Cache<String, TransactionResolution> outcomes;
+    private final Map<String, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final long windowMillis;
+    private final int maxBatch;
+    private final long checkTimeoutMillis;
+    private final Timer lookupTimer;
+    private final DistributionSummary batchSize;
+    /* txn.checker.checks：回查速率与结论，source=cache（内存应答）| db（合并查询） */
+    private final Map<TransactionResolution, Counter> cacheResolutions = new EnumMap<>(TransactionResolution.class);
+    private final Map<TransactionResolution, Counter> dbResolutions = new EnumMap<>(TransactionResolution.class);
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public OrderTransactionChecker(OrderRepository orderRepo,
+                                   ShardRouter shards,
+                                   MeterRegistry registry,
+                                   @Value("${app.rocketmq.txnChecker.cacheSize:100000}") long cacheSize,
+                                   @Value("${app.rocketmq.txnChecker.cacheTtl:30m}") Duration cacheTtl,
+                                   @Value("${app.rocketmq.txnChecker.window:10ms}") Duration window,
+                                   @Value("${app.rocketmq.txnChecker.maxBatch:500}") int maxBatch,
+                                   @Value("${app.rocketmq.txnChecker.timeout:3s}") Duration checkTimeout) {
+        this.orderRepo = orderRepo;
+        this.shards = shards;
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        this.windowMillis = window.toMillis();
+        this.maxBatch = maxBatch;
+        this.checkTimeoutMillis = checkTimeout.toMillis();
+
+        CaffeineCacheMetrics.monitor(registry, outcomes, "txnCheckerOutcomes");
+        Gauge.builder("txn.checker.cache.hit.ratio", outcomes, c -> c.stats().hitRate())
+                .description("Share of transaction back-checks answered from memory")
+                .register(registry);
+        this.lookupTimer = Timer.builder("txn.checker.lookup")
+                .description("Latency of one coalesced order_id IN (...) lookup")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("txn.checker.lookup.batch.size")
+                .description("Back-checks answered by one DB lookup")
+                .register(registry);
+        for (TransactionResolution r : TransactionResolution.values()) {
+            cacheResolutions.put(r, checks(registry, r, "cache"));
+            dbResolutions.put(r, checks(registry, r, "db"));
+        }
+
+        this.flusher = new Thread(this::flushLoop, "txn-checker-lookup");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static Counter checks(MeterRegistry registry, TransactionResolution resolution, String source) {
+        return Counter.builder("txn.checker.checks")
+                .description("Transaction back-checks by resolution and where the answer came from")
+                .tag("resolution", resolution.name())
+                .tag("source", source)
+                .register(registry);
+    }
+
+    /** Called once the order row is committed. */
+    public void recordCommitted(String orderId) {
+        outcomes.put(orderId, TransactionResolution.COMMIT);
+    }
+
+    /** Called once the local transaction for the order has rolled back. */
+    public void recordRolledBack(String orderId) {
+        outcomes.put(orderId, TransactionResolution.ROLLBACK);
+    }
+
+    @Override
+    public TransactionResolution check(MessageView messageView) {
+        String orderId = messageView.getProperties().get("OrderId");
+        if (orderId == null) {
+            return resolved(dbResolutions, TransactionResolution.ROLLBACK);
+        }
+        TransactionResolution cached = outcomes.getIfPresent(orderId);
+        if (cached != null) {
+            return resolved(cacheResolutions, cached);
+        }
+        return resolved(dbResolutions, lookupAndWait(orderId));
+    }
+
+    private static TransactionResolution resolved(Map<TransactionResolution, Counter> counters, TransactionResolution r) {
+        counters.get(r).increment();
+        return r;
+    }
+
+    private TransactionResolution lookupAndWait(String orderId) {
+        CompletableFuture<Boolean> f = pending.computeIfAbsent(orderId, id -> {
+            queue.add(id);
+            return new CompletableFuture<>();
+        });
+        try {
+            boolean exists = f.get(checkTimeoutMillis, TimeUnit.MILLISECONDS);
+            return exists ? TransactionResolution.COMMIT : TransactionResolution.ROLLBACK;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TransactionResolution.UNKNOWN;
+        } catch (Exception e) {
+            // the broker checks again later
+            log.warn("Transaction check lookup failed. OrderId={}", orderId, e);
+            return TransactionResolution.UNKNOWN;
+        }
+    }
+
+    private void flushLoop() {
+        List<String> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (queue.size() < maxBatch - 1) {
+                    Thread.sleep(windowMillis);
+                }
+                queue.drainTo(batch, maxBatch - 1);
+                lookup(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void lookup(List<String> batch) {
+        Set<String> existing;
+        try {
+            existing = lookupTimer.recordCallable(() -> findExisting(batch));
+        } catch (Exception e) {
+            for (String id : batch) {
+                CompletableFuture<Boolean> f = pending.remove(id);
+                if (f != null) {
+                    f.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+        batchSize.record(batch.size());
+        for (String id : batch) {
+            boolean exists = existing.contains(id);
+            if (exists) {
+                recordCommitted(id);
+            }
+            CompletableFuture<Boolean> f = pending.remove(id);
+            if (f != null) {
+                f.complete(exists);
+            }
+        }
+    }
+
+    private Set<String> findExisting(List<String> batch) {
+        Set<String> existing = new HashSet<>(shards.gather(batch, orderRepo::findExistingOrderIds));
+        if (shards.shards() == 1 || existing.size() == batch.size()) {
+            return existing;
+        }
+        List<String> misses = new ArrayList<>();
+        for (String id : batch) {
+            if (!existing.contains(id)) {
+                misses.add(id);
+            }
+        }
+        shards.scatter(() -> orderRepo.findExistingOrderIds(misses)).forEach(existing::addAll);
+        return existing;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(2));
+    }
+}
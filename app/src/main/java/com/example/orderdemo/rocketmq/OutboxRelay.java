@@ -0,0 +1,260 @@
+package com.example.orderdemo.rocketmq;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.service.OrderStatusChangedEvent;
+import com.example.orderdemo.sharding.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发件箱中继（app.order.createMode=outbox）
+ * 一个后台线程持续从 order_outbox 按 id 顺序领取未发送的行（每批 batchSize 条）。每轮分三步：
+ * 在每个分片上用一个短事务领取一批并标记为已领取（sent=2）后提交，全部异步发送；
+ * 不持有事务、连接和行锁，用同一个截止时间（sendTimeout）等待所有分片的回执；
+ * 再在每个分片上用一个短事务把成功的行标记为已发送，没有回执的行放回待发送。
+ * 因此 Broker 变慢时每轮最多等待一个 sendTimeout，不会逐个分片累加，也不会占住数据库连接。
+ * 订单创建事务提交后立即唤醒中继，空闲时每 pollInterval 轮询一次。
+ * 崩溃恢复：发送后、标记提交前崩溃的行停留在 sent=2，超过 claimTimeout 后放回待发送，会再发一次；
+ * 下游靠既有去重保证幂等（FIFO/延时消费者的条件更新、message_log），不会多于 at-least-once。
+ * 发送失败的行下一轮重试，因此重试的行可能排在更大 id 之后发出。
+ * 分库时每个分片都有自己的 order_outbox，领取、标记与清理都在各自分片上进行。
+ */
+@Component
+@ConditionalOnProperty(name = "app.order.createMode", havingValue = "outbox")
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OrderOutbox outbox;
+    private final OrderEventPublisher publisher;
+    private final ShardRouter shards;
+    private final TransactionTemplate txTemplate;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long sendTimeoutMillis;
+    private final Duration claimTimeout;
+    private final Duration keepSent;
+    private final int purgeChunk;
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final Counter published;
+    private final Counter failed;
+    private final DistributionSummary batchSizes;
+    private final Timer lag;
+    private final Thread relay;
+    private volatile boolean running = true;
+    private long nextPurge;
+
+    public OutboxRelay(OrderOutbox outbox,
+                       OrderEventPublisher publisher,
+                       ShardRouter shards,
+                       TransactionTemplate txTemplate,
+                       MeterRegistry registry,
+                       @Value("${app.order.outbox.batchSize:200}") int batchSize,
+                       @Value("${app.order.outbox.pollInterval:100ms}") Duration pollInterval,
+                       @Value("${app.order.outbox.sendTimeout:3s}") Duration sendTimeout,
+                       @Value("${app.order.outbox.claimTimeout:1m}") Duration claimTimeout,
+                       @Value("${app.order.outbox.keepSent:1h}") Duration keepSent,
+                       @Value("${app.order.outbox.purgeChunk:5000}") int purgeChunk) {
+        this.outbox = outbox;
+        this.publisher = publisher;
+        this.shards = shards;
+        this.txTemplate = txTemplate;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollInterval.toMillis();
+        this.sendTimeoutMillis = sendTimeout.toMillis();
+        this.claimTimeout = claimTimeout;
+        this.keepSent = keepSent;
+        this.purgeChunk = purgeChunk;
+        this.published = relayed(registry, "success");
+        this.failed = relayed(registry, "failure");
+        this.batchSizes = DistributionSummary.builder("outbox.relay.batch.size")
+                .description("Outbox rows claimed by one relay claim on one shard")
+                .register(registry);
+        this.lag = Timer.builder("outbox.relay.lag")
+                .description("Time from writing an outbox row to the broker acknowledging it")
+                .serviceLevelObjectives(ConsumerMetrics.DELAY_BUCKETS)
+                .register(registry);
+        this.relay = new Thread(this::relayLoop, "outbox-relay");
+        this.relay.setDaemon(true);
+        this.relay.start();
+    }
+
+    private static Counter relayed(MeterRegistry registry, String result) {
+        return Counter.builder("outbox.relay.messages")
+                .description("Outbox rows sent by the relay")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** A committed create wrote outbox rows: don't wait for the next poll. */
+    @TransactionalEventListener
+    public void onCreated(OrderStatusChangedEvent e) {
+        if (e.status() == OrderStatus.CREATED && wakeUp.availablePermits() == 0) {
+            wakeUp.release();
+        }
+    }
+
+    private void relayLoop() {
+        while (running) {
+            boolean more = false;
+            try {
+                more = relayRound();
+            } catch (Exception e) {
+                log.warn("Outbox relay round failed, will retry", e);
+            }
+            try {
+                purgeIfDue();
+            } catch (Exception e) {
+                log.warn("Outbox purge failed, will retry", e);
+            }
+            if (more) {
+                continue;
+            }
+            try {
+                if (wakeUp.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS)) {
+                    wakeUp.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claim and send a batch on every shard, wait for all acknowledgements against one deadline, then mark each
+     * shard's batch. Returns whether a shard had a full batch that went out completely, i.e. more rows are
+     * probably waiting.
+     */
+    boolean relayRound() {
+        List<Batch> batches = new ArrayList<>(shards.shards());
+        for (int shard = 0; shard < shards.shards(); shard++) {
+            try {
+                Batch batch = claimAndSend(shard);
+                if (batch != null) {
+                    batches.add(batch);
+                }
+            } catch (Exception e) {
+                log.warn("Outbox relay claim failed on shard {}, will retry", shard, e);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        boolean more = false;
+        for (Batch batch : batches) {
+            int sent = complete(batch, deadline);
+            more |= batch.entries().size() == batchSize && sent == batchSize;
+        }
+        return more;
+    }
+
+    /* Claimed rows of one shard and the sends started for them, in the same order; sends may be shorter. */
+    private record Batch(int shard, List<OrderOutbox.Entry> entries, List<CompletableFuture<SendReceipt>> sends) {}
+
+    /** Short transaction on the shard to claim a batch, then start the sends with no transaction open. */
+    private Batch claimAndSend(int shard) {
+        List<OrderOutbox.Entry> entries = shards.call(shard, () -> txTemplate.execute(status -> outbox.claim(batchSize)));
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        batchSizes.record(entries.size());
+        List<CompletableFuture<SendReceipt>> sends = new ArrayList<>(entries.size());
+        for (OrderOutbox.Entry e : entries) {
+            try {
+                sends.add(publisher.sendOutboxAsync(e.message()));
+            } catch (BackpressureException full) {
+                // the rest of the batch is released for the next round
+                break;
+            } catch (Exception ex) {
+                log.warn("Outbox send failed, row {} stays pending", e.id(), ex);
+                sends.add(CompletableFuture.failedFuture(ex));
+            }
+        }
+        return new Batch(shard, entries, sends);
+    }
+
+    /** Wait for the batch's acknowledgements until {@code deadline}, then mark sent and release the rest. */
+    private int complete(Batch batch, long deadline) {
+        List<OrderOutbox.Entry> entries = batch.entries();
+        List<Long> sent = new ArrayList<>(batch.sends().size());
+        List<Long> unsent = new ArrayList<>();
+        boolean interrupted = false;
+        for (int i = 0; i < entries.size(); i++) {
+            long id = entries.get(i).id();
+            if (interrupted || i >= batch.sends().size()) {
+                unsent.add(id);
+                continue;
+            }
+            try {
+                batch.sends().get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sent.add(id);
+                lag.record(Math.max(0, System.currentTimeMillis() - entries.get(i).createdAt()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                unsent.add(id);
+            } catch (Exception ex) {
+                log.warn("Outbox send failed, row {} stays pending", id, ex);
+                unsent.add(id);
+            }
+        }
+        try {
+            shards.run(batch.shard(), () -> txTemplate.executeWithoutResult(status -> {
+                outbox.markSent(sent);
+                outbox.release(unsent);
+            }));
+        } catch (Exception e) {
+            // the rows stay claimed; claimTimeout hands them back and the sent ones go out again
+            log.warn("Outbox relay could not mark {} rows on shard {}, they are retried after {}",
+                    entries.size(), batch.shard(), claimTimeout, e);
+        }
+        published.increment(sent.size());
+        failed.increment(unsent.size());
+        return sent.size();
+    }
+
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextPurge) {
+            return;
+        }
+        nextPurge = now + TimeUnit.MINUTES.toMillis(1);
+        Timestamp before = new Timestamp(now - keepSent.toMillis());
+        Timestamp staleClaims = new Timestamp(now - claimTimeout.toMillis());
+        int deleted = 0;
+        int released = 0;
+        for (int shard = 0; shard < shards.shards(); shard++) {
+            released += shards.call(shard, () -> outbox.releaseStale(staleClaims));
+            deleted += shards.call(shard, () -> outbox.purgeSent(before, purgeChunk));
+        }
+        if (released > 0) {
+            log.warn("Released {} outbox rows claimed more than {} ago, they will be sent again", released, claimTimeout);
+        }
+        if (deleted > 0) {
+            log.debug("Purged {} sent outbox rows", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        relay.interrupt();
+        relay.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
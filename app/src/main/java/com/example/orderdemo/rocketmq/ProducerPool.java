@@ -0,0 +1,106 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * FIFO / 延时消息生产者池
+ * messageGroup → producer 按哈希固定映射，同一订单的消息始终经由同一个生产者（同一条 gRPC 通道）发送，保证顺序
+ * 所有发送共享一个在途窗口（maxInFlight），窗口满时立即抛出 BackpressureException，不阻塞调用线程
+ */
+public class ProducerPool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ProducerPool.class);
+
+    private final Producer[] producers;
+    private final Semaphore window;
+    private final int maxInFlight;
+    private final Counter rejected;
+
+    public ProducerPool(Producer[] producers, int maxInFlight, MeterRegistry registry) {
+        if (producers.length == 0) {
+            throw new IllegalArgumentException("producer pool must not be empty");
+        }
+        this.producers = producers;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        Gauge.builder("rocketmq.producer.inflight", this, ProducerPool::inFlight)
+                .description("Messages sent but not yet acknowledged by the proxy")
+                .register(registry);
+        Gauge.builder("rocketmq.producer.pool.size", () -> producers.length).register(registry);
+        this.rejected = Counter.builder("rocketmq.producer.backpressure.rejected")
+                .description("Sends rejected because the in-flight window was full")
+                .register(registry);
+    }
+
+    /** Stable affinity: the same messageGroup always maps to the same producer. */
+    public Producer forGroup(String messageGroup) {
+        if (producers.length == 1 || messageGroup == null) {
+            return producers[0];
+        }
+        return producers[Math.floorMod(messageGroup.hashCode(), producers.length)];
+    }
+
+    /** Async send inside the in-flight window; throws {@link BackpressureException} when it is full. */
+    public CompletableFuture<SendReceipt> sendAsync(Message msg) {
+        acquire();
+        CompletableFuture<SendReceipt> f;
+        try {
+            f = forGroup(msg.getMessageGroup().orElse(null)).sendAsync(msg);
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+        return f.whenComplete((r, e) -> window.release());
+    }
+
+    /** Blocking send that still counts against the in-flight window. */
+    public SendReceipt send(Message msg) throws Exception {
+        acquire();
+        try {
+            return forGroup(msg.getMessageGroup().orElse(null)).send(msg);
+        } finally {
+            window.release();
+        }
+    }
+
+    private void acquire() {
+        if (!window.tryAcquire()) {
+            rejected.increment();
+            throw new BackpressureException("Producer in-flight window full (" + maxInFlight + ")");
+        }
+    }
+
+    public int inFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    public int size() {
+        return producers.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Producer p : producers) {
+            try {
+                p.close();
+            } catch (IOException e) {
+                log.warn("Failed to close pooled producer", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageBuilder;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * FIFO 事件发送失败时的本地暂存（app.rocketmq.spool.enabled=true）
+ * 发送失败、或超过 latencyBudget 还没有回执的消息追加到 SpoolJournal（内存映射文件），调用方立即得到 null 回执（已暂存）；
+ * 超时的那次发送并没有取消，之后成功的话 Broker 会收到两份，下游靠既有去重保证幂等（条件更新、message_log）。
+ * 顺序：同一 messageGroup 的直接发送还没有结果（回执、失败转暂存或超出预算转暂存）时，后续消息排在它后面，
+ * 结果出来后再决定走向；某个 messageGroup 还有消息在暂存中时，它后续的消息不再直接发送，也追加到暂存，由排空线程按日志顺序发出。
+ * 排空线程从 checkpoint 起每批取一段 messageGroup 互不相同的记录并发发送，等待全部回执后把 checkpoint 推进到
+ * 第一个失败的记录之前；失败时按 retryBackoff 翻倍退避。失败记录之后已发出的记录只在内存中记下，不再重发（重启后会再发一次）。
+ * 重启时从 checkpoint 起恢复未发送的记录和仍在暂存中的 messageGroup，应用就绪后开始排空。
+ * 生产者在途窗口已满（BackpressureException）不进暂存，照常返回 429；暂存超过 maxSize 时同样按背压处理。
+ * 追加日志与登记 messageGroup 在同一把 ReentrantLock 下完成（不放进 ConcurrentHashMap.compute、也不用 synchronized），
+ * 建段、刷盘等文件操作不会钉住虚拟线程的载体线程，也不会卡住同一哈希桶上的其他 key。
+ * 未开启时不创建文件和线程，发送与原来完全相同。
+ */
+@Component
+public class PublishSpool {
+    private static final Logger log = LoggerFactory.getLogger(PublishSpool.class);
+
+    private static final long IDLE_POLL_MILLIS = 1000;
+
+    private final ProducerPool producers;
+    private final ClientServiceProvider provider;
+    private final SpoolJournal journal;
+    private final long latencyBudgetMillis;
+    private final long maxBytes;
+    private final int drainBatch;
+    private final long sendTimeoutMillis;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    /* message group -> position of its last spooled record; written under appendLock */
+    private final Map<String, Long> pendingGroups = new ConcurrentHashMap<>();
+    /* append + pendingGroups.put happen together, so an earlier position never overwrites a later one */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /* message group -> result of its latest send that has not resolved yet; the next message waits for it */
+    private final Map<String, CompletableFuture<SendReceipt>> inFlight = new ConcurrentHashMap<>();
+    /* drainer only: records acknowledged while an earlier record of the batch failed */
+    private final Set<Long> sentAhead = new HashSet<>();
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final ScheduledExecutorService budgetTimer;
+    private final Thread drainer;
+    private final Counter spooledOnFailure;
+    private final Counter spooledOnLatency;
+    private final Counter spooledBehindGroup;
+    private final Counter rejected;
+    private final Counter drained;
+    private final Counter drainFailed;
+    private final Timer lag;
+    private volatile boolean running = true;
+
+    public PublishSpool(ProducerPool producers,
+                        ClientServiceProvider provider,
+                        MeterRegistry registry,
+                        @Value("${app.rocketmq.spool.enabled:false}") boolean enabled,
+                        @Value("${app.rocketmq.spool.dir:spool}") String dir,
+                        @Value("${app.rocketmq.spool.segmentSize:64MB}") DataSize segmentSize,
+                        @Value("${app.rocketmq.spool.maxSize:1GB}") DataSize maxSize,
+                        @Value("${app.rocketmq.spool.forceOnAppend:false}") boolean forceOnAppend,
+                        @Value("${app.rocketmq.spool.latencyBudget:2s}") Duration latencyBudget,
+                        @Value("${app.rocketmq.spool.drainBatch:100}") int drainBatch,
+                        @Value("${app.rocketmq.spool.sendTimeout:3s}") Duration sendTimeout,
+                        @Value("${app.rocketmq.spool.retryBackoff:1s}") Duration retryBackoff,
+                        @Value("${app.rocketmq.spool.maxRetryBackoff:30s}") Duration maxRetryBackoff) {
+        this.producers = producers;
+        this.provider = provider;
+        this.latencyBudgetMillis = latencyBudget.toMillis();
+        this.maxBytes = maxSize.toBytes();
+        this.drainBatch = drainBatch;
+        this.sendTimeoutMillis = sendTimeout.toMillis();
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+        this.spooledOnFailure = spooled(registry, "failure");
+        this.spooledOnLatency = spooled(registry, "latency");
+        this.spooledBehindGroup = spooled(registry, "group_pending");
+        this.rejected = Counter.builder("rocketmq.spool.rejected")
+                .description("Messages refused because the spool was full")
+                .register(registry);
+        this.drained = drained(registry, "success");
+        this.drainFailed = drained(registry, "failure");
+        this.lag = Timer.builder("rocketmq.spool.lag")
+                .description("Time from spooling a message to the broker acknowledging the re-send")
+                .serviceLevelObjectives(ConsumerMetrics.DELAY_BUCKETS)
+                .register(registry);
+        if (!enabled) {
+            this.journal = null;
+            this.budgetTimer = null;
+            this.drainer = null;
+            return;
+        }
+        try {
+            this.journal = new SpoolJournal(Path.of(dir), (int) segmentSize.toBytes(), forceOnAppend);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the publish spool in " + dir, e);
+        }
+        recoverPendingGroups();
+        Gauge.builder("rocketmq.spool.pending.bytes", journal, SpoolJournal::pendingBytes)
+                .description("Spooled bytes not yet acknowledged by the broker")
+                .register(registry);
+        Gauge.builder("rocketmq.spool.pending.groups", pendingGroups, Map::size)
+                .description("Message groups whose next messages go through the spool to keep their order")
+                .register(registry);
+        this.budgetTimer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("spool-budget").daemon(true).factory());
+        this.drainer = new Thread(this::drainLoop, "spool-drainer");
+        this.drainer.setDaemon(true);
+    }
+
+    /** Re-sends wait for the consumers too: the in-memory broker drops messages nobody subscribes to yet. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startDraining() {
+        if (drainer != null) {
+            drainer.start();
+        }
+    }
+
+    private static Counter spooled(MeterRegistry registry, String reason) {
+        return Counter.builder("rocketmq.spool.appended")
+                .description("Messages written to the local spool instead of waiting for the broker")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static Counter drained(MeterRegistry registry, String result) {
+        return Counter.builder("rocketmq.spool.drained")
+                .description("Spooled messages re-sent by the drainer")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private void recoverPendingGroups() {
+        int entries = 0;
+        for (SpoolJournal.Entry e = journal.read(journal.committed()); e != null; e = journal.read(e.next())) {
+            if (e.messageGroup() != null) {
+                pendingGroups.put(e.messageGroup(), e.position());
+            }
+            entries++;
+        }
+        if (entries > 0) {
+            log.info("Publish spool has {} unsent messages in {} message groups, draining", entries, pendingGroups.size());
+        }
+    }
+
+    public boolean enabled() {
+        return journal != null;
+    }
+
+    /**
+     * Sends through {@code send}, or spools the message: always while its group has spooled messages, otherwise
+     * when the send fails or outlasts the latency budget. A null receipt means the message was spooled.
+     * While an earlier message of the same group is still being sent, this one starts only once that one resolves,
+     * so a direct send can't be overtaken; a rejection then fails the returned future instead of being thrown.
+     * @throws BackpressureException when the producer window is full, or the spool is needed and full
+     */
+    public CompletableFuture<SendReceipt> sendAsync(Message msg, Function<Message, CompletableFuture<SendReceipt>> send) {
+        if (journal == null) {
+            return send.apply(msg);
+        }
+        String group = msg.getMessageGroup().orElse(null);
+        CompletableFuture<SendReceipt> result = new CompletableFuture<>();
+        CompletableFuture<SendReceipt> previous = null;
+        if (group != null) {
+            previous = inFlight.put(group, result);
+            result.whenComplete((r, e) -> inFlight.remove(group, result));
+        }
+        if (previous != null && !previous.isDone()) {
+            previous.whenComplete((r, e) -> {
+                try {
+                    start(msg, send, result);
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+            return result;
+        }
+        try {
+            start(msg, send, result);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return result;
+    }
+
+    /** Spools behind the group, or sends with {@code result} resolved by an {@link Attempt}. */
+    private void start(Message msg, Function<Message, CompletableFuture<SendReceipt>> send,
+                       CompletableFuture<SendReceipt> result) {
+        String group = msg.getMessageGroup().orElse(null);
+        if (group != null && pendingGroups.containsKey(group)) {
+            append(msg, spooledBehindGroup);
+            result.complete(null);
+            return;
+        }
+        CompletableFuture<SendReceipt> sent;
+        try {
+            sent = send.apply(msg);
+        } catch (BackpressureException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // e.g. the producer is still starting (startup.mode=parallel) and did not come up in time
+            sent = CompletableFuture.failedFuture(e);
+        }
+        Attempt attempt = new Attempt(msg, result);
+        if (latencyBudgetMillis > 0 && !sent.isDone()) {
+            attempt.budget = budgetTimer.schedule(attempt, latencyBudgetMillis, TimeUnit.MILLISECONDS);
+        }
+        sent.whenComplete(attempt);
+    }
+
+    /** Resolves one send: the receipt, or spooled on failure / when the budget runs out, whichever comes first. */
+    private final class Attempt implements Runnable, BiConsumer<SendReceipt, Throwable> {
+        final Message msg;
+        final CompletableFuture<SendReceipt> result;
+        final AtomicBoolean spooled = new AtomicBoolean();
+        volatile ScheduledFuture<?> budget;
+
+        Attempt(Message msg, CompletableFuture<SendReceipt> result) {
+            this.msg = msg;
+            this.result = result;
+        }
+
+        @Override
+        public void accept(SendReceipt receipt, Throwable error) {
+            ScheduledFuture<?> b = budget;
+            if (b != null) {
+                b.cancel(false);
+            }
+            if (error == null) {
+                // also when the budget ran out first: the spooled copy is then a duplicate
+                result.complete(receipt);
+                return;
+            }
+            if (!spooled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                append(msg, spooledOnFailure);
+                result.complete(null);
+            } catch (RuntimeException e) {
+                error.addSuppressed(e);
+                result.completeExceptionally(error);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone() || !spooled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                append(msg, spooledOnLatency);
+                result.complete(null);
+            } catch (RuntimeException e) {
+                // spool full: the send in flight decides after all
+                spooled.set(false);
+            }
+        }
+    }
+
+    private void append(Message msg, Counter reason) {
+        if (journal.pendingBytes() >= maxBytes) {
+            rejected.increment();
+            throw new BackpressureException("Publish spool full (" + maxBytes + " bytes)");
+        }
+        String group = msg.getMessageGroup().orElse(null);
+        appendLock.lock();
+        try {
+            long position = journalAppend(msg);
+            if (group != null) {
+                pendingGroups.put(group, position);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        reason.increment();
+        if (wakeUp.availablePermits() == 0) {
+            wakeUp.release();
+        }
+    }
+
+    private long journalAppend(Message msg) {
+        return journal.append(System.currentTimeMillis(), msg.getTopic(), msg.getTag().orElse(null),
+                msg.getMessageGroup().orElse(null), msg.getKeys(), msg.getProperties(), msg.getBody());
+    }
+
+    private void drainLoop() {
+        long backoff = retryBackoffMillis;
+        while (running) {
+            int[] result;
+            try {
+                result = drainBatch();
+            } catch (RuntimeException e) {
+                log.warn("Spool drain failed, will retry", e);
+                result = new int[]{1, 0};
+            }
+            try {
+                if (result[0] == 0) {
+                    if (wakeUp.tryAcquire(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        wakeUp.drainPermits();
+                    }
+                } else if (result[1] < result[0]) {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                    backoff = Math.min(backoff * 2, maxRetryBackoffMillis);
+                } else {
+                    backoff = retryBackoffMillis;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the records after the checkpoint up to the first repeated message group (at most drainBatch), waits for
+     * all of them and moves the checkpoint past the acknowledged prefix. Returns {records, acknowledged}.
+     */
+    int[] drainBatch() {
+        List<SpoolJournal.Entry> batch = new ArrayList<>();
+        Set<String> groups = new HashSet<>();
+        long position = journal.committed();
+        while (batch.size() < drainBatch) {
+            SpoolJournal.Entry e = journal.read(position);
+            if (e == null || (e.messageGroup() != null && !groups.add(e.messageGroup()))) {
+                break;
+            }
+            batch.add(e);
+            position = e.next();
+        }
+        if (batch.isEmpty()) {
+            return new int[]{0, 0};
+        }
+        List<CompletableFuture<SendReceipt>> sends = new ArrayList<>(batch.size());
+        for (SpoolJournal.Entry e : batch) {
+            if (sentAhead.contains(e.position())) {
+                sends.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            try {
+                sends.add(producers.sendAsync(message(e)));
+            } catch (BackpressureException full) {
+                // live sends own the window: send the rest of the batch next round
+                break;
+            } catch (RuntimeException ex) {
+                sends.add(CompletableFuture.failedFuture(ex));
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        long committed = journal.committed();
+        boolean contiguous = true;
+        int acknowledged = 0;
+        Exception firstError = null;
+        for (int i = 0; i < batch.size(); i++) {
+            SpoolJournal.Entry e = batch.get(i);
+            boolean ok = false;
+            if (i < sends.size()) {
+                try {
+                    sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    ok = true;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception ex) {
+                    drainFailed.increment();
+                    if (firstError == null) {
+                        firstError = ex;
+                    }
+                }
+            }
+            if (!ok) {
+                contiguous = false;
+                continue;
+            }
+            acknowledged++;
+            if (!sentAhead.remove(e.position())) {
+                drained.increment();
+                lag.record(Math.max(0, System.currentTimeMillis() - e.timestamp()), TimeUnit.MILLISECONDS);
+            }
+            if (e.messageGroup() != null) {
+                releaseGroup(e.messageGroup(), e.position());
+            }
+            if (contiguous) {
+                committed = e.next();
+            } else {
+                sentAhead.add(e.position());
+            }
+        }
+        if (committed > journal.committed()) {
+            journal.commit(committed);
+        }
+        if (firstError != null) {
+            log.warn("Spool drain: {} of {} re-sends acknowledged, retrying from position {}",
+                    acknowledged, batch.size(), committed, firstError);
+        }
+        return new int[]{batch.size(), acknowledged};
+    }
+
+    /** The group leaves the spool once its last spooled record is sent; an append racing with this keeps it. */
+    private void releaseGroup(String group, long position) {
+        appendLock.lock();
+        try {
+            pendingGroups.remove(group, position);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private Message message(SpoolJournal.Entry e) {
+        MessageBuilder builder = provider.newMessageBuilder()
+                .setTopic(e.topic())
+                .setKeys(e.keys().toArray(new String[0]))
+                .setBody(e.body());
+        if (e.tag() != null) {
+            builder.setTag(e.tag());
+        }
+        if (e.messageGroup() != null) {
+            builder.setMessageGroup(e.messageGroup());
+        }
+        e.properties().forEach(builder::addProperty);
+        return builder.build();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        if (journal == null) {
+            return;
+        }
+        budgetTimer.shutdownNow();
+        drainer.interrupt();
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+        journal.close();
+    }
+}
@@ -1,30 +1,44 @@
 package com.example.orderdemo.rocketmq;
 
-import lombok.extern.log4j.Log4j2;
 import org.apache.rocketmq.client.apis.ClientConfiguration;
 import org.apache.rocketmq.client.apis.ClientConfigurationBuilder;
 import org.apache.rocketmq.client.apis.ClientServiceProvider;
-import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
 import org.apache.rocketmq.client.apis.consumer.FilterExpression;
 import org.apache.rocketmq.client.apis.consumer.FilterExpressionType;
 import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+import org.apache.rocketmq.client.apis.consumer.PushConsumerBuilder;
 import org.apache.rocketmq.client.apis.producer.Producer;
 import org.apache.rocketmq.client.apis.producer.TransactionChecker;
-import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 @Configuration
 public class RocketMQConfig {
     private static final Logger log = LoggerFactory.getLogger(RocketMQConfig.class);
 
-    @org.springframework.beans.factory.annotation.Value("${app.rocket.delayTopic}")
+    @org.springframework.beans.factory.annotation.Value("${app.rocketmq.delayTopic}")
     private String delayTopic;
 
     @org.springframework.beans.factory.annotation.Value("${app.rocketmq.delayGroup}")
@@ -42,10 +56,39 @@ public class RocketMQConfig {
     @Value("${app.rocketmq.fifoGroup}")
     private String fifoGroup;
 
+    @Value("${app.rocketmq.dlqWatcher.lazy:false}")
+    private boolean lazyDlqWatchers;
+
+    @Value("${app.rocketmq.fifoLegacyTag:true}")
+    private boolean fifoLegacyTag;
+
+    /*
+     * 客户端都经由 ClientStartup 创建：sequential 模式下就地握手，parallel 模式下在后台并行握手，
+     * Bean 先以 DeferredProducer / DeferredPushConsumer 的形式交出去
+     */
+    private static Producer producer(ClientStartup startup, String name, Callable<Producer> build) throws Exception {
+        CompletableFuture<Producer> f = startup.start(name, true, build);
+        return f.isDone() ? f.join() : new DeferredProducer(name, f, startup);
+    }
+
+    private static PushConsumer consumer(ClientStartup startup, String name, boolean lazily, String group,
+                                         Map<String, FilterExpression> subscriptions, Callable<PushConsumer> build) throws Exception {
+        CompletableFuture<PushConsumer> f = lazily ? startup.startLazily(name, build) : startup.start(name, false, build);
+        return f.isDone() ? f.join() : new DeferredPushConsumer(name, group, subscriptions, f, startup);
+    }
+
+    /** Readiness: OUT_OF_SERVICE until the producers are up (management.endpoint.health.group.readiness). */
+    @Bean
+    public HealthIndicator rocketmqClientsHealthIndicator(ClientStartup startup) {
+        return startup::health;
+    }
+
     /*
      * 创建 RocketMQ 客户端服务提供者
+     * inmemory profile 下由 InMemoryRocketMQConfig 提供进程内实现
      */
     @Bean
+    @Profile("!inmemory")
     public ClientServiceProvider clientServiceProvider() {
         return ClientServiceProvider.loadService();
     }
@@ -63,168 +106,220 @@ public class RocketMQConfig {
     }
 
     /*
-     *  创建 FIFO（顺序）消息生产者
-     * 用于发送有序消息，保证同一订单的消息按顺序处理
+     *  创建 FIFO（顺序）消息生产者池
+     * 用于发送有序消息和延时消息，保证同一订单的消息按顺序处理
      * 绑定到 fifoTopic（从配置文件读取）
+     * producerPool.size 个生产者，messageGroup 固定映射到其中一个；producerPool.maxInFlight 限制在途消息数
      * destroyMethod = "close" 确保应用关闭时正确释放资源
      */
-    /** Producer for FIFO (normal ordered messages). */
+    /** Producer pool for FIFO (normal ordered messages) and delay messages. */
     @Bean(destroyMethod = "close")
-    public Producer fifoProducer(ClientServiceProvider provider, ClientConfiguration cfg) throws Exception {
-        return provider.newProducerBuilder().
-                setClientConfiguration(cfg).
-                setTopics(fifoTopic).
-                build();
-    }
-
-    /*
-     * 事务消息检查器，用于处理事务消息的回查机制
-     * 当 RocketMQ 无法确定事务消息状态时，会调用此检查器
-     * 通过查询数据库中是否存在该订单来决定事务结果：
-     * 如果订单存在 → COMMIT（提交事务消息）
-     * 如果订单不存在 → ROLLBACK（回滚事务消息）
-     * 这是分布式事务一致性的关键组件
-     */
-    /** Transaction checker used by txnProducer to resolve unknown states via DB lookup.*/
-    @Bean
-    public TransactionChecker transactionChecker(com.example.orderdemo.repository.OrderRepository orderRepo) {
-        return messageView -> {
-            String orderId = messageView.getProperties().get("OrderId");
-            boolean exists = orderRepo.existsByOrderId(orderId);
-            return exists ? TransactionResolution.COMMIT : TransactionResolution.ROLLBACK;
-        };
+    public ProducerPool fifoProducerPool(ClientServiceProvider provider, ClientConfiguration cfg, MeterRegistry registry,
+                                         ClientStartup startup,
+                                         @Value("${app.rocketmq.producerPool.size:1}") int size,
+                                         @Value("${app.rocketmq.producerPool.maxInFlight:1000}") int maxInFlight) throws Exception {
+        Producer[] producers = new Producer[size];
+        for (int i = 0; i < size; i++) {
+            producers[i] = producer(startup, "fifoProducer-" + i, () -> provider.newProducerBuilder().
+                    setClientConfiguration(cfg).
+                    setTopics(fifoTopic).
+                    build());
+        }
+        return new ProducerPool(producers, maxInFlight, registry);
     }
 
     /*
      * 创建事务消息生产者
      * 用于发送事务消息，确保数据库操作和消息发送的原子性
-     * 设置事务检查器，用于处理未知状态的事务消息
+     * 设置事务检查器（OrderTransactionChecker），用于处理未知状态的事务消息
      * 绑定到 txnTopic（事务消息主题）
      * 在订单创建场景中使用，保证订单入库和消息发送的一致性
      */
     /** Transaction producer for order creation */
     @Bean(destroyMethod = "close")
     public Producer txnProducer(ClientServiceProvider provider, ClientConfiguration cfg,
-                               TransactionChecker checker) throws Exception {
-        return provider.newProducerBuilder()
+                               TransactionChecker checker, ClientStartup startup) throws Exception {
+        return producer(startup, "txnProducer", () -> provider.newProducerBuilder()
                 .setClientConfiguration(cfg)
                 .setTransactionChecker(checker)
                 .setTopics(txnTopic) // bind txn topic for recovery
-                .build();
+                .build());
+    }
+
+    /*
+     * FIFO 事件处理器注册表：每种事件类型（即每个 tag）一个处理器
+     * PAID → orderService.markPaid(orderId) 标记为已支付
+     * SHIPPED → orderService.markShipped(orderId) 标记为已发货
+     * 新的事件类型在这里注册，并在 app.rocketmq.fifoGroups 中分配给一个消费组
+     */
+    @Bean
+    public OrderEventHandlers orderEventHandlers(com.example.orderdemo.service.OrderService orderService) {
+        return new OrderEventHandlers()
+                .on(OrderEventType.PAID, orderService::markPaid)
+                .on(OrderEventType.SHIPPED, orderService::markShipped);
+    }
+
+    /*
+     * FIFO 消费组 → 负责的事件类型（app.rocketmq.fifoGroups，如 OrderPaidGroup: PAID、OrderShippedGroup: SHIPPED）
+     * 未配置时 fifoGroup 一个组负责所有注册了处理器的类型。一个类型只能属于一个组，否则同一事件会被处理两次。
+     */
+    private Map<String, List<OrderEventType>> fifoGroups(Environment env, OrderEventHandlers handlers) {
+        Map<String, String> configured = Binder.get(env)
+                .bind("app.rocketmq.fifo-groups", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+        if (configured.isEmpty()) {
+            return Map.of(fifoGroup, List.copyOf(handlers.types()));
+        }
+        Map<String, List<OrderEventType>> groups = new LinkedHashMap<>();
+        Map<OrderEventType, String> owner = new EnumMap<>(OrderEventType.class);
+        configured.forEach((group, types) -> {
+            List<OrderEventType> list = new ArrayList<>();
+            for (String name : types.split(",")) {
+                OrderEventType type = OrderEventType.valueOf(name.trim().toUpperCase());
+                if (!handlers.types().contains(type)) {
+                    throw new IllegalStateException("Consumer group " + group + " subscribes to " + type + ", which has no handler");
+                }
+                String previous = owner.putIfAbsent(type, group);
+                if (previous != null) {
+                    throw new IllegalStateException(type + " is assigned to both " + previous + " and " + group);
+                }
+                list.add(type);
+            }
+            groups.put(group, List.copyOf(list));
+        });
+        for (OrderEventType type : handlers.types()) {
+            if (!owner.containsKey(type)) {
+                log.warn("No consumer group in app.rocketmq.fifoGroups subscribes to {}, its events stay unconsumed", type);
+            }
+        }
+        return groups;
     }
 
     /*
-      创建 FIFO 主题的推送式消费者
-      订阅设置：订阅 fifoTopic，接收所有标签的消息（"*"）
-      消费组：使用 fifoGroup 作为消费者组
-      消息处理逻辑：
-      解析消息体格式：订单ID:操作类型
-      根据操作类型调用相应的服务方法：
-      PAID → 调用 orderService.markPaid(orderId) 标记为已支付
-      SHIPPED → 调用 orderService.markShipped(orderId) 标记为已发货
-      返回消费结果（成功或失败）
+      创建 FIFO 主题的推送式消费者，每个消费组一个
+      订阅设置：订阅 fifoTopic，TAG 过滤表达式只包含本组负责的事件类型（order_paid || order_shipped），
+      Broker 端过滤，消费者收不到其它类型的事件；负责最早事件类型（PAID）的组同时订阅旧标签 order_event（app.rocketmq.fifoLegacyTag）
+      消息处理逻辑（FifoEventListener，微批模式下为 FifoBatchListener）：按 tag 分发到 OrderEventHandlers，
+      订单号取自 messageGroup，不解码消息体；返回消费结果（成功或失败）
+      各组独立消费、独立扩容（消费组在 Broker 上各自有消费进度与重试）；不同组之间不保证同一订单的先后，
+      迁移表允许 CREATED → SHIPPED，先到的发货不会丢，之后到达的支付因状态不允许而不生效
      */
-    /** Push consumer for FIFO topic to update order state (PAID, SHIPPED). */
+    /** Push consumers for FIFO topic to update order state (PAID, SHIPPED), one per consumer group. */
     @Bean(destroyMethod = "close")
-    public PushConsumer fifoConsumer(ClientServiceProvider provider, ClientConfiguration cfg,
-                                     com.example.orderdemo.service.OrderService orderService) throws Exception {
-        FilterExpression fe = new FilterExpression("*", FilterExpressionType.TAG);
-        return provider.newPushConsumerBuilder()
-                .setClientConfiguration(cfg)
-                .setConsumerGroup(fifoGroup)
-                .setSubscriptionExpressions(Collections.singletonMap(fifoTopic, fe))
-                .setMessageListener(messageView -> {
-                    ByteBuffer bodyBuffer = messageView.getBody();
-                    byte[] bodyBytes = new byte[bodyBuffer.remaining()];
-                    bodyBuffer.get(bodyBytes);
-                    String body = StandardCharsets.UTF_8.decode(messageView.getBody()).toString();
-                    try {
-                        String[] parts = body.split("：");
-                        if (parts.length < 2) {
-                            log.warn("Malformed fifo message, skipping. Body={}, MessageId={}",
-                                    body, messageView.getMessageId());
-                            return org.apache.rocketmq.client.apis.consumer.ConsumeResult.SUCCESS;
-                        }
-                        String orderId = parts[0];
-                        String step =  parts[1];
-                        if ("PAID".equalsIgnoreCase(step)) {
-                            orderService.markPaid(orderId);
-                        } else if ("SHIPPED".equalsIgnoreCase(step)) {
-                            orderService.markShipped(orderId);
-                        }
-                        return org.apache.rocketmq.client.apis.consumer.ConsumeResult.SUCCESS;
-                    } catch (Exception e) {
-                        log.error("Failed to process fifo message. MessageId={}", messageView.getMessageId(), e);
-                        return ConsumeResult.FAILURE;
-                    }
-                })
-                .build();
+    public FifoConsumers fifoConsumers(ClientServiceProvider provider, ClientConfiguration cfg,
+                                       OrderEventHandlers handlers,
+                                       Environment env,
+                                       ObjectProvider<FifoBatchListener> batchListener,
+                                       ConsumerDispatchers dispatchers,
+                                       MeterRegistry registry,
+                                       ClientStartup startup) throws Exception {
+        Map<String, List<OrderEventType>> groups = fifoGroups(env, handlers);
+        // 微批模式：消费线程只负责入队等待，需要足够的线程让一整批同时在途；各组共用同一个批处理监听器
+        FifoBatchListener batch = batchListener.getIfAvailable();
+        // same listener tag for every group, like the batch mode
+        ConsumerMetrics metrics = new ConsumerMetrics(registry, "fifo");
+        List<PushConsumer> consumers = new ArrayList<>(groups.size());
+        // legacy messages may carry any type; the group of the earliest type takes them all, the handlers are shared
+        OrderEventType earliest = groups.values().stream().flatMap(List::stream).min(Enum::compareTo).orElse(null);
+        for (Map.Entry<String, List<OrderEventType>> g : groups.entrySet()) {
+            String group = g.getKey();
+            boolean legacy = fifoLegacyTag && g.getValue().contains(earliest);
+            Map<String, FilterExpression> subscriptions =
+                    Collections.singletonMap(fifoTopic, OrderEventHandlers.filter(g.getValue(), legacy));
+            PushConsumerBuilder builder = provider.newPushConsumerBuilder()
+                    .setClientConfiguration(cfg)
+                    .setConsumerGroup(group)
+                    .setSubscriptionExpressions(subscriptions);
+            PushConsumerBuilder configured = batch != null
+                    ? builder.setConsumptionThreadCount(batch.consumptionThreads()).setMessageListener(batch)
+                    // 逐条模式：可选按 messageGroup 分片并行（ConsumerDispatchers）
+                    : dispatchers.apply(builder, groups.size() == 1 ? "fifo" : "fifo-" + group,
+                            new FifoEventListener(handlers, metrics));
+            String name = groups.size() == 1 ? "fifoConsumer" : "fifoConsumer-" + group;
+            log.info("FIFO consumer group {} subscribes to {}", group, subscriptions.get(fifoTopic).getExpression());
+            consumers.add(consumer(startup, name, false, group, subscriptions, configured::build));
+        }
+        return new FifoConsumers(Collections.unmodifiableMap(groups), consumers);
     }
 
     /* Producer reused for delay topic as well. No special client needed. */
 
     /* Consumer for Delay Topic: auto-close unpaid orders after 30 minutes. */
     @Bean(destroyMethod = "close")
-    public pushConsumer delayConsumer(ClientServiceProvider provider, ClientConfiguration cfg,
-                                      com.example.orderdemo.service.OrderService orderService) throws Exception{
-        FilterExpression fe = new FilterExpression("*", FilterExpressionType.TAG);
-        return provider.newPushConsumerBuilder()
+    public PushConsumer delayConsumer(ClientServiceProvider provider, ClientConfiguration cfg,
+                                      com.example.orderdemo.service.OrderService orderService,
+                                      com.example.orderdemo.sharding.ShardRouter shards,
+                                      ConsumerDispatchers dispatchers,
+                                      MeterRegistry registry,
+                                      ClientStartup startup) throws Exception{
+        Map<String, FilterExpression> subscriptions = Collections.singletonMap(delayTopic, new FilterExpression("*", FilterExpressionType.TAG));
+        PushConsumerBuilder builder = provider.newPushConsumerBuilder()
                 .setClientConfiguration(cfg)
                 .setConsumerGroup(delayGroup)
-                .setSubscriptionExpressions(Collections.singletonMap(delayTopic, fe))
-                .setMessageListener(messageView -> {
-                    String body = StandardCharsets.UTF_8.decode(messageView.getBody()).toString();
-                    try {
-                        String[] parts = body.split(":");
-                        if (parts.length < 2) {
-                            log.warn("Malformed delay message, skipping. Body={}, MessageId={}",
-                                    body, messageView.getMessageId());
-                            return ConsumeResult.SUCCESS;
-                        }
-                        String orderId = parts[0];
-                        String step =  parts[1];
-                        if ("CLOSE".equalsIgnoreCase(step)) {
-                            orderService.autoClose(orderId);
-                        }
-                        return ConsumeResult.SUCCESS;
-                    } catch (Exception e) {
-                        log.error("Failed to process delay message. MessageId={}", messageView.getMessageId(), e);
-                        return ConsumeResult.FAILURE; // trigger retry/backoff
-                    }
-                })
-                .build();
+                .setSubscriptionExpressions(subscriptions);
+        PushConsumerBuilder configured = dispatchers.apply(builder, "delay",
+                new DelayEventListener(orderService, shards, new ConsumerMetrics(registry, "delay")));
+        return consumer(startup, "delayConsumer", false, delayGroup, subscriptions, configured::build);
+    }
+
+    private static Counter dlqCounter(MeterRegistry registry, String group) {
+        return Counter.builder("rocketmq.dlq.messages")
+                .description("Messages that exhausted their retries and landed in the DLQ")
+                .tag("group", group)
+                .register(registry);
     }
 
-    /** DLQ watcher for FIFO group. */
+    /*
+     * DLQ 监控消费者：计数、记日志，并把死信存入 dlq_message（DlqStore）供 /admin/dlq 限速回放
+     * 存储已满或写库失败时返回 FAILURE，消息留在 %DLQ% topic 里稍后重投；
+     * 监控消费组（DLQWatcherFifo / DLQWatcherDelay）在 Broker 上应配置足够大的最大重投次数
+     * app.rocketmq.dlqWatcher.enabled=false 时不创建（死信留在 %DLQ% topic 中）；lazy=true 时应用就绪后再创建
+     */
+    /** DLQ watcher for the FIFO groups: one subscription per %DLQ%{group}, stored under that group. */
     @Bean(destroyMethod = "close")
-    public PushConsumer dlqFifoWatcher(ClientServiceProvider provider, ClientConfiguration cfg) throws Exception {
-        String dlqTopic = "%DLQ%" + fifoGroup;
-        FilterExpression fe = new FilterExpression("*", FilterExpressionType.TAG);
-        return provider.newPushConsumerBuilder()
+    @ConditionalOnProperty(name = "app.rocketmq.dlqWatcher.enabled", havingValue = "true", matchIfMissing = true)
+    public PushConsumer dlqFifoWatcher(ClientServiceProvider provider, ClientConfiguration cfg, FifoConsumers fifoConsumers,
+                                       MeterRegistry registry, DlqStore dlqStore, ClientStartup startup) throws Exception {
+        Map<String, FilterExpression> subscriptions = new HashMap<>();
+        Map<String, Counter> dead = new HashMap<>();
+        for (String group : fifoConsumers.groups().keySet()) {
+            subscriptions.put("%DLQ%" + group, new FilterExpression("*", FilterExpressionType.TAG));
+            dead.put("%DLQ%" + group, dlqCounter(registry, group));
+        }
+        return consumer(startup, "dlqFifoWatcher", lazyDlqWatchers, "DLQWatcherFifo", subscriptions, () -> provider.newPushConsumerBuilder()
                 .setClientConfiguration(cfg)
                 .setConsumerGroup("DLQWatcherFifo")
-                .setSubscriptionExpressions(Collections.singletonMap(dlqTopic, fe))
+                .setSubscriptionExpressions(subscriptions)
                 .setMessageListener(messageView -> {
-                    log.warn("[DLQ][FIFO] messageId={}, body={}", messageView.getMessageId(), StandardCharsets.UTF_8.decode(messageView.getBody()).toString());
-                    return org.apache.rocketmq.client.apis.consumer.ConsumeResult.SUCCESS;
+                    String group = messageView.getTopic().substring("%DLQ%".length());
+                    if (messageView.getDeliveryAttempt() <= 1) {
+                        dead.get(messageView.getTopic()).increment();
+                        log.warn("[DLQ][FIFO] group={}, messageId={}, body={}", group, messageView.getMessageId(), OrderEventCodec.describe(messageView.getBody()));
+                    }
+                    return dlqStore.store(group, fifoTopic, true, messageView);
                 })
-                .build();
+                .build());
     }
 
     /** DLQ watcher for Delay group. */
     @Bean(destroyMethod = "close")
-    public PushConsumer dlqDelayWatcher(ClientServiceProvider provider, ClientConfiguration cfg) throws Exception {
-        String dlqTopic = "%DLQ%" + delayGroup;
-        FilterExpression fe = new FilterExpression("*", FilterExpressionType.TAG);
-        return provider.newPushConsumerBuilder()
+    @ConditionalOnProperty(name = "app.rocketmq.dlqWatcher.enabled", havingValue = "true", matchIfMissing = true)
+    public PushConsumer dlqDelayWatcher(ClientServiceProvider provider, ClientConfiguration cfg,
+                                        MeterRegistry registry, DlqStore dlqStore, ClientStartup startup) throws Exception {
+        Map<String, FilterExpression> subscriptions = Collections.singletonMap("%DLQ%" + delayGroup, new FilterExpression("*", FilterExpressionType.TAG));
+        Counter dead = dlqCounter(registry, delayGroup);
+        return consumer(startup, "dlqDelayWatcher", lazyDlqWatchers, "DLQWatcherDelay", subscriptions, () -> provider.newPushConsumerBuilder()
                 .setClientConfiguration(cfg)
                 .setConsumerGroup("DLQWatcherDelay")
-                .setSubscriptionExpressions(Collections.singletonMap(dlqTopic, fe))
+                .setSubscriptionExpressions(subscriptions)
                 .setMessageListener(messageView -> {
-                    log.warn("[DLQ][DELAY] messageId={}, body={}", messageView.getMessageId(), StandardCharsets.UTF_8.decode(messageView.getBody()).toString());
-                    return org.apache.rocketmq.client.apis.consumer.ConsumeResult.SUCCESS;
+                    if (messageView.getDeliveryAttempt() <= 1) {
+                        dead.increment();
+                        log.warn("[DLQ][DELAY] messageId={}, body={}", messageView.getMessageId(), OrderEventCodec.describe(messageView.getBody()));
+                    }
+                    return dlqStore.store(delayGroup, delayTopic, false, messageView);
                 })
-                .build();
+                .build());
     }
 
 }
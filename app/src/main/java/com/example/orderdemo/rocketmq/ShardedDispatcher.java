@@ -0,0 +1,168 @@
+package com.example.orderdemo.rocketmq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 messageGroup（订单号）分片的消费分发层（app.rocketmq.dispatcher.enabled=true）
+ * 消费线程只负责把消息放入所属分片的有界队列并等待结果；每个分片一个 worker 按入队顺序调用原监听器，
+ * 同一订单固定落在同一分片，组内顺序不变；某个订单的慢 SQL 只阻塞它所在的分片，其它分片照常处理。
+ * 分片队列满且 offerTimeout 内仍放不进去时返回 FAILURE，由 Broker 稍后重投（背压，不无限堆积）。
+ * worker 可以是虚拟线程（virtualThreads=true）：阻塞在 JDBC 上的 worker 只占用一个虚拟线程，分片数可以远大于 CPU 核数。
+ */
+public class ShardedDispatcher implements MessageListener, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ShardedDispatcher.class);
+
+    private final String name;
+    private final MessageListener delegate;
+    private final BlockingQueue<Task>[] queues;
+    private final Thread[] workers;
+    private final long offerTimeoutNanos;
+    private final AtomicInteger busy = new AtomicInteger();
+    private final Counter rejected;
+    private final Timer queueWait;
+    private volatile boolean running = true;
+
+    private record Task(MessageView message, long enqueuedAt, CompletableFuture<ConsumeResult> result) {}
+
+    @SuppressWarnings("unchecked")
+    public ShardedDispatcher(String name, MessageListener delegate, int shards, int queueCapacity,
+                             Duration offerTimeout, boolean virtualThreads, MeterRegistry registry) {
+        this.name = name;
+        this.delegate = delegate;
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.queues = new BlockingQueue[shards];
+        this.workers = new Thread[shards];
+        ThreadFactory factory = threadFactory("dispatch-" + name + "-", virtualThreads);
+        for (int i = 0; i < shards; i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues[i] = queue;
+            Gauge.builder("rocketmq.dispatch.queue.depth", queue, BlockingQueue::size)
+                    .description("Messages waiting in one dispatcher shard")
+                    .tag("listener", name)
+                    .tag("shard", String.valueOf(i))
+                    .register(registry);
+            workers[i] = factory.newThread(() -> work(queue));
+            workers[i].start();
+        }
+        Gauge.builder("rocketmq.dispatch.saturation", this, d -> d.saturation(queueCapacity))
+                .description("Fullest shard queue as a fraction of its capacity")
+                .tag("listener", name)
+                .register(registry);
+        Gauge.builder("rocketmq.dispatch.busy", busy, AtomicInteger::get)
+                .description("Shard workers currently running the listener")
+                .tag("listener", name)
+                .register(registry);
+        this.rejected = Counter.builder("rocketmq.dispatch.rejected")
+                .description("Messages handed back to the broker because their shard queue stayed full")
+                .tag("listener", name)
+                .register(registry);
+        this.queueWait = Timer.builder("rocketmq.dispatch.queue.wait")
+                .description("Time a message waited in its shard queue")
+                .tag("listener", name)
+                .serviceLevelObjectives(ConsumerMetrics.HANDLER_BUCKETS)
+                .register(registry);
+    }
+
+    @Override
+    public ConsumeResult consume(MessageView messageView) {
+        Task task = new Task(messageView, System.nanoTime(), new CompletableFuture<>());
+        try {
+            if (!running || !queues[shardOf(messageView)].offer(task, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                return ConsumeResult.FAILURE;
+            }
+            return task.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ConsumeResult.FAILURE;
+        } catch (Exception e) {
+            log.error("Dispatcher {} failed on message {}", name, messageView.getMessageId(), e);
+            return ConsumeResult.FAILURE;
+        }
+    }
+
+    /* messageGroup for FIFO messages; delay messages carry the order id as their first key */
+    int shardOf(MessageView messageView) {
+        String key = messageView.getMessageGroup()
+                .orElseGet(() -> messageView.getKeys().isEmpty()
+                        ? messageView.getMessageId().toString()
+                        : messageView.getKeys().iterator().next());
+        return Math.floorMod(key.hashCode(), queues.length);
+    }
+
+    private void work(BlockingQueue<Task> queue) {
+        while (running) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            queueWait.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            busy.incrementAndGet();
+            try {
+                task.result().complete(delegate.consume(task.message()));
+            } catch (Throwable t) {
+                log.error("Listener {} threw on message {}", name, task.message().getMessageId(), t);
+                task.result().complete(ConsumeResult.FAILURE);
+            } finally {
+                busy.decrementAndGet();
+            }
+        }
+    }
+
+    private double saturation(int capacity) {
+        int max = 0;
+        for (BlockingQueue<Task> q : queues) {
+            max = Math.max(max, q.size());
+        }
+        return (double) max / capacity;
+    }
+
+    /** Stop the workers; queued messages are answered with FAILURE so the broker redelivers them. */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread w : workers) {
+            w.interrupt();
+        }
+        for (Thread w : workers) {
+            try {
+                w.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (BlockingQueue<Task> q : queues) {
+            Task task;
+            while ((task = q.poll()) != null) {
+                task.result().complete(ConsumeResult.FAILURE);
+            }
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix, boolean virtualThreads) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(prefix, 0).factory();
+        }
+        return Thread.ofPlatform().name(prefix, 0).daemon(true).factory();
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.orderdemo.rocketmq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 本地暂存日志（PublishSpool 使用）：只追加、按段滚动的内存映射文件
+ * 位置是全局字节偏移；段文件名是段的起始位置（20 位十进制，同 RocketMQ CommitLog），新段整段映射，未写部分为 0。
+ * 记录格式：[int 长度][int CRC32C][内容]，内容为 long 时间戳、topic、tag、messageGroup、keys、properties、body
+ * （字符串为无符号 short 长度 + UTF-8，0xFFFF 表示 null）。
+ * 先写内容和校验和、最后写长度：进程在写一半时被杀，留下的长度仍是 0，读到 0 即日志末尾；段尾放不下的记录写到下一段。
+ * checkpoint 文件保存已发送到的位置（long 与其取反，不一致视为损坏，从最早的段重发）；整段都在 checkpoint 之前的段被删除。
+ * 恢复：从 checkpoint 起逐条校验，第一条长度越界或校验失败的记录即为末尾，其后清零、更后面的段删除，新记录从这里接着写。
+ * 写入停留在页缓存，进程崩溃不丢；forceOnAppend=true 时每条记录刷到磁盘，掉电也不丢，吞吐低得多。
+ * append 可多线程调用；read / commit 只由一个读者（排空线程）调用。
+ * 用 ReentrantLock 而不是 synchronized：持锁期间可能建段、刷盘，调用方的虚拟线程不会钉住载体线程。
+ */
+public class SpoolJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SpoolJournal.class);
+
+    private static final int HEADER = 8;
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int NULL_STRING = 0xFFFF;
+
+    /** A spooled message; {@code next} is the position of the record after it. */
+    public record Entry(long position, long next, long timestamp, String topic, String tag, String messageGroup,
+                        List<String> keys, Map<String, String> properties, byte[] body) {}
+
+    private static final class Segment {
+        final long base;
+        final int size;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+
+        Segment(long base, int size, Path path, FileChannel channel, MappedByteBuffer buf) {
+            this.base = base;
+            this.size = size;
+            this.path = path;
+            this.channel = channel;
+            this.buf = buf;
+        }
+
+        long end() {
+            return base + size;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32C crc = new CRC32C();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private Segment tail;
+    private boolean closed;
+    private volatile long writePosition;
+    private volatile long committed;
+
+    public SpoolJournal(Path dir, int segmentSize, boolean forceOnAppend) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("spool segment size must be at least 1KB");
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(dir);
+        this.checkpointChannel = FileChannel.open(dir.resolve(CHECKPOINT),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.filter(p -> p.getFileName().toString().matches("\\d{20}")).sorted().toList()) {
+                long base = Long.parseLong(path.getFileName().toString());
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                int size = (int) channel.size();
+                segments.put(base, new Segment(base, size, path, channel,
+                        channel.map(FileChannel.MapMode.READ_WRITE, 0, size)));
+            }
+        }
+        long saved = checkpoint.getLong(0);
+        boolean valid = checkpoint.getLong(8) == ~saved;
+        long first = segments.isEmpty() ? 0 : segments.firstKey();
+        if (!valid && saved != 0) {
+            log.warn("Spool checkpoint in {} is damaged, replaying from the oldest segment", dir);
+        }
+        long start = valid ? Math.max(saved, first) : first;
+        dropSegmentsBelow(start);
+        // validate forward from the checkpoint; the first bad record is where the last writer stopped
+        long position = start;
+        int recovered = 0;
+        while (true) {
+            Map.Entry<Long, Segment> e = segments.floorEntry(position);
+            if (e == null || position >= e.getValue().end()) {
+                break;
+            }
+            Segment seg = e.getValue();
+            int off = (int) (position - seg.base);
+            int length = off + HEADER <= seg.size ? seg.buf.getInt(off) : 0;
+            if (length == 0) {
+                Segment next = segments.get(seg.end());
+                if (next == null || off == 0) {
+                    break;
+                }
+                position = next.base;
+                continue;
+            }
+            if (length < 0 || off + HEADER + length > seg.size || crc(seg, off, length) != seg.buf.getInt(off + 4)) {
+                log.warn("Spool record at {} is incomplete, truncating the journal there", position);
+                break;
+            }
+            position += HEADER + length;
+            recovered++;
+        }
+        truncateAt(position);
+        this.committed = start;
+        this.writePosition = position;
+        this.tail = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (recovered > 0) {
+            log.info("Spool {} recovered {} unsent records ({} bytes) from position {}",
+                    dir, recovered, position - start, start);
+        }
+    }
+
+    /** Zeroes the rest of the segment holding {@code position} and deletes every later segment. */
+    private void truncateAt(long position) throws IOException {
+        Map.Entry<Long, Segment> e = segments.floorEntry(position);
+        if (e != null && position < e.getValue().end()) {
+            Segment seg = e.getValue();
+            // only bytes a torn record left behind are non-zero; writing just those keeps the clean pages clean
+            for (int at = (int) (position - seg.base); at < seg.size; at++) {
+                if (seg.buf.get(at) != 0) {
+                    seg.buf.put(at, (byte) 0);
+                }
+            }
+        }
+        for (Segment later : new ArrayList<>(segments.tailMap(position, false).values())) {
+            delete(later);
+        }
+    }
+
+    /* callers hold the lock (append) or run before the journal is shared (recovery) */
+    private int crc(Segment seg, int off, int length) {
+        crc.reset();
+        crc.update(seg.buf.slice(off + HEADER, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends one message and returns its position.
+     * @throws IllegalArgumentException if the record is larger than a segment
+     */
+    public long append(long timestamp, String topic, String tag, String messageGroup,
+                       Collection<String> keys, Map<String, String> properties, ByteBuffer body) {
+        List<byte[]> strings = new ArrayList<>(4 + keys.size() + 2 * properties.size());
+        strings.add(utf8(topic));
+        strings.add(utf8(tag));
+        strings.add(utf8(messageGroup));
+        keys.forEach(k -> strings.add(utf8(k)));
+        properties.forEach((k, v) -> {
+            strings.add(utf8(k));
+            strings.add(utf8(v));
+        });
+        int length = 8 + 2 + 2 + 4 + body.remaining();
+        for (byte[] s : strings) {
+            length += 2 + (s == null ? 0 : s.length);
+        }
+        if (HEADER + length > segmentSize) {
+            throw new IllegalArgumentException("Spool record of " + length + " bytes does not fit a segment");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Spool journal is closed");
+            }
+            long position = writePosition;
+            Segment seg = segmentFor(position, HEADER + length);
+            if (seg.base > position) {
+                position = seg.base;
+            }
+            int off = (int) (position - seg.base);
+            ByteBuffer out = seg.buf.slice(off + HEADER, length);
+            out.putLong(timestamp);
+            int i = 0;
+            put(out, strings.get(i++));
+            put(out, strings.get(i++));
+            put(out, strings.get(i++));
+            out.putShort((short) keys.size());
+            for (int k = 0; k < keys.size(); k++) {
+                put(out, strings.get(i++));
+            }
+            out.putShort((short) properties.size());
+            for (int p = 0; p < properties.size(); p++) {
+                put(out, strings.get(i++));
+                put(out, strings.get(i++));
+            }
+            out.putInt(body.remaining());
+            out.put(body.duplicate());
+            seg.buf.putInt(off + 4, crc(seg, off, length));
+            // the length goes last: until it is written the record does not exist for a reader or for recovery
+            seg.buf.putInt(off, length);
+            if (forceOnAppend) {
+                seg.buf.force(off, HEADER + length);
+            }
+            writePosition = position + HEADER + length;
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The segment a record of {@code size} bytes starting at {@code position} goes to, rolling when it does not fit. */
+    private Segment segmentFor(long position, int size) {
+        if (tail != null && position - tail.base + size <= tail.size) {
+            return tail;
+        }
+        long base = tail == null ? position : tail.end();
+        Path path = dir.resolve(String.format("%020d", base));
+        try {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment seg = new Segment(base, segmentSize, path, channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segments.put(base, seg);
+            tail = seg;
+            return seg;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spool segment " + path, e);
+        }
+    }
+
+    /** The record at {@code position}, or null once the reader has caught up with the writer. */
+    public Entry read(long position) {
+        while (position < writePosition) {
+            Segment seg;
+            lock.lock();
+            try {
+                Map.Entry<Long, Segment> e = segments.floorEntry(position);
+                if (e == null) {
+                    throw new IllegalStateException("Spool position " + position + " is not in any segment");
+                }
+                seg = e.getValue();
+            } finally {
+                lock.unlock();
+            }
+            int off = (int) (position - seg.base);
+            int length = off + HEADER <= seg.size ? seg.buf.getInt(off) : 0;
+            if (length == 0) {
+                position = seg.end();
+                continue;
+            }
+            ByteBuffer in = seg.buf.slice(off + HEADER, length);
+            long timestamp = in.getLong();
+            String topic = getString(in);
+            String tag = getString(in);
+            String messageGroup = getString(in);
+            int count = in.getShort();
+            List<String> keys = new ArrayList<>(count);
+            for (int k = 0; k < count; k++) {
+                keys.add(getString(in));
+            }
+            count = in.getShort();
+            Map<String, String> properties = new LinkedHashMap<>(Math.max(4, count * 2));
+            for (int p = 0; p < count; p++) {
+                properties.put(getString(in), getString(in));
+            }
+            byte[] body = new byte[in.getInt()];
+            in.get(body);
+            return new Entry(position, position + HEADER + length, timestamp, topic, tag, messageGroup,
+                    keys, properties, body);
+        }
+        return null;
+    }
+
+    /** Everything before {@code position} is sent: persist it and delete the segments it covers. */
+    public void commit(long position) {
+        checkpoint.putLong(0, position);
+        checkpoint.putLong(8, ~position);
+        if (forceOnAppend) {
+            checkpoint.force();
+        }
+        committed = position;
+        lock.lock();
+        try {
+            dropSegmentsBelow(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dropSegmentsBelow(long position) {
+        while (!segments.isEmpty()) {
+            Segment first = segments.firstEntry().getValue();
+            if (first.end() > position || first == tail) {
+                return;
+            }
+            delete(first);
+        }
+    }
+
+    private void delete(Segment seg) {
+        segments.remove(seg.base);
+        try {
+            seg.channel.close();
+            Files.deleteIfExists(seg.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool segment {}", seg.path, e);
+        }
+    }
+
+    /** Position of the first unsent record. */
+    public long committed() {
+        return committed;
+    }
+
+    public long writePosition() {
+        return writePosition;
+    }
+
+    /** Bytes appended but not yet committed, segment tails included. */
+    public long pendingBytes() {
+        return writePosition - committed;
+    }
+
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            for (Segment seg : segments.values()) {
+                seg.buf.force();
+                seg.channel.close();
+            }
+            segments.clear();
+            tail = null;
+            checkpoint.force();
+            checkpointChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        if (s == null) {
+            return null;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("Spooled strings are limited to " + (NULL_STRING - 1) + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void put(ByteBuffer out, byte[] s) {
+        if (s == null) {
+            out.putShort((short) NULL_STRING);
+            return;
+        }
+        out.putShort((short) s.length);
+        out.put(s);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
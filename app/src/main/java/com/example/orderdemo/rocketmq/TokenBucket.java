@@ -0,0 +1,57 @@
+package com.example.orderdemo.rocketmq;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速：每秒补充 ratePerSecond 个令牌，最多攒 burst 个
+ * acquire 取一个令牌，不够时睡到令牌补齐为止（先扣成负数再等，等待者按到达顺序排队）。
+ * 速率可以在运行中修改，下一次 acquire 即按新速率计算。
+ */
+final class TokenBucket {
+    private double ratePerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /** Take one token, possibly into debt; returns how long the caller must wait before using it. */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * 1_000_000_000L);
+    }
+
+    synchronized void setRate(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        refill();
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    synchronized double rate() {
+        return ratePerSecond;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / 1_000_000_000d * ratePerSecond);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内 RocketMQ broker 替身（inmemory profile），用于在没有 Proxy 的单机上做端到端压测
+ * 语义按 RocketMQ 5.x 的客户端视角模拟：
+ * - 普通消息：投递给订阅该 topic 且 tag 匹配的每个消费组
+ * - FIFO：带 messageGroup 的消息在同一消费组内按组串行，前一条成功或进入死信之前后一条不会投递
+ * - 延时：deliveryTimestamp 到期后才投递
+ * - 事务：半消息在 commit 前不可见；超过 txnCheckDelay 仍未提交/回滚时回调 TransactionChecker，
+ *   UNKNOWN 时按相同间隔重查，最多 txnMaxChecks 次后丢弃
+ * - 重投：消费失败或抛异常时按指数退避重投，达到 maxDeliveryAttempts 后转入 %DLQ%{消费组}
+ * 不持久化：进程退出即丢失全部消息；没有订阅者的 topic 上的消息直接丢弃。
+ */
+public class InMemoryBroker implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryBroker.class);
+
+    private final Map<String, CopyOnWriteArrayList<InMemoryPushConsumer>> subscribers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    /* Checkers may block on the database; keep them off the timer thread that drives delays and retries. */
+    private final ExecutorService checkers;
+    private final AtomicLong sequence = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    private final int maxDeliveryAttempts;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    private final long txnCheckDelayMillis;
+    private final int txnMaxChecks;
+    private final long sendLatencyMillis;
+    private final long startLatencyMillis;
+    private final int defaultConsumptionThreads;
+
+    public InMemoryBroker(int maxDeliveryAttempts, Duration retryBackoff, Duration maxRetryBackoff,
+                          Duration txnCheckDelay, int txnMaxChecks, Duration sendLatency,
+                          Duration startLatency, int defaultConsumptionThreads) {
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+        this.txnCheckDelayMillis = txnCheckDelay.toMillis();
+        this.txnMaxChecks = txnMaxChecks;
+        this.sendLatencyMillis = sendLatency.toMillis();
+        this.startLatencyMillis = startLatency.toMillis();
+        this.defaultConsumptionThreads = defaultConsumptionThreads;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inmemory-broker-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.checkers = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "inmemory-broker-checker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Store a message as the broker would: assign an id and the born timestamp. */
+    InMemoryMessageView accept(Message message) {
+        String id = String.format("01%012X%020X", startedAt, sequence.incrementAndGet());
+        return InMemoryMessageView.of(id, message);
+    }
+
+    /** Make a stored message visible, now or at its delivery timestamp. */
+    void publish(InMemoryMessageView message) {
+        long delay = message.getDeliveryTimestamp().map(ts -> ts - System.currentTimeMillis()).orElse(0L);
+        if (delay > 0) {
+            schedule(() -> dispatch(message), delay);
+        } else {
+            dispatch(message);
+        }
+    }
+
+    private void dispatch(InMemoryMessageView message) {
+        List<InMemoryPushConsumer> consumers = subscribers.get(message.getTopic());
+        if (consumers == null || consumers.isEmpty()) {
+            log.debug("No subscriber for topic {}, dropping {}", message.getTopic(), message);
+            return;
+        }
+        String tag = message.getTag().orElse(null);
+        for (InMemoryPushConsumer consumer : consumers) {
+            if (consumer.accepts(message.getTopic(), tag)) {
+                consumer.enqueue(message);
+            }
+        }
+    }
+
+    /** Retries are exhausted for this group: the message moves to its dead letter topic. */
+    void deadLetter(String consumerGroup, InMemoryMessageView message) {
+        String dlqTopic = "%DLQ%" + consumerGroup;
+        log.warn("Message {} exhausted {} attempts in group {}, moving to {}",
+                message.getMessageId(), message.getDeliveryAttempt(), consumerGroup, dlqTopic);
+        dispatch(message.toTopic(dlqTopic));
+    }
+
+    /** Ask the producer's checker about a half message that was neither committed nor rolled back in time. */
+    void scheduleCheck(InMemoryTransaction tx, TransactionChecker checker, int check) {
+        schedule(() -> checkers.execute(() -> {
+            if (tx.isResolved()) {
+                return;
+            }
+            TransactionResolution resolution;
+            try {
+                resolution = checker == null ? TransactionResolution.UNKNOWN : tx.check(checker);
+            } catch (Throwable t) {
+                log.warn("Transaction check {} failed", check, t);
+                resolution = TransactionResolution.UNKNOWN;
+            }
+            switch (resolution) {
+                case COMMIT -> tx.resolve(true);
+                case ROLLBACK -> tx.resolve(false);
+                default -> {
+                    if (check < txnMaxChecks) {
+                        scheduleCheck(tx, checker, check + 1);
+                    } else {
+                        log.warn("Half message still UNKNOWN after {} checks, discarding", check);
+                        tx.resolve(false);
+                    }
+                }
+            }
+        }), txnCheckDelayMillis);
+    }
+
+    void subscribe(String topic, InMemoryPushConsumer consumer) {
+        subscribers.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).addIfAbsent(consumer);
+    }
+
+    void unsubscribe(String topic, InMemoryPushConsumer consumer) {
+        List<InMemoryPushConsumer> consumers = subscribers.get(topic);
+        if (consumers != null) {
+            consumers.remove(consumer);
+        }
+    }
+
+    /* 1x, 2x, 4x ... retryBackoff, capped; the same for FIFO groups, which stay blocked meanwhile. */
+    long retryDelayMillis(int failedAttempt) {
+        long delay = retryBackoffMillis << Math.min(failedAttempt - 1, 20);
+        return Math.min(delay, maxRetryBackoffMillis);
+    }
+
+    boolean shouldRetry(ConsumeResult result, int attempt) {
+        return result != ConsumeResult.SUCCESS && attempt < maxDeliveryAttempts;
+    }
+
+    void schedule(Runnable task, long delayMillis) {
+        try {
+            timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Broker is closed, dropping scheduled task");
+        }
+    }
+
+    long sendLatencyMillis() {
+        return sendLatencyMillis;
+    }
+
+    /* stands in for the blocking route / settings handshake a real client does in build() */
+    void handshake() {
+        if (startLatencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(startLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted during client start", e);
+            }
+        }
+    }
+
+    int defaultConsumptionThreads() {
+        return defaultConsumptionThreads;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        checkers.shutdownNow();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.ClientConfiguration;
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+import org.apache.rocketmq.client.apis.consumer.PushConsumerBuilder;
+import org.apache.rocketmq.client.apis.consumer.SimpleConsumerBuilder;
+import org.apache.rocketmq.client.apis.message.MessageBuilder;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.ProducerBuilder;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ClientServiceProvider whose producers and push consumers talk to an {@link InMemoryBroker}
+ * instead of a RocketMQ proxy. Messages are still built by the real client's MessageBuilder,
+ * so its validation (e.g. messageGroup and deliveryTimestamp are mutually exclusive) applies unchanged.
+ */
+public class InMemoryClientServiceProvider implements ClientServiceProvider {
+    private final InMemoryBroker broker;
+    private final ClientServiceProvider messages = ClientServiceProvider.loadService();
+
+    public InMemoryClientServiceProvider(InMemoryBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public ProducerBuilder newProducerBuilder() {
+        return new ProducerBuilder() {
+            private TransactionChecker checker;
+
+            @Override
+            public ProducerBuilder setClientConfiguration(ClientConfiguration clientConfiguration) {
+                return this;
+            }
+
+            @Override
+            public ProducerBuilder setTopics(String... topics) {
+                return this;
+            }
+
+            @Override
+            public ProducerBuilder setMaxAttempts(int maxAttempts) {
+                return this;
+            }
+
+            @Override
+            public ProducerBuilder setTransactionChecker(TransactionChecker checker) {
+                this.checker = checker;
+                return this;
+            }
+
+            @Override
+            public Producer build() {
+                broker.handshake();
+                return new InMemoryProducer(broker, checker);
+            }
+        };
+    }
+
+    @Override
+    public MessageBuilder newMessageBuilder() {
+        return messages.newMessageBuilder();
+    }
+
+    @Override
+    public PushConsumerBuilder newPushConsumerBuilder() {
+        return new PushConsumerBuilder() {
+            private String consumerGroup;
+            private Map<String, FilterExpression> subscriptions = new HashMap<>();
+            private MessageListener listener;
+            private int consumptionThreads = broker.defaultConsumptionThreads();
+
+            @Override
+            public PushConsumerBuilder setClientConfiguration(ClientConfiguration clientConfiguration) {
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setConsumerGroup(String consumerGroup) {
+                this.consumerGroup = consumerGroup;
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setSubscriptionExpressions(Map<String, FilterExpression> subscriptionExpressions) {
+                this.subscriptions = new HashMap<>(subscriptionExpressions);
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setMessageListener(MessageListener listener) {
+                this.listener = listener;
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setMaxCacheMessageCount(int maxCachedMessageCount) {
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setMaxCacheMessageSizeInBytes(int maxCacheMessageSizeInBytes) {
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setConsumptionThreadCount(int consumptionThreadCount) {
+                this.consumptionThreads = consumptionThreadCount;
+                return this;
+            }
+
+            @Override
+            public PushConsumerBuilder setEnableFifoConsumeAccelerator(boolean enableFifoConsumeAccelerator) {
+                return this;
+            }
+
+            @Override
+            public PushConsumer build() {
+                if (consumerGroup == null || listener == null) {
+                    throw new IllegalStateException("consumerGroup and messageListener are required");
+                }
+                broker.handshake();
+                return new InMemoryPushConsumer(broker, consumerGroup, subscriptions, listener, consumptionThreads);
+            }
+        };
+    }
+
+    @Override
+    public SimpleConsumerBuilder newSimpleConsumerBuilder() {
+        throw new UnsupportedOperationException("SimpleConsumer is not supported by the in-memory broker");
+    }
+}
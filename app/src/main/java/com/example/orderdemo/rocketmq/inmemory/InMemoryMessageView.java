@@ -0,0 +1,136 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 进程内 broker 保存和投递的消息快照（不可变）
+ * 每个消费组、每次投递各自持有一个 deliveryAttempt 不同的副本
+ */
+final class InMemoryMessageView implements MessageView {
+    private final MessageId messageId;
+    private final String topic;
+    private final byte[] body;
+    private final Map<String, String> properties;
+    private final String tag;
+    private final List<String> keys;
+    private final String messageGroup;
+    private final Long deliveryTimestamp;
+    private final long bornTimestamp;
+    private final int deliveryAttempt;
+
+    private InMemoryMessageView(MessageId messageId, String topic, byte[] body, Map<String, String> properties,
+                                String tag, List<String> keys, String messageGroup, Long deliveryTimestamp,
+                                long bornTimestamp, int deliveryAttempt) {
+        this.messageId = messageId;
+        this.topic = topic;
+        this.body = body;
+        this.properties = properties;
+        this.tag = tag;
+        this.keys = keys;
+        this.messageGroup = messageGroup;
+        this.deliveryTimestamp = deliveryTimestamp;
+        this.bornTimestamp = bornTimestamp;
+        this.deliveryAttempt = deliveryAttempt;
+    }
+
+    static InMemoryMessageView of(String messageId, Message m) {
+        ByteBuffer src = m.getBody().duplicate();
+        byte[] body = new byte[src.remaining()];
+        src.get(body);
+        return new InMemoryMessageView(new Id(messageId), m.getTopic(), body, Map.copyOf(m.getProperties()),
+                m.getTag().orElse(null), List.copyOf(m.getKeys()), m.getMessageGroup().orElse(null),
+                m.getDeliveryTimestamp().orElse(null), System.currentTimeMillis(), 1);
+    }
+
+    InMemoryMessageView withAttempt(int attempt) {
+        return new InMemoryMessageView(messageId, topic, body, properties, tag, keys, messageGroup,
+                deliveryTimestamp, bornTimestamp, attempt);
+    }
+
+    /** Copy moved to a dead letter topic: same id and body, delivery counting starts again. */
+    InMemoryMessageView toTopic(String dlqTopic) {
+        return new InMemoryMessageView(messageId, dlqTopic, body, properties, tag, keys, null,
+                null, bornTimestamp, 1);
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public ByteBuffer getBody() {
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public Optional<String> getTag() {
+        return Optional.ofNullable(tag);
+    }
+
+    @Override
+    public Collection<String> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public Optional<String> getMessageGroup() {
+        return Optional.ofNullable(messageGroup);
+    }
+
+    @Override
+    public Optional<Long> getDeliveryTimestamp() {
+        return Optional.ofNullable(deliveryTimestamp);
+    }
+
+    @Override
+    public String getBornHost() {
+        return "inmemory";
+    }
+
+    @Override
+    public long getBornTimestamp() {
+        return bornTimestamp;
+    }
+
+    @Override
+    public int getDeliveryAttempt() {
+        return deliveryAttempt;
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryMessageView{id=" + messageId + ", topic=" + topic + ", tag=" + tag
+                + ", group=" + messageGroup + ", attempt=" + deliveryAttempt + "}";
+    }
+
+    private record Id(String value) implements MessageId {
+        @Override
+        public String getVersion() {
+            return "V1";
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.RecallReceipt;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Producer backed by {@link InMemoryBroker}.
+ * sendLatency, if set, is added to every send to stand in for the proxy round trip;
+ * async sends complete on the broker timer instead of blocking the caller.
+ */
+final class InMemoryProducer implements Producer {
+    private final InMemoryBroker broker;
+    private final TransactionChecker checker;
+    private volatile boolean closed;
+
+    InMemoryProducer(InMemoryBroker broker, TransactionChecker checker) {
+        this.broker = broker;
+        this.checker = checker;
+    }
+
+    @Override
+    public SendReceipt send(Message message) {
+        ensureOpen();
+        pause();
+        InMemoryMessageView stored = broker.accept(message);
+        broker.publish(stored);
+        return new Receipt(stored.getMessageId());
+    }
+
+    @Override
+    public SendReceipt send(Message message, Transaction transaction) {
+        ensureOpen();
+        if (!(transaction instanceof InMemoryTransaction tx)) {
+            throw new IllegalArgumentException("Transaction was not started by this producer");
+        }
+        pause();
+        InMemoryMessageView half = broker.accept(message);
+        tx.add(half);
+        broker.scheduleCheck(tx, checker, 1);
+        return new Receipt(half.getMessageId());
+    }
+
+    @Override
+    public CompletableFuture<SendReceipt> sendAsync(Message message) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Producer is closed"));
+        }
+        long latency = broker.sendLatencyMillis();
+        InMemoryMessageView stored = broker.accept(message);
+        if (latency <= 0) {
+            broker.publish(stored);
+            return CompletableFuture.completedFuture(new Receipt(stored.getMessageId()));
+        }
+        CompletableFuture<SendReceipt> f = new CompletableFuture<>();
+        broker.schedule(() -> {
+            broker.publish(stored);
+            f.complete(new Receipt(stored.getMessageId()));
+        }, latency);
+        return f;
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        ensureOpen();
+        if (checker == null) {
+            throw new IllegalStateException("Transaction checker should not be null");
+        }
+        return new InMemoryTransaction(broker);
+    }
+
+    @Override
+    public RecallReceipt recallMessage(String topic, String recallHandle) {
+        throw new UnsupportedOperationException("recall is not supported by the in-memory broker");
+    }
+
+    @Override
+    public CompletableFuture<RecallReceipt> recallMessageAsync(String topic, String recallHandle) {
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException("recall is not supported by the in-memory broker"));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Producer is closed");
+        }
+    }
+
+    private void pause() {
+        long latency = broker.sendLatencyMillis();
+        if (latency > 0) {
+            LockSupport.parkNanos(latency * 1_000_000L);
+        }
+    }
+
+    private record Receipt(MessageId messageId) implements SendReceipt {
+        @Override
+        public MessageId getMessageId() {
+            return messageId;
+        }
+
+        @Override
+        public String getRecallHandle() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.FilterExpressionType;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Push consumer backed by {@link InMemoryBroker}: one consumer group with its own consumption threads.
+ * Messages without a messageGroup are consumed concurrently; messages of the same messageGroup are
+ * consumed one at a time in send order, and a failing message blocks its group until it succeeds
+ * or goes to the DLQ, like a FIFO consumer group on a real broker.
+ */
+final class InMemoryPushConsumer implements PushConsumer {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryPushConsumer.class);
+
+    private final InMemoryBroker broker;
+    private final String consumerGroup;
+    private final Map<String, FilterExpression> subscriptions = new ConcurrentHashMap<>();
+    private final MessageListener listener;
+    private final ExecutorService executor;
+    /* messageGroup -> messages waiting behind the one in flight; a key is present while the group is busy */
+    private final Map<String, ArrayDeque<InMemoryMessageView>> busyGroups = new HashMap<>();
+
+    InMemoryPushConsumer(InMemoryBroker broker, String consumerGroup, Map<String, FilterExpression> subscriptions,
+                         MessageListener listener, int consumptionThreads) {
+        this.broker = broker;
+        this.consumerGroup = consumerGroup;
+        this.listener = listener;
+        AtomicInteger n = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(consumptionThreads, r -> {
+            Thread t = new Thread(r, "inmemory-" + consumerGroup + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        subscriptions.forEach(this::subscribe);
+    }
+
+    boolean accepts(String topic, String tag) {
+        FilterExpression fe = subscriptions.get(topic);
+        if (fe == null) {
+            return false;
+        }
+        if (fe.getFilterExpressionType() != FilterExpressionType.TAG) {
+            return true; // SQL92 filters are not evaluated here
+        }
+        String expression = fe.getExpression().trim();
+        if ("*".equals(expression)) {
+            return true;
+        }
+        if (tag == null) {
+            return false;
+        }
+        for (String t : expression.split("\\|\\|")) {
+            if (t.trim().equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void enqueue(InMemoryMessageView message) {
+        String group = message.getMessageGroup().orElse(null);
+        if (group != null) {
+            synchronized (busyGroups) {
+                ArrayDeque<InMemoryMessageView> waiting = busyGroups.get(group);
+                if (waiting != null) {
+                    waiting.add(message);
+                    return;
+                }
+                busyGroups.put(group, new ArrayDeque<>());
+            }
+        }
+        submit(message);
+    }
+
+    private void submit(InMemoryMessageView message) {
+        try {
+            executor.execute(() -> consume(message));
+        } catch (RejectedExecutionException e) {
+            log.debug("Consumer {} is closed, dropping {}", consumerGroup, message);
+        }
+    }
+
+    private void consume(InMemoryMessageView message) {
+        ConsumeResult result;
+        try {
+            result = listener.consume(message);
+        } catch (Throwable t) {
+            log.warn("Listener of {} threw on {}", consumerGroup, message, t);
+            result = ConsumeResult.FAILURE;
+        }
+        int attempt = message.getDeliveryAttempt();
+        if (broker.shouldRetry(result, attempt)) {
+            broker.schedule(() -> submit(message.withAttempt(attempt + 1)), broker.retryDelayMillis(attempt));
+            return;
+        }
+        if (result != ConsumeResult.SUCCESS) {
+            broker.deadLetter(consumerGroup, message);
+        }
+        release(message);
+    }
+
+    /* Hand the group over to its next waiting message, or mark it idle. */
+    private void release(InMemoryMessageView message) {
+        String group = message.getMessageGroup().orElse(null);
+        if (group == null) {
+            return;
+        }
+        InMemoryMessageView next;
+        synchronized (busyGroups) {
+            ArrayDeque<InMemoryMessageView> waiting = busyGroups.get(group);
+            next = waiting == null ? null : waiting.poll();
+            if (next == null) {
+                busyGroups.remove(group);
+            }
+        }
+        if (next != null) {
+            submit(next);
+        }
+    }
+
+    @Override
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    @Override
+    public Map<String, FilterExpression> getSubscriptionExpressions() {
+        return new HashMap<>(subscriptions);
+    }
+
+    @Override
+    public PushConsumer subscribe(String topic, FilterExpression filterExpression) {
+        subscriptions.put(topic, filterExpression);
+        broker.subscribe(topic, this);
+        return this;
+    }
+
+    @Override
+    public PushConsumer unsubscribe(String topic) {
+        subscriptions.remove(topic);
+        broker.unsubscribe(topic, this);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        subscriptions.keySet().forEach(topic -> broker.unsubscribe(topic, this));
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * inmemory profile：用进程内 broker 替换 RocketMQ 客户端（--spring.profiles.active=inmemory）
+ * RocketMQConfig 中的生产者、消费者、DLQ 监听照常创建，只是 ClientServiceProvider 换成了进程内实现，
+ * 因此业务代码、监听器和指标与连接真实 Proxy 时完全相同。仍然需要 MySQL，
+ * 或者同时启用 shards-local profile，用内嵌 H2 分库代替。
+ */
+@Configuration
+@Profile("inmemory")
+public class InMemoryRocketMQConfig {
+
+    @Bean(destroyMethod = "close")
+    public InMemoryBroker inMemoryBroker(@Value("${app.rocketmq.inmemory.maxDeliveryAttempts:16}") int maxDeliveryAttempts,
+                                         @Value("${app.rocketmq.inmemory.retryBackoff:1s}") Duration retryBackoff,
+                                         @Value("${app.rocketmq.inmemory.maxRetryBackoff:30s}") Duration maxRetryBackoff,
+                                         @Value("${app.rocketmq.inmemory.txnCheckDelay:5s}") Duration txnCheckDelay,
+                                         @Value("${app.rocketmq.inmemory.txnMaxChecks:15}") int txnMaxChecks,
+                                         @Value("${app.rocketmq.inmemory.sendLatency:0ms}") Duration sendLatency,
+                                         @Value("${app.rocketmq.inmemory.startLatency:0ms}") Duration startLatency,
+                                         @Value("${app.rocketmq.inmemory.consumptionThreads:20}") int consumptionThreads) {
+        return new InMemoryBroker(maxDeliveryAttempts, retryBackoff, maxRetryBackoff,
+                txnCheckDelay, txnMaxChecks, sendLatency, startLatency, consumptionThreads);
+    }
+
+    @Bean
+    public ClientServiceProvider clientServiceProvider(InMemoryBroker broker) {
+        return new InMemoryClientServiceProvider(broker);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 半消息事务：commit 前消息对消费者不可见
+ * 与 rocketmq-client-java 一致，一个事务只能携带一条消息。
+ * commit / rollback / 回查结果以先到者为准，之后的结束请求被忽略（与 broker 的行为一致）。
+ */
+final class InMemoryTransaction implements Transaction {
+    private static final int OPEN = 0;
+    private static final int RESOLVED = 1;
+
+    private final InMemoryBroker broker;
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+    private volatile InMemoryMessageView half;
+
+    InMemoryTransaction(InMemoryBroker broker) {
+        this.broker = broker;
+    }
+
+    void add(InMemoryMessageView message) {
+        if (half != null) {
+            throw new IllegalArgumentException("Message in transaction has exceeded the threshold: 1");
+        }
+        half = message;
+    }
+
+    @Override
+    public void commit() {
+        resolve(true);
+    }
+
+    @Override
+    public void rollback() {
+        resolve(false);
+    }
+
+    void resolve(boolean commit) {
+        if (state.compareAndSet(OPEN, RESOLVED) && commit && half != null) {
+            broker.publish(half);
+        }
+    }
+
+    boolean isResolved() {
+        return state.get() == RESOLVED;
+    }
+
+    TransactionResolution check(TransactionChecker checker) {
+        return half == null ? TransactionResolution.ROLLBACK : checker.check(half);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.Order;
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import com.example.orderdemo.rocketmq.OrderTransactionChecker;
+import com.example.orderdemo.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步订单创建流水线（app.order.createMode=async）
+ * 请求线程：发送半消息 → 本地 DB 事务提交 → 立即返回
+ * 流水线线程：tx.commit() → closeEngine.scheduleCloseAsync()，不再占用 Tomcat 线程和 Hikari 连接
+ * commit 失败时不做补偿：Broker 回查 transactionChecker，订单已落库即 COMMIT
+ */
+@Service
+public class AsyncOrderCreator {
+    private static final Logger log = LoggerFactory.getLogger(AsyncOrderCreator.class);
+
+    private final OrderRepository orderRepo;
+    private final OrderEventPublisher publisher;
+    private final TransactionTemplate txTemplate;
+    private final OrderCloseEngine closeEngine;
+    private final OrderTransactionChecker txnChecker;
+    private final ApplicationEventPublisher events;
+    private final OrderIdGenerator idGenerator;
+    private final ShardRouter shards;
+    private final ThreadPoolExecutor pipeline;
+
+    public AsyncOrderCreator(OrderRepository orderRepo,
+                             OrderEventPublisher publisher,
+                             TransactionTemplate txTemplate,
+                             OrderCloseEngine closeEngine,
+                             OrderTransactionChecker txnChecker,
+                             ApplicationEventPublisher events,
+                             OrderIdGenerator idGenerator,
+                             ShardRouter shards,
+                             @Value("${app.order.asyncPipeline.threads:4}") int threads,
+                             @Value("${app.order.asyncPipeline.queueCapacity:10000}") int queueCapacity) {
+        this.orderRepo = orderRepo;
+        this.publisher = publisher;
+        this.txTemplate = txTemplate;
+        this.closeEngine = closeEngine;
+        this.txnChecker = txnChecker;
+        this.events = events;
+        this.idGenerator = idGenerator;
+        this.shards = shards;
+        AtomicInteger seq = new AtomicInteger();
+        // 队列满时由调用线程执行，退化为同步模式而不是丢弃 commit
+        this.pipeline = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "order-create-pipeline-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /** Returns as soon as the order row is committed; message commit and delay-close continue in the pipeline. */
+    public String create(BigDecimal amount) throws Exception {
+        String orderId = idGenerator.nextId();
+        // 1) Half message is sent before any DB connection is borrowed
+        Transaction tx = publisher.beginTxnCreated(orderId, amount);
+        try {
+            // 2) Short local transaction, connection is held only for the insert
+            txTemplate.executeWithoutResult(status -> {
+                shards.pin(orderId);
+                Order o = new Order();
+                o.setOrderId(orderId);
+                o.setAmount(amount);
+                o.setStatus(OrderStatus.CREATED);
+                orderRepo.save(o);
+                events.publishEvent(OrderStatusChangedEvent.created(orderId, amount));
+            });
+        } catch (RuntimeException e) {
+            txnChecker.recordRolledBack(orderId);
+            pipeline.execute(() -> rollbackQuietly(orderId, tx));
+            throw e;
+        }
+        txnChecker.recordCommitted(orderId);
+
+        // 3) + 4) off the request thread
+        CompletableFuture.runAsync(() -> commit(orderId, tx), pipeline)
+                .thenCompose(v -> closeEngine.scheduleCloseAsync(orderId))
+                .whenComplete((receipt, ex) -> {
+                    if (ex != null) {
+                        log.warn("Async create pipeline failed after DB commit. OrderId={}", orderId, ex);
+                    }
+                });
+        return orderId;
+    }
+
+    private void commit(String orderId, Transaction tx) {
+        try {
+            tx.commit();
+        } catch (Exception e) {
+            // the broker will back-check the half message and resolve it from the DB
+            log.warn("Txn commit failed, leaving it to transaction check. OrderId={}", orderId, e);
+        }
+    }
+
+    private void rollbackQuietly(String orderId, Transaction tx) {
+        try {
+            tx.rollback();
+        } catch (Exception e) {
+            log.warn("Txn rollback failed. OrderId={}", orderId, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        pipeline.shutdown();
+        if (!pipeline.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Order create pipeline did not drain in time, {} tasks left", pipeline.getQueue().size());
+        }
+    }
+}
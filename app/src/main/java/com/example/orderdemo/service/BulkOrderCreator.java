@@ -0,0 +1,179 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import com.example.orderdemo.rocketmq.OrderTransactionChecker;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 批量创建订单（POST /api/orders/batch）
+ * 一个本地事务内：整批一条半消息 → 多行 INSERT → 一条延时关闭消息 → 提交半消息
+ * Order 使用 IDENTITY 主键，Hibernate 无法批量插入；这里绕过 JPA，用 JdbcTemplate 执行
+ * INSERT ... VALUES (...), (...) 多行语句（每 insertChunk 行一条），自增主键由数据库在语句内分配，
+ * 业务主键 order_id 由应用生成，不需要回读自增主键。
+ * 任一步失败整批回滚：数据库事务回滚，半消息 rollback。
+ * 分库时订单号只生成一次，按 ShardRouter.groupByShard 拆成每个分片一组，每组一个本地事务、一条半消息和一条延时关闭消息，
+ * 各组依次执行、各自全部成功或全部回滚；某一组失败时其它组照常提交，失败组的订单在结果中为 null（全部失败时抛出异常）。
+ */
+@Service
+public class BulkOrderCreator {
+    private static final Logger log = LoggerFactory.getLogger(BulkOrderCreator.class);
+    private static final String INSERT_PREFIX = "INSERT INTO orders (order_id, amount, status) VALUES ";
+    private static final String ROW = "(?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final PlatformTransactionManager txManager;
+    private final OrderEventPublisher publisher;
+    private final OrderCloseEngine closeEngine;
+    private final OrderTransactionChecker txnChecker;
+    private final ApplicationEventPublisher events;
+    private final OrderIdGenerator idGenerator;
+    private final ShardRouter shards;
+    private final int insertChunk;
+    private final String fullChunkSql;
+
+    public BulkOrderCreator(JdbcTemplate jdbc,
+                            PlatformTransactionManager txManager,
+                            OrderEventPublisher publisher,
+                            OrderCloseEngine closeEngine,
+                            OrderTransactionChecker txnChecker,
+                            ApplicationEventPublisher events,
+                            OrderIdGenerator idGenerator,
+                            ShardRouter shards,
+                            @Value("${app.order.batchCreate.insertChunk:200}") int insertChunk) {
+        this.jdbc = jdbc;
+        this.txManager = txManager;
+        this.publisher = publisher;
+        this.closeEngine = closeEngine;
+        this.txnChecker = txnChecker;
+        this.events = events;
+        this.idGenerator = idGenerator;
+        this.shards = shards;
+        this.insertChunk = insertChunk;
+        this.fullChunkSql = insertSql(insertChunk);
+    }
+
+    /**
+     * Create one order per amount, all or nothing per shard.
+     * @return the new order ids, in the order of {@code amounts}; null where the order's shard failed
+     * @throws Exception the first failure, if no shard succeeded
+     */
+    public List<String> create(List<BigDecimal> amounts) throws Exception {
+        if (amounts.isEmpty()) {
+            return List.of();
+        }
+        String[] orderIds = new String[amounts.size()];
+        for (int i = 0; i < orderIds.length; i++) {
+            orderIds[i] = idGenerator.nextId();
+        }
+        List<List<Integer>> groups = shards.groupByShard(
+                IntStream.range(0, orderIds.length).boxed().toList(), i -> orderIds[i]);
+        Exception firstFailure = null;
+        int failedGroups = 0;
+        for (List<Integer> group : groups) {
+            List<String> ids = group.stream().map(i -> orderIds[i]).toList();
+            List<BigDecimal> groupAmounts = group.stream().map(amounts::get).toList();
+            try {
+                createOnShard(ids, groupAmounts);
+            } catch (Exception e) {
+                log.warn("Batch create of {} orders failed on shard {}", ids.size(), shards.shardOf(ids.get(0)), e);
+                group.forEach(i -> orderIds[i] = null);
+                firstFailure = firstFailure == null ? e : firstFailure;
+                failedGroups++;
+            }
+        }
+        if (failedGroups == groups.size()) {
+            throw firstFailure;
+        }
+        return Arrays.asList(orderIds);
+    }
+
+    /* One local transaction on the shard of these orders; the half message commits just before the database. */
+    private void createOnShard(List<String> orderIds, List<BigDecimal> amounts) throws Exception {
+        TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            shards.pin(orderIds.get(0));
+            // 1) One half message for the whole group
+            Transaction tx = publisher.beginTxnCreatedBatch(orderIds, amounts);
+            recordOutcomeAfterCompletion(orderIds.get(0));
+            try {
+                // 2) Multi-row inserts in the local transaction
+                for (int from = 0; from < orderIds.size(); from += insertChunk) {
+                    int to = Math.min(from + insertChunk, orderIds.size());
+                    insertRows(orderIds.subList(from, to), amounts.subList(from, to));
+                }
+                for (int i = 0; i < orderIds.size(); i++) {
+                    events.publishEvent(OrderStatusChangedEvent.created(orderIds.get(i), amounts.get(i)));
+                }
+
+                // 3) One delay-close message for the group, before the commit like OrderService.create
+                closeEngine.scheduleCloseAll(orderIds);
+
+                // 4) Commit the half message
+                tx.commit();
+            } catch (Exception e) {
+                try {
+                    tx.rollback();
+                } catch (Exception ignore) {}
+                throw e;
+            }
+        } catch (Exception e) {
+            if (!status.isCompleted()) {
+                txManager.rollback(status);
+            }
+            throw e;
+        }
+        txManager.commit(status);
+    }
+
+    private void insertRows(List<String> orderIds, List<BigDecimal> amounts) {
+        int n = orderIds.size();
+        Object[] args = new Object[n * 3];
+        for (int i = 0; i < n; i++) {
+            args[i * 3] = orderIds.get(i);
+            args[i * 3 + 1] = amounts.get(i);
+            args[i * 3 + 2] = OrderStatus.CREATED.name();
+        }
+        int inserted = jdbc.update(n == insertChunk ? fullChunkSql : insertSql(n), args);
+        if (inserted != n) {
+            throw new IllegalStateException("Expected " + n + " inserted orders, got " + inserted);
+        }
+    }
+
+    private static String insertSql(int rows) {
+        return INSERT_PREFIX + String.join(", ", Collections.nCopies(rows, ROW));
+    }
+
+    /* The broker back-checks the batch by its first order id, see OrderEventPublisher.beginTxnCreatedBatch. */
+    private void recordOutcomeAfterCompletion(String firstOrderId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    txnChecker.recordCommitted(firstOrderId);
+                } else if (status == STATUS_ROLLED_BACK) {
+                    txnChecker.recordRolledBack(firstOrderId);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/** One broker timer message per order on the delay topic (original behaviour). */
+@Component
+@ConditionalOnProperty(name = "app.order.closeEngine", havingValue = "delay-message", matchIfMissing = true)
+public class DelayMessageCloseEngine implements OrderCloseEngine {
+    private final OrderEventPublisher publisher;
+    private final long closeAfterMillis;
+
+    public DelayMessageCloseEngine(OrderEventPublisher publisher,
+                                   @Value("${app.order.closeAfter:30m}") Duration closeAfter) {
+        this.publisher = publisher;
+        this.closeAfterMillis = closeAfter.toMillis();
+    }
+
+    @Override
+    public void scheduleClose(String orderId) throws Exception {
+        publisher.sendDelayClose(orderId, closeAfterMillis);
+    }
+
+    @Override
+    public CompletableFuture<?> scheduleCloseAsync(String orderId) {
+        return publisher.sendDelayCloseAsync(orderId, closeAfterMillis);
+    }
+
+    /** A single delay message carries the whole batch. */
+    @Override
+    public void scheduleCloseAll(List<String> orderIds) throws Exception {
+        publisher.sendDelayCloseBatch(orderIds, closeAfterMillis);
+    }
+
+    /** Delivery time is fixed when the order is written, not when the relay sends it. */
+    @Override
+    public Optional<Message> closeMessage(String orderId) {
+        return Optional.of(publisher.delayCloseMessage(orderId, closeAfterMillis));
+    }
+}
@@ -2,34 +2,179 @@ package com.example.orderdemo.service;
 
 import com.example.orderdemo.model.MessageLog;
 import com.example.orderdemo.repository.MessageLogRepository;
+import com.example.orderdemo.sharding.ShardRouter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Component
 public class IdempotentService {
+    /* Same insert-if-absent as MessageLogRepository#insertIfAbsent: only the live buckets are checked. */
+    private static final String INSERT_IGNORE_SQL =
+            "INSERT IGNORE INTO message_log (dedup_key, message_id, status, bucket) " +
+            "SELECT ?, ?, 'SUCCESS', ? FROM DUAL WHERE NOT EXISTS " +
+            "(SELECT 1 FROM message_log WHERE dedup_key = ? AND bucket >= ?)";
+
     private final MessageLogRepository repo;
+    private final JdbcTemplate jdbc;
+    /* message_log rows live on the shard of their order, in the same transaction as its status update */
+    private final ShardRouter shards;
+    /** 去重窗口（按天分桶），超过窗口的记录由 MessageLogRetention 清理，不再参与去重 */
+    private final int retentionBuckets;
+
+    /**
+     * 最近处理过的 dedupKey 前置缓存（有界 + 按写入时间过期）
+     * Broker 重投通常在几秒内到达，命中缓存时直接丢弃，不访问数据库
+     * 只在本地事务提交后写入，避免回滚的消息被误判为重复
+     */
+    private final Cache<String, Boolean> recentKeys;
 
-    public IdempotentService(MessageLogRepository repo) {
+    /**
+     * idempotent.checks：result=first（首次处理）| duplicate，duplicate 再按 source=cache|db|batch 区分
+     * 重复率 = duplicate / 全部；cache 占 duplicate 的比例反映前置缓存省掉了多少次数据库访问
+     */
+    private final Counter firstSeen;
+    private final Counter duplicateInCache;
+    private final Counter duplicateInDb;
+    private final Counter duplicateInBatch;
+
+    public IdempotentService(MessageLogRepository repo,
+                             JdbcTemplate jdbc,
+                             ShardRouter shards,
+                             MeterRegistry registry,
+                             @Value("${app.idempotent.cache.maxSize:100000}") long maxSize,
+                             @Value("${app.idempotent.cache.ttl:10m}") Duration ttl,
+                             @Value("${app.idempotent.retention.window:7d}") Duration retention) {
         this.repo = repo;
+        this.jdbc = jdbc;
+        this.shards = shards;
+        this.retentionBuckets = MessageLog.bucketsFor(retention);
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, recentKeys, "idempotentKeys");
+        this.firstSeen = checks(registry, "first", "db");
+        this.duplicateInCache = checks(registry, "duplicate", "cache");
+        this.duplicateInDb = checks(registry, "duplicate", "db");
+        this.duplicateInBatch = checks(registry, "duplicate", "batch");
+    }
+
+    private static Counter checks(MeterRegistry registry, String result, String source) {
+        return Counter.builder("idempotent.checks")
+                .description("Dedup checks by outcome and where the answer came from")
+                .tag("result", result)
+                .tag("source", source)
+                .register(registry);
     }
 
     /**
      * Execute the action at most once per dedupKey.
      * If a record with dedupKey already exists, the action is skipped.
+     * The dedup row is claimed first with a single INSERT IGNORE; if the action
+     * throws, the surrounding transaction rolls the claim back.
      */
     @Transactional
     public boolean processOnce(String dedupKey, String messageId, Runnable action) {
-        return repo.findByDedupKey(dedupKey)
-                .map(x -> false)
-                .orElseGet(() -> {
-                    // no record -> run and insert a success record
-                    action.run();
-                    MessageLog log = new MessageLog();
-                    log.setDedupKey(dedupKey);
-                    log.setMessageId(messageId);
-                    log.setStatus("SUCCESS");
-                    repo.save(log);
-                    return true;
-                });
+        if (recentKeys.getIfPresent(dedupKey) != null) {
+            duplicateInCache.increment();
+            return false;
+        }
+        shards.pinShard(shards.shardOfDedupKey(dedupKey));
+        int bucket = MessageLog.bucketOf(System.currentTimeMillis());
+        if (repo.insertIfAbsent(dedupKey, messageId, "SUCCESS", bucket, minLiveBucket(bucket)) == 0) {
+            duplicateInDb.increment();
+            recentKeys.put(dedupKey, Boolean.TRUE);
+            return false;
+        }
+        firstSeen.increment();
+        action.run();
+        rememberAfterCommit(dedupKey);
+        return true;
+    }
+
+    /**
+     * Batch form of the dedup claim used by the micro-batched FIFO consumer.
+     * Keys found in the front cache are skipped, the rest are claimed with one JDBC batch
+     * of INSERT IGNORE statements in the caller's transaction.
+     * A driver that cannot report per-row counts (SUCCESS_NO_INFO) is treated as claimed;
+     * the conditional status updates that follow are themselves idempotent.
+     * @return claimed[i] is true if keys[i] was not processed before
+     */
+    @Transactional
+    public boolean[] claimBatch(List<String> keys, List<String> messageIds) {
+        boolean[] claimed = new boolean[keys.size()];
+        List<Object[]> args = new ArrayList<>(keys.size());
+        List<Integer> positions = new ArrayList<>(keys.size());
+        Set<String> inBatch = new HashSet<>();
+        int bucket = MessageLog.bucketOf(System.currentTimeMillis());
+        int minBucket = minLiveBucket(bucket);
+        for (int i = 0; i < keys.size(); i++) {
+            // a repeated key inside the same batch is left unclaimed (its first occurrence wins)
+            if (!inBatch.add(keys.get(i))) {
+                duplicateInBatch.increment();
+            } else if (recentKeys.getIfPresent(keys.get(i)) != null) {
+                duplicateInCache.increment();
+            } else {
+                shards.pinShard(shards.shardOfDedupKey(keys.get(i)));
+                args.add(new Object[]{keys.get(i), messageIds.get(i), bucket, keys.get(i), minBucket});
+                positions.add(i);
+            }
+        }
+        if (args.isEmpty()) {
+            return claimed;
+        }
+        int[] counts = jdbc.batchUpdate(INSERT_IGNORE_SQL, args);
+        List<String> inserted = new ArrayList<>(counts.length);
+        for (int j = 0; j < counts.length; j++) {
+            int i = positions.get(j);
+            if (counts[j] != 0) {
+                firstSeen.increment();
+                claimed[i] = true;
+                inserted.add(keys.get(i));
+            } else {
+                duplicateInDb.increment();
+                recentKeys.put(keys.get(i), Boolean.TRUE);
+            }
+        }
+        rememberAfterCommit(inserted);
+        return claimed;
+    }
+
+    /** Oldest bucket still inside the retention window; older buckets may already be dropped. */
+    int minLiveBucket(int currentBucket) {
+        return currentBucket - retentionBuckets + 1;
+    }
+
+    private void rememberAfterCommit(String dedupKey) {
+        rememberAfterCommit(List.of(dedupKey));
+    }
+
+    private void rememberAfterCommit(List<String> dedupKeys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dedupKeys.forEach(k -> recentKeys.put(k, Boolean.TRUE));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dedupKeys.forEach(k -> recentKeys.put(k, Boolean.TRUE));
+            }
+        });
     }
 }
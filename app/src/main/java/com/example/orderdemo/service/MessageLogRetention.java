@@ -0,0 +1,208 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.MessageLog;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * message_log 去重表的保留期清理任务
+ * 表按 bucket（UTC 纪元日）RANGE 分区时：提前为未来几天建好分区（拆分 pmax），
+ * 整个删除完全早于保留窗口的分区（DROP PARTITION 只改元数据，不逐行删除，不产生大事务）。
+ * 表未分区时退化为按 idx_bucket 分块删除（DELETE ... LIMIT n，每块一个短事务）。
+ * 去重查询本身只检查窗口内的桶，清理进度落后不会影响正确性，只会多占磁盘。
+ * 多节点部署时用 MySQL GET_LOCK 保证同一时刻只有一个节点执行。分库时每个分片各自清理，锁也在各分片上各取各的。
+ * app.idempotent.retention.enabled=false 关闭（没有分区与 GET_LOCK 的库，如 shards-local 的 H2）。
+ */
+@Component
+@ConditionalOnProperty(name = "app.idempotent.retention.enabled", havingValue = "true", matchIfMissing = true)
+public class MessageLogRetention {
+    private static final Logger log = LoggerFactory.getLogger(MessageLogRetention.class);
+
+    private static final String LOCK_NAME = "message_log_retention";
+    private static final String PARTITIONS_SQL =
+            "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'message_log' AND PARTITION_NAME IS NOT NULL " +
+            "ORDER BY PARTITION_ORDINAL_POSITION";
+    private static final String DELETE_CHUNK_SQL = "DELETE FROM message_log WHERE bucket < ? LIMIT ?";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final int retentionBuckets;
+    private final int aheadBuckets;
+    private final int deleteChunkSize;
+    private final int maxChunksPerRun;
+    private final int ddlLockWaitSeconds;
+
+    public MessageLogRetention(JdbcTemplate jdbc,
+                               ShardRouter shards,
+                               @Value("${app.idempotent.retention.window:7d}") Duration retention,
+                               @Value("${app.idempotent.retention.aheadDays:3}") int aheadBuckets,
+                               @Value("${app.idempotent.retention.deleteChunkSize:5000}") int deleteChunkSize,
+                               @Value("${app.idempotent.retention.maxChunksPerRun:200}") int maxChunksPerRun,
+                               @Value("${app.idempotent.retention.ddlLockWaitSeconds:5}") int ddlLockWaitSeconds) {
+        this.jdbc = jdbc;
+        this.shards = shards;
+        this.retentionBuckets = MessageLog.bucketsFor(retention);
+        this.aheadBuckets = aheadBuckets;
+        this.deleteChunkSize = deleteChunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.ddlLockWaitSeconds = ddlLockWaitSeconds;
+    }
+
+    @Scheduled(initialDelayString = "${app.idempotent.retention.initialDelayMillis:60000}",
+            fixedDelayString = "${app.idempotent.retention.intervalMillis:3600000}")
+    public void run() {
+        for (int shard = 0; shard < shards.shards(); shard++) {
+            try {
+                shards.run(shard, () -> jdbc.execute((ConnectionCallback<Void>) con -> {
+                    if (!tryLock(con)) {
+                        log.debug("message_log retention is running on another node, skipping");
+                        return null;
+                    }
+                    try {
+                        purge(con, MessageLog.bucketOf(System.currentTimeMillis()));
+                    } finally {
+                        unlock(con);
+                    }
+                    return null;
+                }));
+            } catch (Exception e) {
+                log.warn("message_log retention run failed on shard {}, will retry next tick", shard, e);
+            }
+        }
+    }
+
+    /* Everything below minLive is outside the dedup window and can go. */
+    void purge(Connection con, int currentBucket) throws SQLException {
+        int minLive = currentBucket - retentionBuckets + 1;
+        List<Partition> partitions = partitions(con);
+        if (partitions.isEmpty()) {
+            long deleted = deleteInChunks(con, minLive);
+            if (deleted > 0) {
+                log.info("message_log retention deleted {} rows older than bucket {}", deleted, minLive);
+            }
+            return;
+        }
+        // DDL waits for the metadata lock behind open transactions and queues the hot path behind it;
+        // give up quickly instead and retry on the next tick
+        try (Statement st = con.createStatement()) {
+            st.execute("SET SESSION lock_wait_timeout = " + ddlLockWaitSeconds);
+        }
+        try {
+            createAhead(con, partitions, currentBucket + aheadBuckets);
+            dropExpired(con, partitions, minLive);
+        } finally {
+            // pooled connection, don't leak the session setting
+            try (Statement st = con.createStatement()) {
+                st.execute("SET SESSION lock_wait_timeout = DEFAULT");
+            }
+        }
+    }
+
+    /* Split pmax so each upcoming day gets its own partition before rows arrive for it. */
+    private void createAhead(Connection con, List<Partition> partitions, int lastBucket) throws SQLException {
+        int next = partitions.stream()
+                .filter(p -> p.lessThan() != null)
+                .mapToInt(Partition::lessThan)
+                .max()
+                .orElse(MessageLog.bucketOf(System.currentTimeMillis()));
+        if (next > lastBucket) {
+            return;
+        }
+        StringBuilder ddl = new StringBuilder("ALTER TABLE message_log REORGANIZE PARTITION pmax INTO (");
+        for (int bucket = next; bucket <= lastBucket; bucket++) {
+            ddl.append("PARTITION ").append(LocalDate.ofEpochDay(bucket).format(PARTITION_NAME))
+                    .append(" VALUES LESS THAN (").append(bucket + 1).append("), ");
+        }
+        ddl.append("PARTITION pmax VALUES LESS THAN MAXVALUE)");
+        try (Statement st = con.createStatement()) {
+            st.execute(ddl.toString());
+        }
+        log.info("message_log retention added partitions for buckets {}..{}", next, lastBucket);
+    }
+
+    /* A partition whose upper bound is <= minLive only holds expired rows. */
+    private void dropExpired(Connection con, List<Partition> partitions, int minLive) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        for (Partition p : partitions) {
+            if (p.lessThan() != null && p.lessThan() <= minLive) {
+                expired.add(p.name());
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        try (Statement st = con.createStatement()) {
+            st.execute("ALTER TABLE message_log DROP PARTITION " + String.join(", ", expired));
+        }
+        log.info("message_log retention dropped partitions {}", expired);
+    }
+
+    /* Autocommit chunks: each DELETE is its own short transaction and only locks the rows it removes. */
+    private long deleteInChunks(Connection con, int minLive) throws SQLException {
+        long total = 0;
+        try (PreparedStatement ps = con.prepareStatement(DELETE_CHUNK_SQL)) {
+            for (int i = 0; i < maxChunksPerRun; i++) {
+                ps.setInt(1, minLive);
+                ps.setInt(2, deleteChunkSize);
+                int deleted = ps.executeUpdate();
+                total += deleted;
+                if (deleted < deleteChunkSize) {
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+
+    private List<Partition> partitions(Connection con) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(PARTITIONS_SQL)) {
+            while (rs.next()) {
+                String bound = rs.getString(2);
+                Integer lessThan = bound == null || "MAXVALUE".equalsIgnoreCase(bound) ? null : Integer.valueOf(bound);
+                partitions.add(new Partition(rs.getString(1), lessThan));
+            }
+        }
+        return partitions;
+    }
+
+    private static boolean tryLock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            ps.setString(1, LOCK_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void unlock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.execute();
+        }
+    }
+
+    /** lessThan is null for the MAXVALUE catch-all partition. */
+    private record Partition(String name, Integer lessThan) {
+    }
+}
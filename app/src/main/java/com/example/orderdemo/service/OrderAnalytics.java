@@ -0,0 +1,356 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单实时统计（app.order.analytics.*，GET /admin/analytics），替代对 orders 表的 GROUP BY status / SUM(amount)
+ * 数据来源：OrderStatusChangedEvent（创建、支付、发货、关闭，包括消费者经 OrderStateMachine 做的迁移），提交后记账。
+ * 按秒分桶的环形数组保存最近 window 的计数：各状态迁移次数、GMV（创建金额）、已支付金额、下单到支付的耗时分布。
+ * 桶内全是 LongAdder / LongAccumulator（分段计数，写线程之间不争用同一个缓存行），跨秒时 CAS 换入新桶，无锁。
+ * 支付耗时与支付金额需要下单时间和金额：本实例创建（或启动时从库中加载）且尚未支付的订单记在 open 表里，
+ * 其它实例创建的订单在本实例支付时计入 paidUntracked。
+ * 统计只覆盖本实例提交的迁移；启动重建从库中补齐窗口内的数据，见 {@link #rebuild()}。
+ */
+@Component
+public class OrderAnalytics {
+    private static final Logger log = LoggerFactory.getLogger(OrderAnalytics.class);
+
+    /* upper bounds of the pay-latency histogram, the last bucket is everything above */
+    static final long[] PAY_LATENCY_BOUNDS_MILLIS = {
+            1_000, 5_000, 15_000, 30_000, 60_000, 120_000, 300_000, 600_000, 900_000, 1_800_000};
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final String REBUILD_SQL =
+            "SELECT id, order_id, amount, created_at, updated_at FROM orders " +
+            "WHERE status = ? AND created_at < ? AND (created_at > ? OR (created_at = ? AND id > ?)) " +
+            "ORDER BY created_at, id LIMIT ?";
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final int windowSeconds;
+    private final int slots;
+    private final long trackForMillis;
+    private final int maxTracked;
+    private final boolean rebuildOnStartup;
+    private final int rebuildChunk;
+    private final AtomicReferenceArray<Bucket> buckets;
+    /* orders created and not yet paid or closed: where pay latency and paid amount come from */
+    private final Map<String, Open> open = new ConcurrentHashMap<>();
+    /* transitions before this instant are counted from the database by the rebuild, not from events */
+    private volatile long ignoreBefore;
+    private volatile RebuildStatus rebuild = new RebuildStatus("NONE", 0, null, null, null);
+
+    private record Open(long createdAt, long amountCents) {}
+
+    /** Counts of one second; replaced as a whole when its slot is reused. */
+    private static final class Bucket {
+        final long second;
+        final LongAdder[] transitions = adders(STATUSES.length);
+        final LongAdder createdCents = new LongAdder();
+        final LongAdder paidCents = new LongAdder();
+        final LongAdder paidUntracked = new LongAdder();
+        final LongAdder[] payLatency = adders(PAY_LATENCY_BOUNDS_MILLIS.length + 1);
+        final LongAdder payLatencySum = new LongAdder();
+        final LongAccumulator payLatencyMax = new LongAccumulator(Math::max, 0);
+
+        Bucket(long second) {
+            this.second = second;
+        }
+
+        private static LongAdder[] adders(int n) {
+            LongAdder[] a = new LongAdder[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = new LongAdder();
+            }
+            return a;
+        }
+    }
+
+    public record Rate(long count, double perSecond) {}
+
+    public record Gmv(BigDecimal created, BigDecimal paid, long paidUntracked) {}
+
+    /** Percentiles are bucket upper bounds (capped at the max seen); null when nothing was paid. */
+    public record PayLatency(long count, Long meanMillis, Long p50Millis, Long p90Millis, Long p99Millis,
+                             Long maxMillis, Map<String, Long> histogram) {}
+
+    public record RebuildStatus(String state, long rows, Instant cutoff, Instant finishedAt, String error) {}
+
+    public record Snapshot(long windowSeconds, Instant from, Instant to, Map<OrderStatus, Rate> transitions,
+                           Gmv gmv, PayLatency payLatency, int openOrdersTracked, RebuildStatus rebuild) {}
+
+    public OrderAnalytics(JdbcTemplate jdbc,
+                          ShardRouter shards,
+                          @Value("${app.order.analytics.window:15m}") Duration window,
+                          @Value("${app.order.analytics.trackFor:${app.order.closeAfter:30m}}") Duration trackFor,
+                          @Value("${app.order.analytics.maxTracked:200000}") int maxTracked,
+                          @Value("${app.order.analytics.rebuildOnStartup:true}") boolean rebuildOnStartup,
+                          @Value("${app.order.analytics.rebuildChunk:5000}") int rebuildChunk) {
+        this.jdbc = jdbc;
+        this.shards = shards;
+        this.windowSeconds = (int) Math.max(1, window.toSeconds());
+        // one spare slot on each side: a writer a second ahead never clobbers the oldest second still read
+        this.slots = windowSeconds + 2;
+        this.buckets = new AtomicReferenceArray<>(slots);
+        this.trackForMillis = trackFor.toMillis();
+        this.maxTracked = maxTracked;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.rebuildChunk = rebuildChunk;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent e) {
+        if (e.occurredAt() < ignoreBefore) {
+            return;
+        }
+        if (e.status() == OrderStatus.CREATED) {
+            recordCreated(e.orderId(), cents(e.amount()), e.occurredAt(), true);
+        } else {
+            recordTransition(e.orderId(), e.status(), e.occurredAt());
+        }
+    }
+
+    private void recordCreated(String orderId, long amountCents, long at, boolean track) {
+        Bucket b = bucket(at);
+        if (b != null) {
+            b.transitions[OrderStatus.CREATED.ordinal()].increment();
+            b.createdCents.add(amountCents);
+        }
+        if (track && open.size() < maxTracked) {
+            open.putIfAbsent(orderId, new Open(at, amountCents));
+        }
+    }
+
+    private void recordTransition(String orderId, OrderStatus status, long at) {
+        Open o = open.remove(orderId);
+        Bucket b = bucket(at);
+        if (b == null) {
+            return;
+        }
+        b.transitions[status.ordinal()].increment();
+        if (status == OrderStatus.PAID) {
+            if (o == null) {
+                b.paidUntracked.increment();
+            } else {
+                b.paidCents.add(o.amountCents());
+                recordPayLatency(b, Math.max(0, at - o.createdAt()));
+            }
+        }
+    }
+
+    private static void recordPayLatency(Bucket b, long millis) {
+        int i = 0;
+        while (i < PAY_LATENCY_BOUNDS_MILLIS.length && millis > PAY_LATENCY_BOUNDS_MILLIS[i]) {
+            i++;
+        }
+        b.payLatency[i].increment();
+        b.payLatencySum.add(millis);
+        b.payLatencyMax.accumulate(millis);
+    }
+
+    /** The bucket of the second containing {@code at}, or null if that second is outside the window. */
+    private Bucket bucket(long at) {
+        long second = Math.floorDiv(at, 1000);
+        long now = Math.floorDiv(System.currentTimeMillis(), 1000);
+        if (second <= now - windowSeconds || second > now + 1) {
+            return null;
+        }
+        int i = (int) Math.floorMod(second, slots);
+        while (true) {
+            Bucket b = buckets.get(i);
+            if (b != null && b.second == second) {
+                return b;
+            }
+            if (b != null && b.second > second) {
+                return null;
+            }
+            Bucket fresh = new Bucket(second);
+            if (buckets.compareAndSet(i, b, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /** Totals of the last {@code window} (capped at the configured window), ending now. */
+    public Snapshot snapshot(Duration window) {
+        long seconds = Math.max(1, Math.min(windowSeconds, window.toSeconds()));
+        long now = Math.floorDiv(System.currentTimeMillis(), 1000);
+        long[] transitions = new long[STATUSES.length];
+        long[] latency = new long[PAY_LATENCY_BOUNDS_MILLIS.length + 1];
+        long createdCents = 0, paidCents = 0, paidUntracked = 0, latencySum = 0, latencyMax = 0;
+        for (long s = now - seconds + 1; s <= now; s++) {
+            Bucket b = buckets.get((int) Math.floorMod(s, slots));
+            if (b == null || b.second != s) {
+                continue;
+            }
+            for (int i = 0; i < transitions.length; i++) {
+                transitions[i] += b.transitions[i].sum();
+            }
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] += b.payLatency[i].sum();
+            }
+            createdCents += b.createdCents.sum();
+            paidCents += b.paidCents.sum();
+            paidUntracked += b.paidUntracked.sum();
+            latencySum += b.payLatencySum.sum();
+            latencyMax = Math.max(latencyMax, b.payLatencyMax.get());
+        }
+        Map<OrderStatus, Rate> rates = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus st : STATUSES) {
+            long n = transitions[st.ordinal()];
+            rates.put(st, new Rate(n, Math.round(n * 100.0 / seconds) / 100.0));
+        }
+        return new Snapshot(seconds, Instant.ofEpochSecond(now - seconds + 1), Instant.ofEpochSecond(now + 1), rates,
+                new Gmv(BigDecimal.valueOf(createdCents, 2), BigDecimal.valueOf(paidCents, 2), paidUntracked),
+                payLatency(latency, latencySum, latencyMax), open.size(), rebuild);
+    }
+
+    private static PayLatency payLatency(long[] counts, long sum, long max) {
+        long total = 0;
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            histogram.put(i < PAY_LATENCY_BOUNDS_MILLIS.length
+                    ? "le_" + Duration.ofMillis(PAY_LATENCY_BOUNDS_MILLIS[i]).toSeconds() + "s" : "le_inf", counts[i]);
+        }
+        if (total == 0) {
+            return new PayLatency(0, null, null, null, null, null, histogram);
+        }
+        return new PayLatency(total, sum / total, percentile(counts, total, 0.5, max),
+                percentile(counts, total, 0.9, max), percentile(counts, total, 0.99, max), max, histogram);
+    }
+
+    private static long percentile(long[] counts, long total, double q, long max) {
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < PAY_LATENCY_BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(PAY_LATENCY_BOUNDS_MILLIS[i], max);
+            }
+        }
+        return max;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            Thread t = new Thread(this::rebuild, "analytics-rebuild");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Fill the window and the open-order table from the orders table, by idx_status_created_at in keyset chunks.
+     * Everything before the cutoff (the start of the current second) comes from the database and the events
+     * before it are ignored from then on, so nothing is counted twice. The row only keeps its latest status:
+     * a PAID row gives the exact pay latency (updated_at - created_at), a SHIPPED row counts as shipped at
+     * updated_at but its payment is not recovered; orders created before max(window, trackFor) are not scanned.
+     * Timestamps come from the database clock. With sharding every shard is scanned in turn.
+     */
+    public void rebuild() {
+        long cutoff = Math.floorDiv(System.currentTimeMillis(), 1000) * 1000;
+        ignoreBefore = cutoff;
+        rebuild = new RebuildStatus("RUNNING", 0, Instant.ofEpochMilli(cutoff), null, null);
+        for (int i = 0; i < slots; i++) {
+            Bucket b = buckets.get(i);
+            if (b != null && b.second < cutoff / 1000) {
+                buckets.compareAndSet(i, b, null);
+            }
+        }
+        open.values().removeIf(o -> o.createdAt() < cutoff);
+        long windowStart = cutoff - windowSeconds * 1000L;
+        long trackFrom = cutoff - trackForMillis;
+        long from = Math.min(windowStart, trackFrom);
+        long rows = 0;
+        try {
+            for (int shard = 0; shard < shards.shards(); shard++) {
+                for (OrderStatus status : STATUSES) {
+                    rows += shards.call(shard, () -> rebuild(status, from, cutoff, windowStart, trackFrom));
+                }
+            }
+            rebuild = new RebuildStatus("DONE", rows, Instant.ofEpochMilli(cutoff), Instant.now(), null);
+            log.info("Order analytics rebuilt from {} rows", rows);
+        } catch (RuntimeException e) {
+            log.warn("Order analytics rebuild failed after {} rows, counting live transitions only", rows, e);
+            rebuild = new RebuildStatus("FAILED", rows, Instant.ofEpochMilli(cutoff), Instant.now(), String.valueOf(e));
+        }
+    }
+
+    private long rebuild(OrderStatus status, long from, long cutoff, long windowStart, long trackFrom) {
+        Timestamp afterCreated = new Timestamp(from - 1);
+        long afterId = Long.MAX_VALUE;
+        long rows = 0;
+        while (true) {
+            Timestamp c = afterCreated;
+            long id = afterId;
+            long[] last = {Long.MIN_VALUE, 0};
+            int[] n = {0};
+            jdbc.query(REBUILD_SQL, rs -> {
+                long createdAt = rs.getTimestamp("created_at").getTime();
+                long updatedAt = rs.getTimestamp("updated_at").getTime();
+                String orderId = rs.getString("order_id");
+                long amountCents = cents(rs.getBigDecimal("amount"));
+                if (createdAt >= windowStart) {
+                    recordCreated(orderId, amountCents, createdAt, false);
+                }
+                if (status == OrderStatus.CREATED) {
+                    if (createdAt >= trackFrom && open.size() < maxTracked) {
+                        open.putIfAbsent(orderId, new Open(createdAt, amountCents));
+                    }
+                } else if (updatedAt >= windowStart && updatedAt < cutoff) {
+                    Bucket b = bucket(updatedAt);
+                    if (b != null) {
+                        b.transitions[status.ordinal()].increment();
+                        if (status == OrderStatus.PAID) {
+                            b.paidCents.add(amountCents);
+                            recordPayLatency(b, Math.max(0, updatedAt - createdAt));
+                        }
+                    }
+                }
+                last[0] = createdAt;
+                last[1] = rs.getLong("id");
+                n[0]++;
+            }, status.name(), new Timestamp(cutoff), c, c, id, rebuildChunk);
+            rows += n[0];
+            if (n[0] < rebuildChunk) {
+                return rows;
+            }
+            afterCreated = new Timestamp(last[0]);
+            afterId = last[1];
+        }
+    }
+
+    /* orders whose payment or close never reached this instance */
+    @Scheduled(fixedDelayString = "${app.order.analytics.purgeIntervalMillis:60000}")
+    public void purgeOpen() {
+        long before = System.currentTimeMillis() - trackForMillis;
+        open.values().removeIf(o -> o.createdAt() < before);
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).longValue();
+    }
+}
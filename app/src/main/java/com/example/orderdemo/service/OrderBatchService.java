@@ -0,0 +1,66 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.service.OrderStateMachine.Transition;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量应用 FIFO 状态事件（由 FifoBatchListener 调用）
+ * 一个本地事务内：批量写入去重记录 → OrderStateMachine 批量条件更新订单状态
+ * 整批只有一次 commit（一次 fsync），替代每条消息一个 JPA 事务
+ * 分库时一批事件必须属于同一分片，FifoBatchListener 按 ShardRouter.groupByShard 拆批，每个分片一个事务
+ */
+@Service
+public class OrderBatchService {
+    private final IdempotentService idem;
+    private final OrderStateMachine stateMachine;
+    private final ShardRouter shards;
+
+    public OrderBatchService(IdempotentService idem, OrderStateMachine stateMachine, ShardRouter shards) {
+        this.idem = idem;
+        this.stateMachine = stateMachine;
+        this.shards = shards;
+    }
+
+    /** A status transition request carried by one FIFO message. */
+    public record StatusEvent(String orderId, OrderStatus target, String messageId) {
+        public String dedupKey() {
+            return "order:" + orderId + ":" + target.name();
+        }
+    }
+
+    /**
+     * Apply the events in arrival order inside one transaction.
+     * Events for the same order keep their relative order because a single JDBC batch
+     * executes its statements in the order they were added.
+     * @return number of events that were not seen before
+     */
+    @Transactional
+    public int applyBatch(List<StatusEvent> events) {
+        if (!events.isEmpty()) {
+            shards.pin(events.get(0).orderId());
+        }
+        List<String> keys = new ArrayList<>(events.size());
+        List<String> messageIds = new ArrayList<>(events.size());
+        for (StatusEvent e : events) {
+            keys.add(e.dedupKey());
+            messageIds.add(e.messageId());
+        }
+        boolean[] claimed = idem.claimBatch(keys, messageIds);
+
+        List<Transition> transitions = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            if (claimed[i]) {
+                StatusEvent e = events.get(i);
+                transitions.add(new Transition(e.orderId(), e.target()));
+            }
+        }
+        stateMachine.transitionBatch(transitions);
+        return transitions.size();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.orderdemo.service;
+
+import org.apache.rocketmq.client.apis.message.Message;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 未支付订单自动关闭引擎，通过 app.order.closeEngine 选择实现：
+ * delay-message（默认）：每个订单一条延时消息，由 delayConsumer 调用 autoClose
+ * sweep：不发消息，定时按 (status, created_at) 索引批量关闭过期订单
+ */
+public interface OrderCloseEngine {
+
+    /** Arrange for the order to be closed if it is still unpaid after the close timeout. */
+    void scheduleClose(String orderId) throws Exception;
+
+    /** Non-blocking variant used by the async create pipeline. */
+    CompletableFuture<?> scheduleCloseAsync(String orderId);
+
+    /** Schedule the close of orders created together; engines that can should do it in one step. */
+    default void scheduleCloseAll(List<String> orderIds) throws Exception {
+        for (String orderId : orderIds) {
+            scheduleClose(orderId);
+        }
+    }
+
+    /** Outbox create mode: the close message to store with the order, for engines that send one. */
+    default Optional<Message> closeMessage(String orderId) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.orderdemo.service;
+
+/**
+ * 订单号生成策略，通过 app.order.idGenerator.type 选择实现：
+ * snowflake（默认）：时间有序、无锁，uk_order_id 按时间顺序追加写入
+ * uuid：旧方案 "order-" + UUID 前 8 位，仅用于兼容
+ * 订单号会写入消息体，必须是 ASCII 且不超过 255 字符
+ */
+public interface OrderIdGenerator {
+
+    String nextId();
+}
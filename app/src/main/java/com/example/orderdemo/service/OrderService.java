@@ -4,19 +4,33 @@ import com.example.orderdemo.model.Order;
 import com.example.orderdemo.model.OrderStatus;
 import com.example.orderdemo.repository.OrderRepository;
 import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import com.example.orderdemo.rocketmq.OrderEventType;
+import com.example.orderdemo.rocketmq.OrderTransactionChecker;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
 import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class OrderService {
-    private static final long CLOSE_DELAY_MILLIS = 30 * 60 * 1000;
     private final OrderRepository orderRepo;
     private final OrderEventPublisher publisher;
     private final IdempotentService idem;
+    private final OrderCloseEngine closeEngine;
+    private final OrderTransactionChecker txnChecker;
+    private final ApplicationEventPublisher events;
+    private final OrderStateMachine stateMachine;
+    private final OrderIdGenerator idGenerator;
+    private final ShardRouter shards;
 
     /**
      * 依赖注入构造函数
@@ -26,29 +40,40 @@ public class OrderService {
      * @param orderRepo
      * @param publisher
      */
-    public OrderService(OrderRepository orderRepo, OrderEventPublisher publisher, IdempotentService idem) {
+    public OrderService(OrderRepository orderRepo, OrderEventPublisher publisher, IdempotentService idem,
+                        OrderCloseEngine closeEngine, OrderTransactionChecker txnChecker,
+                        ApplicationEventPublisher events, OrderStateMachine stateMachine,
+                        OrderIdGenerator idGenerator, ShardRouter shards) {
         this.orderRepo = orderRepo;
         this.publisher = publisher;
         this.idem = idem;
+        this.closeEngine = closeEngine;
+        this.txnChecker = txnChecker;
+        this.events = events;
+        this.stateMachine = stateMachine;
+        this.idGenerator = idGenerator;
+        this.shards = shards;
     }
 
     /**
      * 创建订单，使用 RocketMQ 事务消息保证一致性
-     * 生成订单ID：使用 UUID 生成唯一的订单标识
-     * 发送半消息：调用 publisher.sendTxnCreated(orderId) 发送事务消息的第一阶段
+     * 生成订单ID：OrderIdGenerator（默认时间有序的 snowflake 订单号）
+     * 发送半消息：调用 publisher.beginTxnCreated(orderId, amount) 发送事务消息的第一阶段，拿到事务句柄
      * 数据库操作：创建 Order 对象并保存到数据库
      * 事务处理：
      * 成功：提交 RocketMQ 事务消息 (tx.commit())
      * 失败：回滚 RocketMQ 事务消息 (tx.rollback())
-     * 资源清理：在 finally 块中清理 ThreadLocal 变量
+     * 事务句柄是局部变量，不经过 ThreadLocal，也就没有需要清理的线程状态
+     * 分库时订单号生成后先把本地事务绑定到订单所在分片（ShardRouter.pin），再写库
      */
     /** Create order using RocketMQ TRANSACTION message for consistency. */
     @Transactional
     public String create(BigDecimal amount) throws Exception {
-        String orderId = "order-" + UUID.randomUUID().toString().substring(0, 8);
+        String orderId = idGenerator.nextId();
+        shards.pin(orderId);
         // 1) Send half message and begin transaction
-        publisher.sendTxnCreated(orderId);
-        Transaction tx = OrderEventPublisher.TxHolder.get();
+        Transaction tx = publisher.beginTxnCreated(orderId, amount);
+        recordOutcomeAfterCompletion(orderId);
         try {
             // 2) Local DB transaction
             Order o = new Order();
@@ -56,105 +81,118 @@ public class OrderService {
             o.setAmount(amount);
             o.setStatus(OrderStatus.CREATED);
             orderRepo.save(o);
+            events.publishEvent(OrderStatusChangedEvent.created(orderId, amount));
 
-            // 3) Commit message transaction after DB success
-            tx.commit();
+            // 3) Schedule auto-close if unpaid in 30 minutes (delay message or sweep engine).
+            //    Done before the commit so a rejected send (backpressure) still rolls both sides back;
+            //    a close message for an order that never committed is a no-op in autoClose.
+            closeEngine.scheduleClose(orderId);
 
-            // 4)  Schedule auto-close if unpaid in 30 minutes
-            publisher.sendDelayClose(orderId, CLOSE_DELAY_MILLIS);
+            // 4) Commit message transaction after DB success
+            tx.commit();
             return orderId;
         } catch (Exception e) {
-            if (tx != null) {
-                try {
-                    tx.rollback();
-                } catch (Exception ignore) {}
-            }
+            try {
+                tx.rollback();
+            } catch (Exception ignore) {}
             throw e;
-        } finally {
-            OrderEventPublisher.TxHolder.clear();
         }
     }
 
+    /* Lets the transaction checker answer back-checks for this order from memory. */
+    private void recordOutcomeAfterCompletion(String orderId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    txnChecker.recordCommitted(orderId);
+                } else if (status == STATUS_ROLLED_BACK) {
+                    txnChecker.recordRolledBack(orderId);
+                }
+            }
+        });
+    }
+
     /**
      * 处理订单支付操作
      * 发送 FIFO（顺序）消息到 RocketMQ
-     * 消息格式：订单ID:PAID
+     * 消息体：OrderEventCodec 编码的 PAID 事件
      * 消费者接收到消息后会更新订单状态为 PAID
-     * 采用异步处理方式，提高系统性能
+     * 采用异步处理方式，提高系统性能：发送结果通过 CompletableFuture 返回，不占用请求线程
+     * 生产者在途窗口已满时立即抛出 BackpressureException
+     * 开启本地暂存（PublishSpool）时，发送失败或超过延迟预算的事件写入暂存后以 null 回执完成
      * @param orderId
-     * @throws Exception
      */
-    public void pay(String orderId) throws Exception {
+    public CompletableFuture<SendReceipt> pay(String orderId) {
         // send FIFO event; consumer will update DB status
-        publisher.sendFifo(orderId, "PAID");
+        return publisher.sendFifoAsync(orderId, OrderEventType.PAID);
     }
 
     /**
      * 处理订单发货操作
      * 发送 FIFO（顺序）消息到 RocketMQ
-     * 消息格式：订单ID:SHIPPED
+     * 消息体：OrderEventCodec 编码的 SHIPPED 事件
      * 消费者接收到消息后会更新订单状态为 SHIPPED
      * 确保订单状态变更的顺序性
      * @param orderId
-     * @throws Exception
      */
-    public void ship(String orderId) throws Exception {
-        publisher.sendFifo(orderId, "SHIPPED");
+    public CompletableFuture<SendReceipt> ship(String orderId) {
+        return publisher.sendFifoAsync(orderId, OrderEventType.SHIPPED);
     }
 
     /**
      * 标记订单为已支付状态（由消息消费者调用）
-     * 查找订单：根据订单ID查找对应的订单
-     * 状态检查：只有当前状态 ≤ CREATED 时才允许更新
-     * 状态更新：将订单状态设置为 PAID
-     * 事务保护：使用 @Transactional 确保数据一致性
-     * 防止重复处理：通过状态检查避免重复更新
+     * 状态迁移：OrderStateMachine 按迁移表执行条件更新 CREATED → PAID
+     * 不加载实体，一次 UPDATE 完成检查与写入；影响行数为 0 表示状态不允许（重复或乱序消息）
+     * 事务保护：使用 @Transactional 确保去重记录与状态更新一起提交
+     * 防止重复处理：dedupKey 去重 + 条件更新
      * @param orderId
      */
     //called by consumer
     @Transactional
     public void markPaid(String orderId) {
+        shards.pin(orderId);
         String dedupKey = "order:" + orderId + ":PAID";
-        idem.processOnce(dedupKey, null, () -> {
-            orderRepo.findByOrderId(orderId).ifPresent(o -> {
-                if (o.getStatus().ordinal() <= OrderStatus.CREATED.ordinal()) {
-                    o.setStatus(OrderStatus.PAID);
-                    orderRepo.save(o);
-                }
-            });
-        });
+        idem.processOnce(dedupKey, null, () -> stateMachine.transition(orderId, OrderStatus.PAID));
     }
 
     /**
      * 标记订单为已发货状态（由消息消费者调用）
-     * 查找订单：根据订单ID查找对应的订单
-     * 状态检查：只有当前状态 ≤ PAID 时才允许更新
-     * 状态更新：将订单状态设置为 SHIPPED
-     * 事务保护：使用 @Transactional 确保数据一致性
-     * 防止越级更新：确保订单状态按正确顺序流转
+     * 状态迁移：条件更新 CREATED/PAID → SHIPPED
+     * 已关闭的订单不会被发货，已发货的订单不会重复迁移
      * @param orderId
      */
     @Transactional
     public void markShipped(String orderId) {
+        shards.pin(orderId);
         String dedupKey = "order:" + orderId + ":SHIPPED";
-        idem.processOnce(dedupKey, null, () -> {
-            orderRepo.findByOrderId(orderId).ifPresent(o -> {
-                if (o.getStatus().ordinal() <= OrderStatus.PAID.ordinal()) {
-                    o.setStatus(OrderStatus.SHIPPED);
-                    orderRepo.save(o);
-                }
-            });
-        });
+        idem.processOnce(dedupKey, null, () -> stateMachine.transition(orderId, OrderStatus.SHIPPED));
     }
 
+    /**
+     * 超时关闭：条件更新 CREATED → CANCELLED
+     * 与并发的 markPaid 由同一行的更新串行化，已支付的订单不会被关闭
+     */
     @Transactional
     public void autoClose(String orderId)  {
-        orderRepo.findByOrderId(orderId).ifPresent(o -> {
-            if (o.getStatus() == OrderStatus.CREATED) {
-                o.setStatus(OrderStatus.CANCELLED);
-                orderRepo.save(o);
-            }
-        });
+        shards.pin(orderId);
+        stateMachine.transition(orderId, OrderStatus.CANCELLED);
+    }
+
+    /**
+     * Close the orders of one batch delay message with a single JDBC batch of conditional updates.
+     * The orders must share a shard (DelayEventListener splits the message with ShardRouter.groupByShard).
+     */
+    @Transactional
+    public void autoCloseAll(List<String> orderIds) {
+        if (!orderIds.isEmpty()) {
+            shards.pin(orderIds.get(0));
+        }
+        List<OrderStateMachine.Transition> transitions = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            transitions.add(new OrderStateMachine.Transition(orderId, OrderStatus.CANCELLED));
+        }
+        stateMachine.transitionBatch(transitions);
     }
 
 }
@@ -0,0 +1,148 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderView;
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.sharding.ShardRouter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订单状态近端缓存（有界 + 写入后过期）
+ * 写：create / markPaid / markShipped / autoClose 提交后通过 OrderStatusChangedEvent 写穿
+ * 写穿只覆盖本实例提交的变更：多实例部署时，其他实例（例如消费了该订单支付 / 关闭消息的实例）提交的变更不会通知这里。
+ * 因此按状态设置过期时间：终态（SHIPPED / CANCELLED）不会再变，缓存 ttl；其余状态只缓存 nonTerminalTtl，
+ * 其他实例的变更最多晚这么久可见。单实例部署可以把 nonTerminalTtl 调到与 ttl 相同。
+ * 读：未命中时回源 OrderRepository，批量查询合并为一次 IN 查询（分库时每个分片一次，并行执行）
+ * 回源在缓存的计算锁之外进行（Caffeine 的 get(key, loader) 在 ConcurrentHashMap 的 synchronized 桶锁里跑 loader，
+ * 虚拟线程在其中做 JDBC 会钉住载体线程）；回源期间到达的状态变更会作废这次回源结果，不会把旧状态写回缓存。
+ * 代价是同一订单的并发未命中各自查一次库。
+ * 命中率等指标通过 Micrometer 暴露（cache.gets{cache=orderState,result=hit|miss}）
+ */
+@Component
+public class OrderStateCache {
+    private final OrderRepository orderRepo;
+    private final ShardRouter shards;
+    private final Cache<String, OrderView> cache;
+    /* order id -> token of the latest load in progress; a status change removes it */
+    private final Map<String, Object> loading = new ConcurrentHashMap<>();
+
+    public OrderStateCache(OrderRepository orderRepo,
+                           ShardRouter shards,
+                           MeterRegistry registry,
+                           @Value("${app.order.stateCache.maxSize:200000}") long maxSize,
+                           @Value("${app.order.stateCache.ttl:10m}") Duration ttl,
+                           @Value("${app.order.stateCache.nonTerminalTtl:5s}") Duration nonTerminalTtl) {
+        this.orderRepo = orderRepo;
+        this.shards = shards;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(expireAfterWrite(ttl.toNanos(), nonTerminalTtl.toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "orderState");
+    }
+
+    /* Like expireAfterWrite, with the duration picked by the status being written. */
+    private static Expiry<String, OrderView> expireAfterWrite(long terminalNanos, long nonTerminalNanos) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String orderId, OrderView v, long currentTime) {
+                return v.status().isTerminal() ? terminalNanos : nonTerminalNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String orderId, OrderView v, long currentTime, long currentDuration) {
+                return expireAfterCreate(orderId, v, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String orderId, OrderView v, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    public Optional<OrderView> get(String orderId) {
+        OrderView cached = cache.getIfPresent(orderId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Object token = new Object();
+        loading.put(orderId, token);
+        Optional<OrderView> loaded = shards.call(shards.shardOf(orderId), () -> orderRepo.findByOrderId(orderId))
+                .map(OrderView::of);
+        loaded.ifPresentOrElse(v -> publishLoaded(orderId, token, v), () -> loading.remove(orderId, token));
+        return loaded;
+    }
+
+    /** Bulk lookup in request order; unknown order ids are simply absent from the result. */
+    public Map<String, OrderView> getAll(Collection<String> orderIds) {
+        Map<String, OrderView> found = new HashMap<>(cache.getAllPresent(orderIds));
+        List<String> missing = new ArrayList<>();
+        for (String id : orderIds) {
+            if (!found.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Object token = new Object();
+            missing.forEach(id -> loading.put(id, token));
+            shards.gather(missing, orderRepo::findByOrderIdIn).forEach(o -> {
+                OrderView v = OrderView.of(o);
+                found.put(o.getOrderId(), v);
+                publishLoaded(o.getOrderId(), token, v);
+            });
+            missing.forEach(id -> loading.remove(id, token));
+        }
+        Map<String, OrderView> result = new LinkedHashMap<>();
+        for (String id : orderIds) {
+            OrderView v = found.get(id);
+            if (v != null) {
+                result.put(id, v);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Insert first, then check the token: if a status change arrived at any point during the load it removed
+     * the token, and the possibly stale value is taken out again unless the change already replaced it.
+     */
+    private void publishLoaded(String orderId, Object token, OrderView v) {
+        cache.asMap().putIfAbsent(orderId, v);
+        if (!loading.remove(orderId, token)) {
+            cache.asMap().remove(orderId, v);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent e) {
+        if (e.amount() != null) {
+            cache.put(e.orderId(), new OrderView(e.orderId(), e.status(), e.amount(), e.occurredAt()));
+            return;
+        }
+        // absent entries are left to read-through, which sees the committed row; a load already in flight may not
+        loading.remove(e.orderId());
+        cache.asMap().computeIfPresent(e.orderId(), (id, v) -> v.withStatus(e.status(), e.occurredAt()));
+    }
+
+    public void invalidate(String orderId) {
+        cache.invalidate(orderId);
+    }
+}
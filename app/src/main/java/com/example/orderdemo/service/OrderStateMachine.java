@@ -0,0 +1,119 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 订单状态迁移引擎（CAS）
+ * 每次迁移是一条条件更新 UPDATE orders SET status=目标 WHERE order_id=? AND status IN (允许的来源状态)，
+ * 来源状态取自 OrderStatus 的迁移表。影响行数即结果：1 = 本次迁移生效，0 = 订单不存在或当前状态不允许。
+ * 不加载实体、不依赖脏检查，一次迁移只有一次数据库往返；
+ * 多节点并发时由行锁串行化，例如 autoClose 与 markPaid 同时到达，只有一个能从 CREATED 迁出。
+ * 分库时迁移在订单所在分片的事务里执行，一个事务里的订单必须在同一分片（ShardRouter.pin 校验）。
+ */
+@Component
+public class OrderStateMachine {
+    /* every target pads its sources to this many placeholders, so one JDBC batch can mix targets */
+    private static final int MAX_SOURCES = maxSources();
+    private static final String BATCH_TRANSITION_SQL =
+            "UPDATE orders SET status = ? WHERE order_id = ? AND status IN (" + placeholders(MAX_SOURCES) + ")";
+
+    private final OrderRepository orderRepo;
+    private final JdbcTemplate jdbc;
+    private final ApplicationEventPublisher events;
+    private final ShardRouter shards;
+
+    public OrderStateMachine(OrderRepository orderRepo, JdbcTemplate jdbc, ApplicationEventPublisher events,
+                             ShardRouter shards) {
+        this.orderRepo = orderRepo;
+        this.jdbc = jdbc;
+        this.events = events;
+        this.shards = shards;
+    }
+
+    /** A requested transition, used by the batch form. */
+    public record Transition(String orderId, OrderStatus target) {}
+
+    /**
+     * Move the order to {@code target} if the transition table allows it from its current status.
+     * @return true if this call changed the status
+     */
+    @Transactional
+    public boolean transition(String orderId, OrderStatus target) {
+        if (target.allowedFrom().isEmpty()) {
+            throw new IllegalArgumentException("No transition leads to " + target);
+        }
+        shards.pin(orderId);
+        if (orderRepo.transition(orderId, target, target.allowedFrom()) == 0) {
+            return false;
+        }
+        events.publishEvent(OrderStatusChangedEvent.of(orderId, target));
+        return true;
+    }
+
+    /**
+     * Apply the transitions as one JDBC batch, in list order, inside the caller's transaction.
+     * All orders must be on the transaction's shard.
+     * @return applied[i] is true if transitions[i] changed the status
+     */
+    @Transactional
+    public boolean[] transitionBatch(List<Transition> transitions) {
+        boolean[] applied = new boolean[transitions.size()];
+        if (transitions.isEmpty()) {
+            return applied;
+        }
+        List<Object[]> args = new ArrayList<>(transitions.size());
+        for (Transition t : transitions) {
+            shards.pin(t.orderId());
+            args.add(batchArgs(t));
+        }
+        int[] counts = jdbc.batchUpdate(BATCH_TRANSITION_SQL, args);
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO (-2) is not expected for single-row updates, treat it as applied like claimBatch does
+            if (counts[i] != 0) {
+                applied[i] = true;
+                Transition t = transitions.get(i);
+                events.publishEvent(OrderStatusChangedEvent.of(t.orderId(), t.target()));
+            }
+        }
+        return applied;
+    }
+
+    private static Object[] batchArgs(Transition t) {
+        if (t.target().allowedFrom().isEmpty()) {
+            throw new IllegalArgumentException("No transition leads to " + t.target());
+        }
+        Object[] args = new Object[2 + MAX_SOURCES];
+        args[0] = t.target().name();
+        args[1] = t.orderId();
+        Iterator<OrderStatus> sources = t.target().allowedFrom().iterator();
+        String first = sources.next().name();
+        args[2] = first;
+        for (int i = 3; i < args.length; i++) {
+            args[i] = sources.hasNext() ? sources.next().name() : first;
+        }
+        return args;
+    }
+
+    private static int maxSources() {
+        int max = 1;
+        for (OrderStatus s : OrderStatus.values()) {
+            max = Math.max(max, s.allowedFrom().size());
+        }
+        return max;
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * 订单状态变更的应用内事件，在变更所在的本地事务中发布，
+ * 监听方使用 @TransactionalEventListener 在提交后处理（近端缓存等）
+ * amount 只在创建时携带，其它变更为 null
+ */
+public record OrderStatusChangedEvent(String orderId, OrderStatus status, BigDecimal amount, long occurredAt) {
+
+    public static OrderStatusChangedEvent created(String orderId, BigDecimal amount) {
+        return new OrderStatusChangedEvent(orderId, OrderStatus.CREATED, amount, System.currentTimeMillis());
+    }
+
+    public static OrderStatusChangedEvent of(String orderId, OrderStatus status) {
+        return new OrderStatusChangedEvent(orderId, status, null, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.model.OrderView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 订单状态变更推送（SSE，GET /api/orders/stream 与 /api/orders/{orderId}/stream）
+ * create / markPaid / markShipped / autoClose 提交后通过 OrderStatusChangedEvent 写入一个有界环形缓冲，每条带递增序号。
+ * 全量订阅者各自持有环上的游标，由发送线程池按游标读出并推送；落后超过一圈（被覆盖）即视为慢消费者，
+ * 推送一条 dropped 事件后断开，客户端带 Last-Event-ID 重连。
+ * 单订单订阅者按订单号索引，只接收该订单的事件（有界队列，溢出同样断开）；首次订阅先推送一次当前状态快照，
+ * 订单到达终态（SHIPPED / CANCELLED）后结束流。
+ * 续传：Last-Event-ID（或 ?since=）仍在环内时从下一条开始补发；已被覆盖或来自上一个进程时先推送 reset，
+ * 客户端应重新查询一次状态。
+ * 序号和缓冲只覆盖本实例提交的变更；多实例部署时客户端需要连接负责该订单消费的实例，或在前面加一层汇聚。
+ * 虚拟线程模式（spring.threads.virtual.enabled=true）下每次发送一个虚拟线程，卡住的客户端不占用平台线程；
+ * 写入路径用 ReentrantLock 而不是 synchronized，提交事件的虚拟线程不会钉住载体线程。
+ */
+@Component
+public class OrderStatusStream {
+    private static final Logger log = LoggerFactory.getLogger(OrderStatusStream.class);
+    private static final int DRAIN_BATCH = 256;
+
+    /** One status transition as pushed to clients; {@code seq} is also the SSE event id. */
+    public record Update(long seq, String orderId, OrderStatus status, BigDecimal amount, long occurredAt) {}
+
+    private final OrderStateCache stateCache;
+    private final AtomicReferenceArray<Update> ring;
+    private final int mask;
+    private final int subscriberBuffer;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Set<FeedSubscriber> feed = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<OrderSubscriber>> byOrder = new ConcurrentHashMap<>();
+    private final AtomicInteger orderSubscribers = new AtomicInteger();
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeat;
+    private final Counter published;
+    private final Counter droppedOverflow;
+    private final Counter droppedError;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long lastSeq;  // written under the lock, read by the senders
+
+    public OrderStatusStream(OrderStateCache stateCache,
+                             MeterRegistry registry,
+                             @Value("${app.order.stream.bufferSize:65536}") int bufferSize,
+                             @Value("${app.order.stream.subscriberBuffer:64}") int subscriberBuffer,
+                             @Value("${app.order.stream.maxSubscribers:10000}") int maxSubscribers,
+                             @Value("${app.order.stream.senderThreads:4}") int senderThreads,
+                             @Value("${app.order.stream.heartbeat:15s}") Duration heartbeatInterval,
+                             @Value("${app.order.stream.timeout:30m}") Duration timeout,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.stateCache = stateCache;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.subscriberBuffer = subscriberBuffer;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+        this.senders = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("order-stream-", 0).factory())
+                : Executors.newFixedThreadPool(senderThreads, Thread.ofPlatform().name("order-stream-", 0).daemon(true).factory());
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("order-stream-heartbeat").daemon(true).factory());
+        long every = heartbeatInterval.toMillis();
+        this.heartbeat.scheduleWithFixedDelay(this::ping, every, every, TimeUnit.MILLISECONDS);
+        Gauge.builder("order.stream.subscribers", feed, Set::size)
+                .description("Open order status streams")
+                .tag("type", "feed")
+                .register(registry);
+        Gauge.builder("order.stream.subscribers", orderSubscribers, AtomicInteger::get)
+                .description("Open order status streams")
+                .tag("type", "order")
+                .register(registry);
+        this.published = Counter.builder("order.stream.events")
+                .description("Status transitions written to the stream ring buffer")
+                .register(registry);
+        this.droppedOverflow = dropped(registry, "overflow");
+        this.droppedError = dropped(registry, "error");
+    }
+
+    private static Counter dropped(MeterRegistry registry, String reason) {
+        return Counter.builder("order.stream.dropped")
+                .description("Subscribers disconnected by the stream")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent e) {
+        lock.lock();
+        try {
+            Update u = new Update(lastSeq + 1, e.orderId(), e.status(), e.amount(), e.occurredAt());
+            ring.set((int) (u.seq() & mask), u);
+            lastSeq = u.seq();
+            // offered under the lock so a subscriber registering concurrently sees each update exactly once
+            Set<OrderSubscriber> subs = byOrder.get(e.orderId());
+            if (subs != null) {
+                subs.forEach(s -> s.offer(u));
+            }
+        } finally {
+            lock.unlock();
+        }
+        published.increment();
+        feed.forEach(Subscriber::schedule);
+    }
+
+    /** Full feed, resuming after {@code since} when given. */
+    public SseEmitter subscribeAll(Long since) {
+        checkCapacity();
+        FeedSubscriber s = new FeedSubscriber(new SseEmitter(timeoutMillis));
+        lock.lock();
+        try {
+            long oldest = Math.max(1, lastSeq - mask);
+            if (since == null) {
+                s.cursor = lastSeq + 1;
+            } else if (since > lastSeq || since + 1 < oldest) {
+                s.resetFrom = since > lastSeq ? lastSeq : oldest - 1;
+                s.cursor = s.resetFrom + 1;
+            } else {
+                s.cursor = since + 1;
+            }
+            feed.add(s);
+        } finally {
+            lock.unlock();
+        }
+        s.emitter.onCompletion(() -> feed.remove(s));
+        s.schedule();
+        return s.emitter;
+    }
+
+    /** One order's transitions; a snapshot of its current status comes first unless resuming. */
+    public SseEmitter subscribeOrder(String orderId, Long since) {
+        checkCapacity();
+        OrderSubscriber s = new OrderSubscriber(orderId, new SseEmitter(timeoutMillis));
+        long from = since != null ? since : lastSeq;
+        if (since == null) {
+            // read before registering; updates after `from` are replayed below, at worst repeating the snapshot
+            s.snapshot = stateCache.get(orderId);
+        }
+        lock.lock();
+        try {
+            long oldest = Math.max(1, lastSeq - mask);
+            if (since != null && (since > lastSeq || since + 1 < oldest)) {
+                s.resetFrom = since > lastSeq ? lastSeq : oldest - 1;
+                from = s.resetFrom;
+            }
+            for (long seq = from + 1; seq <= lastSeq; seq++) {
+                Update u = ring.get((int) (seq & mask));
+                if (u != null && u.seq() == seq && u.orderId().equals(orderId)) {
+                    s.offer(u);
+                }
+            }
+            byOrder.computeIfAbsent(orderId, id -> ConcurrentHashMap.newKeySet()).add(s);
+        } finally {
+            lock.unlock();
+        }
+        orderSubscribers.incrementAndGet();
+        s.emitter.onCompletion(() -> {
+            if (s.removed.compareAndSet(false, true)) {
+                orderSubscribers.decrementAndGet();
+                byOrder.computeIfPresent(orderId, (id, subs) -> {
+                    subs.remove(s);
+                    return subs.isEmpty() ? null : subs;
+                });
+            }
+        });
+        s.schedule();
+        return s.emitter;
+    }
+
+    private void checkCapacity() {
+        if (feed.size() + orderSubscribers.get() >= maxSubscribers) {
+            throw new IllegalStateException("Too many open order streams (" + maxSubscribers + ")");
+        }
+    }
+
+    private void ping() {
+        feed.forEach(Subscriber::requestPing);
+        byOrder.values().forEach(subs -> subs.forEach(Subscriber::requestPing));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+        feed.forEach(s -> s.emitter.complete());
+        byOrder.values().forEach(subs -> subs.forEach(s -> s.emitter.complete()));
+    }
+
+    /**
+     * Sends are serialized per subscriber: at most one drain task is queued or running at a time,
+     * so a client that stops reading only ties up one sender thread until its write times out.
+     */
+    private abstract class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean closed;
+        volatile boolean pingDue;
+        long resetFrom = -1;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onTimeout(emitter::complete);
+            emitter.onError(t -> closed = true);
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RuntimeException rejected) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        void requestPing() {
+            pingDue = true;
+            schedule();
+        }
+
+        private void drain() {
+            try {
+                if (resetFrom >= 0) {
+                    emitter.send(SseEmitter.event().name("reset").id(String.valueOf(resetFrom))
+                            .data(Map.of("reason", "gap", "resumeFrom", resetFrom), MediaType.APPLICATION_JSON));
+                    resetFrom = -1;
+                }
+                if (pingDue) {
+                    pingDue = false;
+                    emitter.send(SseEmitter.event().comment("ping"));
+                }
+                for (int n = 0; n < DRAIN_BATCH && !closed; n++) {
+                    if (!sendNext()) {
+                        break;
+                    }
+                }
+            } catch (Overflow o) {
+                drop(o.resumeFrom);
+            } catch (Exception e) {
+                // client went away (IOException) or the emitter already completed (IllegalStateException)
+                droppedError.increment();
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            if (!closed && hasMore()) {
+                schedule();
+            }
+        }
+
+        void sendUpdate(Update u) throws Exception {
+            emitter.send(SseEmitter.event().name("status").id(String.valueOf(u.seq()))
+                    .data(u, MediaType.APPLICATION_JSON));
+        }
+
+        /** Tell the client it fell behind and where it was, then disconnect it. */
+        private void drop(long resumeFrom) {
+            droppedOverflow.increment();
+            log.debug("Dropping slow order stream subscriber at seq {}", resumeFrom);
+            try {
+                emitter.send(SseEmitter.event().name("dropped")
+                        .data(Map.of("reason", "overflow", "resumeFrom", resumeFrom), MediaType.APPLICATION_JSON));
+            } catch (Exception ignored) {
+                // disconnecting anyway
+            }
+            close();
+        }
+
+        void close() {
+            closed = true;
+            emitter.complete();
+        }
+
+        /** Send one pending update; false when there is none. */
+        abstract boolean sendNext() throws Exception;
+
+        abstract boolean hasMore();
+    }
+
+    private final class FeedSubscriber extends Subscriber {
+        long cursor;  // next seq to send; only touched by the (single) running drain
+
+        FeedSubscriber(SseEmitter emitter) {
+            super(emitter);
+        }
+
+        @Override
+        boolean sendNext() throws Exception {
+            if (cursor > lastSeq) {
+                return false;
+            }
+            Update u = ring.get((int) (cursor & mask));
+            if (u == null || u.seq() != cursor) {
+                throw new Overflow(cursor - 1);
+            }
+            sendUpdate(u);
+            cursor++;
+            return true;
+        }
+
+        @Override
+        boolean hasMore() {
+            return cursor <= lastSeq;
+        }
+    }
+
+    private final class OrderSubscriber extends Subscriber {
+        final String orderId;
+        final BlockingQueue<Update> queue = new ArrayBlockingQueue<>(subscriberBuffer);
+        final AtomicBoolean removed = new AtomicBoolean();
+        volatile boolean overflowed;
+        volatile Optional<OrderView> snapshot = Optional.empty();
+        long lastSent;
+
+        OrderSubscriber(String orderId, SseEmitter emitter) {
+            super(emitter);
+            this.orderId = orderId;
+        }
+
+        void offer(Update u) {
+            if (!queue.offer(u)) {
+                overflowed = true;
+            }
+            schedule();
+        }
+
+        @Override
+        boolean sendNext() throws Exception {
+            Optional<OrderView> snap = snapshot;
+            if (snap.isPresent()) {
+                snapshot = Optional.empty();
+                OrderView v = snap.get();
+                emitter.send(SseEmitter.event().name("snapshot").data(v, MediaType.APPLICATION_JSON));
+                if (isFinal(v.status())) {
+                    close();
+                }
+                return true;
+            }
+            Update u = queue.poll();
+            if (u == null) {
+                if (overflowed) {
+                    throw new Overflow(lastSent);
+                }
+                return false;
+            }
+            sendUpdate(u);
+            lastSent = u.seq();
+            if (isFinal(u.status())) {
+                close();
+            }
+            return true;
+        }
+
+        @Override
+        boolean hasMore() {
+            return !queue.isEmpty() || overflowed;
+        }
+    }
+
+    private static boolean isFinal(OrderStatus status) {
+        return status == OrderStatus.SHIPPED || status == OrderStatus.CANCELLED;
+    }
+
+    private static final class Overflow extends Exception {
+        final long resumeFrom;
+
+        Overflow(long resumeFrom) {
+            super(null, null, false, false);
+            this.resumeFrom = resumeFrom;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.Order;
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import com.example.orderdemo.rocketmq.OrderOutbox;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 发件箱模式创建订单（app.order.createMode=outbox）
+ * 一个本地事务内写入订单行和待发送的消息（订单创建事件 + 关闭引擎需要的延时关闭消息），
+ * 请求线程上没有任何 Broker 往返：不发半消息、不 commit、不同步发延时消息，也不需要传递事务句柄。
+ * 消息由 OutboxRelay 在提交后批量异步发出。
+ * 订单创建事件以普通消息发到 txnTopic，该 topic 需允许普通消息（或单独建一个 NORMAL 类型的 topic）。
+ * 分库时发件箱行和订单行写在同一个分片上，中继逐个分片领取。
+ */
+@Service
+public class OutboxOrderCreator {
+    private final OrderRepository orderRepo;
+    private final OrderEventPublisher publisher;
+    private final OrderOutbox outbox;
+    private final OrderCloseEngine closeEngine;
+    private final ApplicationEventPublisher events;
+    private final OrderIdGenerator idGenerator;
+    private final ShardRouter shards;
+
+    public OutboxOrderCreator(OrderRepository orderRepo,
+                              OrderEventPublisher publisher,
+                              OrderOutbox outbox,
+                              OrderCloseEngine closeEngine,
+                              ApplicationEventPublisher events,
+                              OrderIdGenerator idGenerator,
+                              ShardRouter shards) {
+        this.orderRepo = orderRepo;
+        this.publisher = publisher;
+        this.outbox = outbox;
+        this.closeEngine = closeEngine;
+        this.events = events;
+        this.idGenerator = idGenerator;
+        this.shards = shards;
+    }
+
+    @Transactional
+    public String create(BigDecimal amount) {
+        String orderId = idGenerator.nextId();
+        shards.pin(orderId);
+        Order o = new Order();
+        o.setOrderId(orderId);
+        o.setAmount(amount);
+        o.setStatus(OrderStatus.CREATED);
+        orderRepo.save(o);
+
+        List<Message> messages = new ArrayList<>(2);
+        messages.add(publisher.createdMessage(orderId, amount));
+        closeEngine.closeMessage(orderId).ifPresent(messages::add);
+        outbox.append(messages);
+
+        // also wakes the relay once the transaction commits
+        events.publishEvent(OrderStatusChangedEvent.created(orderId, amount));
+        return orderId;
+    }
+}
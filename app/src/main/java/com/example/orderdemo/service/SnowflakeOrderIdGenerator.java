@@ -0,0 +1,87 @@
+package com.example.orderdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 风格订单号：41 位毫秒时间戳（自 2024-01-01 起）+ 10 位节点号 + 12 位毫秒内序号
+ * 编码为 "order-" + 13 位定长 Crockford Base32（字母表按 ASCII 升序），字符串顺序即生成顺序，
+ * 新订单总是追加到 uk_order_id 索引的右端，不再随机分裂 B+ 树页。
+ *
+ * 无锁：上一个号的 (时间戳, 序号) 保存在一个 AtomicLong 中，每次 accumulateAndGet 取 max(当前毫秒, 上一个 + 1)。
+ * 同一毫秒超过 4096 个号或时钟回拨时，继续在上一个值上递增（借用后续毫秒），保证单调不重复，
+ * 时钟追上后自然恢复。进程重启且时钟回拨超过停机时长时可能重复，依赖 uk_order_id 兜底。
+ *
+ * 节点号 app.order.idGenerator.nodeId（0..1023）每个实例必须不同；未配置时由主机名和进程号推导，仅适合开发环境。
+ */
+@Component
+@ConditionalOnProperty(name = "app.order.idGenerator.type", havingValue = "snowflake", matchIfMissing = true)
+public class SnowflakeOrderIdGenerator implements OrderIdGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SnowflakeOrderIdGenerator.class);
+
+    static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z, 41 bits last until 2093
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final String PREFIX = "order-";
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13; // 13 x 5 bits >= 64 bits
+
+    private final long nodeBits;
+    /* (milliseconds since EPOCH << SEQUENCE_BITS) | sequence, of the last id handed out */
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeOrderIdGenerator(@Value("${app.order.idGenerator.nodeId:-1}") long nodeId) {
+        if (nodeId < 0) {
+            nodeId = derivedNodeId();
+            log.warn("app.order.idGenerator.nodeId is not set, using derived node id {}; " +
+                    "configure a distinct id per instance in production", nodeId);
+        } else if (nodeId > MAX_NODE) {
+            throw new IllegalArgumentException("app.order.idGenerator.nodeId must be 0.." + MAX_NODE + ", got " + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public String nextId() {
+        return encode(nextLong());
+    }
+
+    /** Next id as a positive 63-bit number, strictly increasing within this instance. */
+    public long nextLong() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long next = last.accumulateAndGet(now, (prev, ts) -> Math.max(ts, prev + 1));
+        long millis = next >>> SEQUENCE_BITS;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    static String encode(long id) {
+        char[] out = new char[PREFIX.length() + ENCODED_LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), out, 0);
+        for (int i = out.length - 1; i >= PREFIX.length(); i--) {
+            out[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(out);
+    }
+
+    private static long derivedNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        String jvm = ManagementFactory.getRuntimeMXBean().getName(); // pid@host
+        return Math.floorMod((host + "/" + jvm).hashCode(), MAX_NODE + 1);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.orderdemo.service;
+
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分桶扫描式自动关闭引擎（app.order.closeEngine=sweep）
+ * 创建订单时不再发送延时消息；每个扫描周期（一个时间桶）按 idx_status_created_at 索引
+ * 取出已超时的 CREATED 订单，分块执行条件更新 status='CREATED' → 'CANCELLED'。
+ * 多节点同时运行时：SELECT ... FOR UPDATE SKIP LOCKED 让各节点领取不同的行，
+ * UPDATE 带迁移表中 CANCELLED 的来源状态条件（即 CREATED），不会覆盖已支付订单。超时判断使用数据库时钟，不受节点时钟偏差影响。
+ * 关闭时间精度 = closeAfter + 一个扫描周期。分库时每个周期依次扫描每个分片，每个分片最多 maxChunksPerSweep 块。
+ */
+@Component
+@ConditionalOnProperty(name = "app.order.closeEngine", havingValue = "sweep")
+public class SweepCloseEngine implements OrderCloseEngine {
+    private static final Logger log = LoggerFactory.getLogger(SweepCloseEngine.class);
+
+    private static final String CLAIM_SQL =
+            "SELECT id, order_id FROM orders WHERE status = 'CREATED' " +
+            // TIMESTAMPADD rather than NOW() - INTERVAL: the same statement runs on MySQL and on the H2 shards
+            "AND created_at < TIMESTAMPADD(SECOND, -:closeAfterSeconds, CURRENT_TIMESTAMP) " +
+            "ORDER BY created_at LIMIT :chunk FOR UPDATE SKIP LOCKED";
+    private static final String CLOSE_SQL =
+            "UPDATE orders SET status = 'CANCELLED' WHERE status IN (:from) AND id IN (:ids)";
+    private static final List<String> CLOSABLE = OrderStatus.CANCELLED.allowedFrom().stream().map(Enum::name).toList();
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final TransactionTemplate txTemplate;
+    private final ApplicationEventPublisher events;
+    private final long closeAfterSeconds;
+    private final int chunkSize;
+    private final int maxChunksPerSweep;
+
+    public SweepCloseEngine(NamedParameterJdbcTemplate jdbc,
+                            ShardRouter shards,
+                            TransactionTemplate txTemplate,
+                            ApplicationEventPublisher events,
+                            @Value("${app.order.closeAfter:30m}") Duration closeAfter,
+                            @Value("${app.order.closeSweep.chunkSize:500}") int chunkSize,
+                            @Value("${app.order.closeSweep.maxChunksPerSweep:20}") int maxChunksPerSweep) {
+        this.jdbc = jdbc;
+        this.shards = shards;
+        this.txTemplate = txTemplate;
+        this.events = events;
+        this.closeAfterSeconds = closeAfter.toSeconds();
+        this.chunkSize = chunkSize;
+        this.maxChunksPerSweep = maxChunksPerSweep;
+    }
+
+    @Override
+    public void scheduleClose(String orderId) {
+        // nothing to schedule, the sweep finds the order by created_at
+    }
+
+    @Override
+    public CompletableFuture<?> scheduleCloseAsync(String orderId) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void scheduleCloseAll(List<String> orderIds) {
+        // likewise
+    }
+
+    @Scheduled(fixedDelayString = "${app.order.closeSweep.intervalMillis:5000}")
+    public void sweep() {
+        int total = 0;
+        for (int shard = 0; shard < shards.shards(); shard++) {
+            for (int i = 0; i < maxChunksPerSweep; i++) {
+                int closed;
+                try {
+                    closed = closeChunk(shard);
+                } catch (Exception e) {
+                    log.warn("Order close sweep chunk failed on shard {}, will retry next tick", shard, e);
+                    break;
+                }
+                total += closed;
+                if (closed < chunkSize) {
+                    break;
+                }
+            }
+        }
+        if (total > 0) {
+            log.info("Order close sweep cancelled {} unpaid orders", total);
+        }
+    }
+
+    /** One short transaction on the shard: claim a chunk of expired rows, then close them with one set-based update. */
+    int closeChunk(int shard) {
+        Integer closed = shards.call(shard, () -> txTemplate.execute(status -> {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("closeAfterSeconds", closeAfterSeconds)
+                    .addValue("chunk", chunkSize);
+            List<Long> ids = new ArrayList<>(chunkSize);
+            List<String> orderIds = new ArrayList<>(chunkSize);
+            jdbc.query(CLAIM_SQL, params, rs -> {
+                ids.add(rs.getLong(1));
+                orderIds.add(rs.getString(2));
+            });
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            // claimed rows stay locked until commit, so all of them are still CREATED here
+            jdbc.update(CLOSE_SQL, new MapSqlParameterSource("ids", ids).addValue("from", CLOSABLE));
+            orderIds.forEach(id -> events.publishEvent(OrderStatusChangedEvent.of(id, OrderStatus.CANCELLED)));
+            return ids.size();
+        }));
+        return closed == null ? 0 : closed;
+    }
+}
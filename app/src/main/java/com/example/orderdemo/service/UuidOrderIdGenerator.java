@@ -0,0 +1,17 @@
+package com.example.orderdemo.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/** Previous scheme (app.order.idGenerator.type=uuid): random, only 32 bits, kept for comparison and rollback. */
+@Component
+@ConditionalOnProperty(name = "app.order.idGenerator.type", havingValue = "uuid")
+public class UuidOrderIdGenerator implements OrderIdGenerator {
+
+    @Override
+    public String nextId() {
+        return "order-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.orderdemo.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * 分片数据搬迁（由 /admin/shards 触发）
+ * 增加分片后，已有的行还在按旧分片数算出的库里。搬迁任务逐个分片按 id 分块扫描 orders 和 message_log，
+ * 找出按当前分片数不属于本库的行：先在目标库一个事务内 INSERT IGNORE 写入，再从源库删除。
+ * 中途失败或停止后重新执行即可：已经写到目标库、源库还没删的行会被 INSERT IGNORE 跳过后再删除。
+ * dryRun 只统计每对 源→目标 需要搬迁的行数，不写任何库。
+ * 搬迁期间没搬完的订单在目标库上查不到，状态更新会落空：在停写窗口内执行（暂停下单入口与 FIFO/延时消费者），
+ * 事务回查会扫描全部分片，不受影响。order_outbox 中未发送的行由中继在所在分片上照常发送，不需要搬迁；
+ * dlq_message 只在 HOME 分片上。分片数翻倍时每个旧分片正好一半的行搬到一个新分片上，搬迁量最小。
+ */
+@Component
+public class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private final ShardRouter shards;
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final TransactionTemplate txTemplate;
+    private final int defaultChunk;
+    private final List<Table> tables;
+    private volatile Job current;
+
+    /** Progress of the current (or last) rebalance; moves are keyed "table from->to". */
+    public record Status(String state, boolean dryRun, int shards, long scanned, long misplaced, long moved,
+                         Map<String, Long> moves, Instant startedAt, Instant finishedAt, String lastError) {}
+
+    /** A sharded table: key column first after id, then the rest of the copied columns. */
+    private record Table(String name, String select, String insert, String delete, int columns,
+                         ToIntFunction<String> owner, Counter moved) {
+        Table(String name, String keyColumn, String otherColumns, int columns, ToIntFunction<String> owner,
+              MeterRegistry registry) {
+            this(name,
+                    "SELECT id, " + keyColumn + ", " + otherColumns + " FROM " + name + " WHERE id > ? ORDER BY id LIMIT ?",
+                    "INSERT IGNORE INTO " + name + " (" + keyColumn + ", " + otherColumns + ") VALUES (" +
+                            String.join(", ", Collections.nCopies(columns, "?")) + ")",
+                    "DELETE FROM " + name + " WHERE id IN (:ids)",
+                    columns, owner,
+                    Counter.builder("shard.rebalance.moved")
+                            .description("Rows copied to the shard that owns them and deleted from the old one")
+                            .tag("table", name)
+                            .register(registry));
+        }
+    }
+
+    private record Row(long id, String key, Object[] values) {}
+
+    public ShardRebalancer(ShardRouter shards,
+                           JdbcTemplate jdbc,
+                           NamedParameterJdbcTemplate named,
+                           TransactionTemplate txTemplate,
+                           MeterRegistry registry,
+                           @Value("${app.sharding.rebalance.chunk:1000}") int defaultChunk) {
+        this.shards = shards;
+        this.jdbc = jdbc;
+        this.named = named;
+        this.txTemplate = txTemplate;
+        this.defaultChunk = defaultChunk;
+        this.tables = List.of(
+                new Table("orders", "order_id", "amount, status, created_at, updated_at", 5,
+                        shards::shardOf, registry),
+                new Table("message_log", "dedup_key", "message_id, status, bucket, processed_at", 5,
+                        shards::shardOfDedupKey, registry));
+    }
+
+    /** @param chunk rows per keyset query and per copy transaction, &lt;= 0 for the configured default */
+    public synchronized Status start(boolean dryRun, int chunk) {
+        Job job = current;
+        if (job != null && job.isRunning()) {
+            throw new IllegalStateException("A shard rebalance is already running");
+        }
+        job = new Job(dryRun, chunk <= 0 ? defaultChunk : chunk);
+        current = job;
+        job.thread.start();
+        log.info("Shard rebalance started: shards={}, dryRun={}, chunk={}", shards.shards(), dryRun, job.chunk);
+        return job.status();
+    }
+
+    public Status stop() {
+        Job job = current;
+        if (job != null) {
+            job.running = false;
+        }
+        return status();
+    }
+
+    public Status status() {
+        Job job = current;
+        return job == null
+                ? new Status("IDLE", false, shards.shards(), 0, 0, 0, Map.of(), null, null, null)
+                : job.status();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Job job = current;
+        if (job != null) {
+            job.running = false;
+            job.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private final class Job {
+        final boolean dryRun;
+        final int chunk;
+        final Thread thread;
+        final Instant startedAt = Instant.now();
+        final Map<String, Long> moves = new LinkedHashMap<>();
+        volatile boolean running = true;
+        volatile String state = "RUNNING";
+        volatile long scanned;
+        volatile long misplaced;
+        volatile long moved;
+        volatile Instant finishedAt;
+        volatile String lastError;
+
+        Job(boolean dryRun, int chunk) {
+            this.dryRun = dryRun;
+            this.chunk = chunk;
+            this.thread = Thread.ofPlatform().name("shard-rebalance").daemon(true).unstarted(this::run);
+        }
+
+        boolean isRunning() {
+            return thread.isAlive();
+        }
+
+        void run() {
+            try {
+                for (Table table : tables) {
+                    for (int source = 0; source < shards.shards() && running; source++) {
+                        rebalance(table, source);
+                    }
+                }
+                state = running ? "DONE" : "STOPPED";
+            } catch (RuntimeException e) {
+                log.warn("Shard rebalance failed, run it again to continue", e);
+                lastError = String.valueOf(e);
+                state = "FAILED";
+            }
+            finishedAt = Instant.now();
+            log.info("Shard rebalance {}: scanned={}, misplaced={}, moved={}, moves={}",
+                    state, scanned, misplaced, moved, status().moves());
+        }
+
+        private void rebalance(Table table, int source) {
+            RowMapper<Row> mapper = (rs, i) -> {
+                Object[] values = new Object[table.columns()];
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = rs.getObject(c + 2);
+                }
+                return new Row(rs.getLong(1), rs.getString(2), values);
+            };
+            long afterId = 0;
+            while (running) {
+                long after = afterId;
+                List<Row> rows = shards.call(source, () -> jdbc.query(table.select(), mapper, after, chunk));
+                if (rows.isEmpty()) {
+                    return;
+                }
+                scanned += rows.size();
+                Map<Integer, List<Row>> byTarget = new LinkedHashMap<>();
+                for (Row row : rows) {
+                    int owner = table.owner().applyAsInt(row.key());
+                    if (owner != source) {
+                        byTarget.computeIfAbsent(owner, t -> new ArrayList<>()).add(row);
+                    }
+                }
+                byTarget.forEach((target, misplacedRows) -> move(table, source, target, misplacedRows));
+                if (rows.size() < chunk) {
+                    return;
+                }
+                afterId = rows.get(rows.size() - 1).id();
+            }
+        }
+
+        /* copy first, then delete: a crash in between leaves a copy that the next run skips and deletes */
+        private void move(Table table, int source, int target, List<Row> rows) {
+            String key = table.name() + " " + source + "->" + target;
+            synchronized (moves) {
+                moves.merge(key, (long) rows.size(), Long::sum);
+            }
+            misplaced += rows.size();
+            if (dryRun) {
+                return;
+            }
+            List<Object[]> args = new ArrayList<>(rows.size());
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                args.add(row.values());
+                ids.add(row.id());
+            }
+            shards.run(target, () -> txTemplate.executeWithoutResult(s -> jdbc.batchUpdate(table.insert(), args)));
+            shards.run(source, () -> named.update(table.delete(), new MapSqlParameterSource("ids", ids)));
+            moved += rows.size();
+            table.moved().increment(rows.size());
+        }
+
+        Status status() {
+            Map<String, Long> snapshot;
+            synchronized (moves) {
+                snapshot = new LinkedHashMap<>(moves);
+            }
+            return new Status(isRunning() ? "RUNNING" : state, dryRun, shards.shards(), scanned, misplaced, moved,
+                    snapshot, startedAt, finishedAt, lastError);
+        }
+    }
+}
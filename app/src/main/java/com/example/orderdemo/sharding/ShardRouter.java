@@ -0,0 +1,208 @@
+package com.example.orderdemo.sharding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * 订单分片路由（app.sharding.*）
+ * 分片号 = CRC32(orderId 的 UTF-8 字节) % 分片数，与 MySQL 的 CRC32(order_id) % N 一致，可以直接在库里核对。
+ * message_log 按去重键路由：order:{orderId}:{step} 取其中的 orderId，与订单行在同一分片、同一个本地事务里提交。
+ * 事务与分片绑定：事务内第一次访问订单前调用 pin，之后这个事务只能访问这一个分片，跨分片时抛出 IllegalStateException；
+ * 没有 pin 过的事务使用 HOME 分片（dlq_message 等不分片的表也在 HOME 上）。
+ * 事务外的读写用 call/run 指定分片；scatter 在所有分片上并行执行同一个查询，gather 按订单号所在分片拆开并行查询。
+ * 未开启分片时只有一个分片，以上方法都直接执行，不切换线程、不改变事务行为。
+ */
+public class ShardRouter {
+    /** Shard that holds the unsharded tables and serves transactions that never pinned a shard. */
+    public static final int HOME = 0;
+
+    private final int shards;
+    private final ThreadLocal<Integer> current = new ThreadLocal<>();
+    /* null with a single shard: nothing to run in parallel */
+    private final ExecutorService queries;
+
+    public ShardRouter(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is needed, got " + shards);
+        }
+        this.shards = shards;
+        this.queries = shards == 1 ? null : Executors.newFixedThreadPool(shards,
+                Thread.ofPlatform().name("shard-query-", 0).daemon(true).factory());
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public int shardOf(String orderId) {
+        if (shards == 1) {
+            return HOME;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(orderId.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards);
+    }
+
+    /** Dedup keys of order events (order:{orderId}:{step}) live with their order; other keys are hashed as a whole. */
+    public int shardOfDedupKey(String dedupKey) {
+        int last = dedupKey.lastIndexOf(':');
+        if (dedupKey.startsWith("order:") && last > "order:".length()) {
+            return shardOf(dedupKey.substring("order:".length(), last));
+        }
+        return shardOf(dedupKey);
+    }
+
+    /** Bind the current transaction to the order's shard, see {@link #pinShard(int)}. */
+    public void pin(String orderId) {
+        pinShard(shardOf(orderId));
+    }
+
+    /**
+     * Bind the current transaction to {@code shard} until it completes. Must come before the transaction's
+     * first statement (the connection is only taken then); pinning the same shard again is a no-op.
+     *
+     * @throws IllegalStateException if the transaction is already on another shard, or there is no transaction
+     */
+    public void pinShard(int shard) {
+        if (shards == 1) {
+            return;
+        }
+        Integer pinned = current.get();
+        if (pinned != null) {
+            if (pinned != shard) {
+                throw new IllegalStateException("Transaction is on shard " + pinned + ", cannot use shard " + shard);
+            }
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("No transaction to pin to shard " + shard + ", use call/run outside one");
+        }
+        current.set(shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                current.remove();
+            }
+        });
+    }
+
+    /** Run {@code work} against {@code shard}; inside a transaction this pins it. */
+    public <T> T call(int shard, Supplier<T> work) {
+        if (shards == 1) {
+            return work.get();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            pinShard(shard);
+            return work.get();
+        }
+        Integer previous = current.get();
+        current.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    public void run(int shard, Runnable work) {
+        call(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Run the query on every shard in parallel; result i comes from shard i. */
+    public <T> List<T> scatter(Supplier<T> query) {
+        if (shards == 1) {
+            return List.of(query.get());
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> call(shard, query), queries));
+        }
+        List<T> results = new ArrayList<>(shards);
+        futures.forEach(f -> results.add(join(f)));
+        return results;
+    }
+
+    /** Split the order ids by shard, query each shard for its own ids in parallel and concatenate the results. */
+    public <R> List<R> gather(Collection<String> orderIds, Function<List<String>, List<R>> query) {
+        Map<Integer, List<String>> byShard = new LinkedHashMap<>();
+        for (String id : orderIds) {
+            byShard.computeIfAbsent(shardOf(id), s -> new ArrayList<>()).add(id);
+        }
+        if (byShard.isEmpty()) {
+            return List.of();
+        }
+        if (byShard.size() == 1) {
+            Map.Entry<Integer, List<String>> only = byShard.entrySet().iterator().next();
+            return call(only.getKey(), () -> query.apply(only.getValue()));
+        }
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, ids) -> futures.add(CompletableFuture.supplyAsync(() -> call(shard, () -> query.apply(ids)), queries)));
+        List<R> results = new ArrayList<>();
+        futures.forEach(f -> results.addAll(join(f)));
+        return results;
+    }
+
+    /** Split items by the shard of their order, keeping their relative order within each group. */
+    public <T> List<List<T>> groupByShard(List<T> items, Function<T, String> orderId) {
+        if (shards == 1) {
+            return List.of(items);
+        }
+        Map<Integer, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardOf(orderId.apply(item)), s -> new ArrayList<>()).add(item);
+        }
+        return new ArrayList<>(byShard.values());
+    }
+
+    /* Lookup key of ShardRoutingDataSource, asked when a connection is actually taken. */
+    Integer lookupKey() {
+        Integer shard = current.get();
+        if (shard == null && TransactionSynchronizationManager.isActualTransactionActive()) {
+            // the transaction now holds a connection to the home shard; keep it from touching another one
+            pinShard(HOME);
+            shard = HOME;
+        }
+        return shard;
+    }
+
+    private static <T> T join(CompletableFuture<T> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (queries != null) {
+            queries.shutdownNow();
+        }
+    }
+}
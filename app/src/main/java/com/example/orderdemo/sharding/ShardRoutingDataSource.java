@@ -0,0 +1,41 @@
+package com.example.orderdemo.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One Hikari pool per shard, picked by {@link ShardRouter#lookupKey()} when a connection is taken.
+ * Sits behind a LazyConnectionDataSourceProxy, so a transaction takes its connection at the first statement,
+ * after the service has pinned the shard, not when the transaction begins.
+ */
+final class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private final ShardRouter router;
+    private final List<HikariDataSource> pools;
+
+    ShardRoutingDataSource(ShardRouter router, List<HikariDataSource> pools) {
+        this.router = router;
+        this.pools = pools;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < pools.size(); i++) {
+            targets.put(i, pools.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(pools.get(ShardRouter.HOME));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return router.lookupKey();
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
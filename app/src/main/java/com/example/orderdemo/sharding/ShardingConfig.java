@@ -0,0 +1,90 @@
+package com.example.orderdemo.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分库配置（app.sharding.enabled=true）
+ * app.sharding.shards 中每一项是一个库（url / username / password，账号默认取 spring.datasource.*），
+ * 每个库一个 Hikari 连接池，池参数共用 spring.datasource.hikari.*，指标按 pool=shard-{i} 区分。
+ * 主 DataSource 换成 LazyConnectionDataSourceProxy(ShardRoutingDataSource)：JPA、JdbcTemplate、事务管理器照常由 Boot 自动配置，
+ * 连接在事务的第一条语句时才按 ShardRouter 选择分片。shards 的顺序就是分片号，不能调换；增加分片后用 ShardRebalancer 搬迁数据。
+ * 未开启时只注册单分片的 ShardRouter，数据源仍是 spring.datasource。
+ */
+@Configuration
+public class ShardingConfig {
+    private static final Logger log = LoggerFactory.getLogger(ShardingConfig.class);
+
+    /** One entry of app.sharding.shards. */
+    record ShardProperties(String url, String username, String password) {}
+
+    @Bean
+    public ShardRouter shardRouter(Environment env, @Value("${app.sharding.enabled:false}") boolean enabled) {
+        return new ShardRouter(enabled ? shards(env).size() : 1);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    ShardRoutingDataSource shardRoutingDataSource(ShardRouter router, Environment env, MeterRegistry registry,
+                                                  ResourceLoader resources,
+                                                  @Value("${app.sharding.initSchema:}") String initSchema) {
+        Binder binder = Binder.get(env);
+        List<ShardProperties> shards = shards(env);
+        List<HikariDataSource> pools = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            ShardProperties p = shards.get(i);
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(p.url())
+                    .username(p.username() != null ? p.username() : env.getProperty("spring.datasource.username"))
+                    .password(p.password() != null ? p.password() : env.getProperty("spring.datasource.password"))
+                    .build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+            pool.setPoolName("shard-" + i);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            if (StringUtils.hasText(initSchema)) {
+                new ResourceDatabasePopulator(resources.getResource(initSchema)).execute(pool);
+            }
+            pools.add(pool);
+        }
+        log.info("Order storage sharded across {} datasources", pools.size());
+        return new ShardRoutingDataSource(router, pools);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    public DataSource dataSource(ShardRoutingDataSource shards) {
+        return new LazyConnectionDataSourceProxy(shards);
+    }
+
+    private static List<ShardProperties> shards(Environment env) {
+        List<ShardProperties> shards = Binder.get(env)
+                .bind("app.sharding.shards", Bindable.listOf(ShardProperties.class))
+                .orElse(List.of());
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("app.sharding.enabled=true needs at least one entry in app.sharding.shards");
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,60 @@
+-- Schema for the embedded H2 shards of the shards-local profile (MODE=MySQL), run on every shard at startup.
+-- Same tables and keys as sql/schema.sql without the MySQL-only parts: no partitioning of message_log
+-- (retention is off in that profile) and no table options.
+CREATE TABLE IF NOT EXISTS orders (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    order_id VARCHAR(64) NOT NULL UNIQUE,
+    amount DECIMAL(12,2) NOT NULL,
+    status VARCHAR(32) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_status_created_at ON orders (status, created_at);
+
+CREATE TABLE IF NOT EXISTS order_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    topic VARCHAR(128) NOT NULL,
+    tag VARCHAR(64) NULL,
+    msg_keys VARCHAR(1024) NULL,
+    message_group VARCHAR(128) NULL,
+    deliver_at BIGINT NULL,
+    properties VARCHAR(1024) NULL,
+    body VARBINARY(16384) NOT NULL,
+    sent TINYINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3),
+    sent_at TIMESTAMP(3) NULL,
+    claimed_at TIMESTAMP(3) NULL
+);
+CREATE INDEX IF NOT EXISTS idx_sent_id ON order_outbox (sent, id);
+
+CREATE TABLE IF NOT EXISTS dlq_message (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    consumer_group VARCHAR(128) NOT NULL,
+    message_id VARCHAR(128) NOT NULL,
+    topic VARCHAR(128) NOT NULL,
+    tag VARCHAR(64) NULL,
+    msg_keys VARCHAR(1024) NULL,
+    message_group VARCHAR(128) NULL,
+    properties VARCHAR(1024) NULL,
+    body VARBINARY(16384) NOT NULL,
+    status VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    dead_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3),
+    replayed_at TIMESTAMP(3) NULL,
+    claimed_at TIMESTAMP(3) NULL,
+    CONSTRAINT uk_group_message UNIQUE (consumer_group, message_id)
+);
+CREATE INDEX IF NOT EXISTS idx_status_group_id ON dlq_message (status, consumer_group, id);
+CREATE INDEX IF NOT EXISTS idx_status_replayed_at ON dlq_message (status, replayed_at);
+
+CREATE TABLE IF NOT EXISTS message_log (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    dedup_key VARCHAR(128) NOT NULL,
+    message_id VARCHAR(128) NULL,
+    status VARCHAR(16) NOT NULL DEFAULT 'SUCCESS',
+    bucket INT NOT NULL,
+    processed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, bucket),
+    CONSTRAINT uk_dedup_key_bucket UNIQUE (dedup_key, bucket)
+);
+CREATE INDEX IF NOT EXISTS idx_bucket ON message_log (bucket);
@@ -0,0 +1,125 @@
+package com.example.orderdemo.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveLimitTest {
+    private static final long FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AdaptiveLimit limit = new AdaptiveLimit(10, 2, 20, 0.5, 2, 2.0, FLOOR_NANOS);
+
+    @Test
+    void admitsUpToTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        assertThat(limit.tryAcquire()).isFalse();
+        limit.release(ms(1), false);
+        assertThat(limit.inFlight()).isEqualTo(9);
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void sharedSignalCutsTheLimit() {
+        assertThat(limit.adjust("producer")).isEqualTo("producer");
+        assertThat(limit.limit()).isEqualTo(5);
+        assertThat(limit.adjust("pool")).isEqualTo("pool");
+        assertThat(limit.adjust("pool")).isEqualTo("pool");
+        // never below minLimit
+        assertThat(limit.limit()).isEqualTo(2);
+    }
+
+    @Test
+    void shedOrFailedRequestsCutTheLimit() {
+        limit.tryAcquire();
+        limit.release(ms(1), true);
+        assertThat(limit.adjust(null)).isEqualTo("errors");
+        assertThat(limit.limit()).isEqualTo(5);
+        // counters reset each step
+        assertThat(limit.adjust(null)).isNull();
+    }
+
+    @Test
+    void latencyAboveBaselineCutsTheLimit() {
+        interval(2, ms(10));
+        assertThat(limit.adjust(null)).isNull();
+        interval(2, ms(19));
+        assertThat(limit.adjust(null)).isNull();
+        interval(2, ms(25));
+        assertThat(limit.adjust(null)).isEqualTo("latency");
+        assertThat(limit.limit()).isEqualTo(5);
+    }
+
+    @Test
+    void latencyBelowTheFloorIsNoSignal() {
+        AdaptiveLimit floored = new AdaptiveLimit(10, 2, 20, 0.5, 2, 2.0, ms(50));
+        floored.tryAcquire();
+        floored.release(ms(1), false);
+        floored.adjust(null);
+        floored.tryAcquire();
+        floored.release(ms(30), false);
+        assertThat(floored.adjust(null)).isNull();
+        assertThat(floored.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void growsOnlyWhileTheLimitIsInUse() {
+        interval(5, ms(1));
+        assertThat(limit.adjust(null)).isNull();
+        assertThat(limit.limit()).isEqualTo(10);
+
+        assertThat(limit.adjust(null)).isNull();
+        assertThat(limit.limit()).isEqualTo(10);
+
+        // 8 of 10 in flight at once is close enough to the limit
+        interval(8, ms(1));
+        limit.adjust(null);
+        assertThat(limit.limit()).isEqualTo(12);
+        for (int i = 0; i < 10; i++) {
+            interval(limit.limit(), ms(1));
+            limit.adjust(null);
+        }
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void baselineFollowsLatencyDownAtOnceAndUpSlowly() {
+        interval(2, ms(10));
+        limit.adjust(null);
+        // drifting up by 1% per step: 15ms stays under 2x, and 21ms is still a signal right after
+        interval(2, ms(15));
+        assertThat(limit.adjust(null)).isNull();
+        interval(2, ms(21));
+        assertThat(limit.adjust(null)).isEqualTo("latency");
+
+        for (int i = 0; i < 300; i++) {
+            interval(2, ms(15));
+            assertThat(limit.adjust(null)).isNull();
+        }
+        // the baseline has moved close to 15ms
+        interval(2, ms(25));
+        assertThat(limit.adjust(null)).isNull();
+
+        interval(2, ms(5));
+        assertThat(limit.adjust(null)).isNull();
+        interval(2, ms(11));
+        assertThat(limit.adjust(null)).isEqualTo("latency");
+    }
+
+    /* n requests in flight together, each taking the given latency */
+    private void interval(int n, long latencyNanos) {
+        for (int i = 0; i < n; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < n; i++) {
+            limit.release(latencyNanos, false);
+        }
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
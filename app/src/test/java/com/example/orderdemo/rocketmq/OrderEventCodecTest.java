@@ -0,0 +1,133 @@
+package com.example.orderdemo.rocketmq;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class OrderEventCodecTest {
+    private static final String ORDER_ID = "1790000000000000001";
+
+    @ParameterizedTest
+    @EnumSource(OrderEventType.class)
+    void singleEventRoundTripsWithAndWithoutAmount(OrderEventType type) {
+        OrderEvent withAmount = new OrderEvent(ORDER_ID, type, 12_345L, 1_700_000_000_000L);
+        OrderEvent without = new OrderEvent(ORDER_ID, type, OrderEvent.NO_AMOUNT, 1_700_000_000_000L);
+
+        byte[] body = OrderEventCodec.encode(withAmount);
+        assertThat(body).hasSize(OrderEventCodec.HEADER_SIZE + ORDER_ID.length());
+        assertThat(body[0]).isEqualTo(OrderEventCodec.MAGIC);
+        assertThat(body[1]).isEqualTo(OrderEventCodec.VERSION);
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(body))).isEqualTo(withAmount);
+        assertThat(OrderEventCodec.decodeAll(ByteBuffer.wrap(body))).containsExactly(withAmount);
+
+        OrderEvent decoded = OrderEventCodec.decode(ByteBuffer.wrap(OrderEventCodec.encode(without)));
+        assertThat(decoded).isEqualTo(without);
+        assertThat(decoded.hasAmount()).isFalse();
+        assertThat(decoded.amount()).isNull();
+    }
+
+    @Test
+    void amountKeepsTwoDecimals() {
+        OrderEvent event = OrderEvent.of(ORDER_ID, OrderEventType.PAID, new BigDecimal("99.9"));
+        OrderEvent decoded = OrderEventCodec.decode(ByteBuffer.wrap(OrderEventCodec.encode(event)));
+        assertThat(decoded.amountCents()).isEqualTo(9990L);
+        assertThat(decoded.amount()).isEqualByComparingTo("99.90");
+    }
+
+    @Test
+    void batchRoundTripsInOrderWithSharedTimestamp() {
+        List<OrderEvent> events = List.of(
+                new OrderEvent("1001", OrderEventType.CREATED, 100L, 1_700_000_000_000L),
+                new OrderEvent("1002", OrderEventType.CREATED, OrderEvent.NO_AMOUNT, 1_700_000_000_005L),
+                new OrderEvent(ORDER_ID, OrderEventType.CREATED, 0L, 1_700_000_000_009L));
+        byte[] body = OrderEventCodec.encodeBatch(events);
+        assertThat(body[1]).isEqualTo(OrderEventCodec.BATCH_VERSION);
+
+        List<OrderEvent> decoded = OrderEventCodec.decodeAll(ByteBuffer.wrap(body));
+        assertThat(decoded).extracting(OrderEvent::orderId).containsExactly("1001", "1002", ORDER_ID);
+        assertThat(decoded).extracting(OrderEvent::amountCents).containsExactly(100L, OrderEvent.NO_AMOUNT, 0L);
+        assertThat(decoded).extracting(OrderEvent::timestamp).containsOnly(1_700_000_000_000L);
+        assertThat(decoded).extracting(OrderEvent::type).containsOnly(OrderEventType.CREATED);
+        // a single-event decoder treats a batch as malformed
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(body))).isNull();
+    }
+
+    @Test
+    void decodesReadOnlyBufferAtNonZeroPosition() {
+        OrderEvent event = new OrderEvent(ORDER_ID, OrderEventType.SHIPPED, 500L, 1_700_000_000_000L);
+        byte[] body = OrderEventCodec.encode(event);
+        byte[] framed = new byte[7 + body.length + 3];
+        Arrays.fill(framed, (byte) 0x55);
+        System.arraycopy(body, 0, framed, 7, body.length);
+
+        ByteBuffer heap = ByteBuffer.wrap(framed, 7, body.length).slice().asReadOnlyBuffer();
+        assertThat(heap.hasArray()).isFalse();
+        assertThat(OrderEventCodec.decode(heap)).isEqualTo(event);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(framed.length).put(framed);
+        direct.position(7).limit(7 + body.length);
+        ByteBuffer readOnly = direct.asReadOnlyBuffer();
+        assertThat(OrderEventCodec.decode(readOnly)).isEqualTo(event);
+        assertThat(OrderEventCodec.decodeAll(readOnly)).containsExactly(event);
+        assertThat(readOnly.position()).isEqualTo(7);
+
+        byte[] batchBody = OrderEventCodec.encodeBatch(List.of(event, event));
+        ByteBuffer batch = ByteBuffer.allocate(4 + batchBody.length);
+        batch.position(4);
+        batch.put(batchBody).flip().position(4);
+        assertThat(OrderEventCodec.decodeAll(batch.asReadOnlyBuffer())).containsExactly(event, event);
+    }
+
+    @Test
+    void decodesLegacyTextBodies() {
+        assertThat(OrderEventCodec.decode(text("1001:PAID")))
+                .isEqualTo(new OrderEvent("1001", OrderEventType.PAID, OrderEvent.NO_AMOUNT, 0L));
+        assertThat(OrderEventCodec.decode(text("1001：shipped")).type()).isEqualTo(OrderEventType.SHIPPED);
+        assertThat(OrderEventCodec.decode(text("1001:close")).type()).isEqualTo(OrderEventType.CLOSE);
+        OrderEvent encoded = OrderEvent.of("1002", OrderEventType.CREATED);
+        assertThat(OrderEventCodec.decodeAll(ByteBuffer.wrap(OrderEventCodec.encodeText(encoded))))
+                .extracting(OrderEvent::orderId, OrderEvent::type)
+                .containsExactly(tuple("1002", OrderEventType.CREATED));
+
+        assertThat(OrderEventCodec.decode(text("1001:REFUNDED"))).isNull();
+        assertThat(OrderEventCodec.decode(text(":PAID"))).isNull();
+        assertThat(OrderEventCodec.decode(text("1001PAID"))).isNull();
+        assertThat(OrderEventCodec.decode(text(""))).isNull();
+    }
+
+    @Test
+    void truncatedOrUnknownBodiesAreMalformed() {
+        byte[] body = OrderEventCodec.encode(new OrderEvent(ORDER_ID, OrderEventType.PAID, 1L, 1L));
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(body, 0, body.length - 1))).isNull();
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(body, 0, OrderEventCodec.HEADER_SIZE - 1))).isNull();
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(body, 0, 1))).isNull();
+
+        byte[] unknownVersion = body.clone();
+        unknownVersion[1] = 9;
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(unknownVersion))).isNull();
+        assertThat(OrderEventCodec.decodeAll(ByteBuffer.wrap(unknownVersion))).isNull();
+
+        byte[] unknownType = body.clone();
+        unknownType[2] = 42;
+        assertThat(OrderEventCodec.decode(ByteBuffer.wrap(unknownType))).isNull();
+
+        byte[] batch = OrderEventCodec.encodeBatch(List.of(
+                OrderEvent.of("1001", OrderEventType.CLOSE), OrderEvent.of("1002", OrderEventType.CLOSE)));
+        assertThat(OrderEventCodec.decodeAll(ByteBuffer.wrap(batch, 0, batch.length - 1))).isNull();
+        assertThat(OrderEventCodec.decodeAll(ByteBuffer.wrap(batch, 0, OrderEventCodec.BATCH_HEADER_SIZE - 1)))
+                .isNull();
+    }
+
+    private static ByteBuffer text(String body) {
+        return ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
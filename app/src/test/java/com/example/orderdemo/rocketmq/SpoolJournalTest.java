@@ -0,0 +1,185 @@
+package com.example.orderdemo.rocketmq;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpoolJournalTest {
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendedRecordsSurviveReopen() throws IOException {
+        long end;
+        try (SpoolJournal journal = open()) {
+            journal.append(1L, "OrderFifoTopic", "order_paid", "1001", List.of("1001"), Map.of("k", "v"), body("paid"));
+            journal.append(2L, "OrderDelayTopic", null, null, List.of(), Map.of(), body("close"));
+            end = journal.writePosition();
+        }
+        try (SpoolJournal journal = open()) {
+            assertThat(journal.committed()).isZero();
+            assertThat(journal.writePosition()).isEqualTo(end);
+            List<SpoolJournal.Entry> entries = readAll(journal);
+            assertThat(entries).hasSize(2);
+            SpoolJournal.Entry paid = entries.get(0);
+            assertThat(paid.timestamp()).isEqualTo(1L);
+            assertThat(paid.topic()).isEqualTo("OrderFifoTopic");
+            assertThat(paid.tag()).isEqualTo("order_paid");
+            assertThat(paid.messageGroup()).isEqualTo("1001");
+            assertThat(paid.keys()).containsExactly("1001");
+            assertThat(paid.properties()).containsExactly(Map.entry("k", "v"));
+            assertThat(text(paid)).isEqualTo("paid");
+            SpoolJournal.Entry close = entries.get(1);
+            assertThat(close.tag()).isNull();
+            assertThat(close.messageGroup()).isNull();
+            assertThat(close.keys()).isEmpty();
+            assertThat(text(close)).isEqualTo("close");
+        }
+    }
+
+    @Test
+    void tornRecordIsTruncated() throws IOException {
+        long torn;
+        try (SpoolJournal journal = open()) {
+            append(journal, "1");
+            torn = append(journal, "2");
+        }
+        // killed between writing the payload and the length
+        writeInt(segment(0), torn, 0);
+        try (SpoolJournal journal = open()) {
+            assertThat(readAll(journal)).extracting(this::text).containsExactly("1");
+            assertThat(journal.writePosition()).isEqualTo(torn);
+            assertZeroFrom(segment(0), torn);
+            assertThat(append(journal, "3")).isEqualTo(torn);
+        }
+        try (SpoolJournal journal = open()) {
+            assertThat(readAll(journal)).extracting(this::text).containsExactly("1", "3");
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumIsTruncated() throws IOException {
+        long bad;
+        try (SpoolJournal journal = open()) {
+            append(journal, "1");
+            bad = append(journal, "2");
+            append(journal, "3");
+        }
+        writeInt(segment(0), bad + 4, 0x12345678);
+        try (SpoolJournal journal = open()) {
+            assertThat(readAll(journal)).extracting(this::text).containsExactly("1");
+            assertThat(journal.writePosition()).isEqualTo(bad);
+            assertZeroFrom(segment(0), bad);
+        }
+    }
+
+    @Test
+    void recordThatDoesNotFitRollsToNextSegment() throws IOException {
+        List<Long> positions = new ArrayList<>();
+        try (SpoolJournal journal = open()) {
+            for (int i = 0; i < 4; i++) {
+                positions.add(journal.append(i, "OrderFifoTopic", null, null, List.of(), Map.of(),
+                        ByteBuffer.wrap(new byte[250])));
+            }
+            assertThat(journal.segmentCount()).isEqualTo(2);
+        }
+        // three 250-byte records fill most of the first segment, the fourth starts the second one
+        assertThat(positions.get(3)).isEqualTo(SEGMENT_SIZE);
+        assertThat(segment(SEGMENT_SIZE)).exists();
+        try (SpoolJournal journal = open()) {
+            assertThat(readAll(journal)).extracting(SpoolJournal.Entry::position).containsExactlyElementsOf(positions);
+        }
+    }
+
+    @Test
+    void damagedCheckpointReplaysFromOldestSegment() throws IOException {
+        try (SpoolJournal journal = open()) {
+            append(journal, "1");
+            long second = append(journal, "2");
+            journal.commit(second);
+        }
+        writeInt(dir.resolve("checkpoint"), 12, 0);
+        try (SpoolJournal journal = open()) {
+            assertThat(journal.committed()).isZero();
+            assertThat(readAll(journal)).extracting(this::text).containsExactly("1", "2");
+        }
+    }
+
+    @Test
+    void commitDeletesSentSegmentsAndRecoveryResumesThere() throws IOException {
+        long resume;
+        try (SpoolJournal journal = open()) {
+            for (int i = 0; i < 6; i++) {
+                journal.append(i, "OrderFifoTopic", null, null, List.of(), Map.of(), ByteBuffer.wrap(new byte[250]));
+            }
+            assertThat(journal.segmentCount()).isEqualTo(2);
+            // records 0-2 are in segment 0, 3-5 in segment 1024
+            resume = readAll(journal).get(4).position();
+            journal.commit(resume);
+            assertThat(journal.segmentCount()).isEqualTo(1);
+        }
+        assertThat(segment(0)).doesNotExist();
+        try (SpoolJournal journal = open()) {
+            assertThat(journal.committed()).isEqualTo(resume);
+            assertThat(readAll(journal)).extracting(SpoolJournal.Entry::timestamp).containsExactly(4L, 5L);
+            assertThat(journal.pendingBytes()).isEqualTo(journal.writePosition() - resume);
+        }
+    }
+
+    private SpoolJournal open() throws IOException {
+        return new SpoolJournal(dir, SEGMENT_SIZE, false);
+    }
+
+    private static long append(SpoolJournal journal, String text) {
+        return journal.append(System.currentTimeMillis(), "OrderFifoTopic", "order_paid", "1001",
+                List.of("1001"), Map.of(), body(text));
+    }
+
+    private static List<SpoolJournal.Entry> readAll(SpoolJournal journal) {
+        List<SpoolJournal.Entry> entries = new ArrayList<>();
+        for (SpoolJournal.Entry e = journal.read(journal.committed()); e != null; e = journal.read(e.next())) {
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    private static ByteBuffer body(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String text(SpoolJournal.Entry e) {
+        return new String(e.body(), StandardCharsets.UTF_8);
+    }
+
+    private Path segment(long base) {
+        return dir.resolve(String.format("%020d", base));
+    }
+
+    private static void writeInt(Path file, long offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, value), offset);
+        }
+    }
+
+    private static void assertZeroFrom(Path file, long offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        assertThat(bytes).hasSize(SEGMENT_SIZE);
+        for (int i = (int) offset; i < bytes.length; i++) {
+            assertThat(bytes[i]).as("byte %d", i).isZero();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.orderdemo.rocketmq.inmemory;
+
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.FilterExpressionType;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryBrokerTest {
+    private static final String TOPIC = "TestTopic";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long CHECK_DELAY_MILLIS = 100;
+    private static final int MAX_CHECKS = 3;
+
+    private final InMemoryBroker broker = new InMemoryBroker(MAX_ATTEMPTS, Duration.ofMillis(20), Duration.ofMillis(50),
+            Duration.ofMillis(CHECK_DELAY_MILLIS), MAX_CHECKS, Duration.ZERO, Duration.ZERO, 4);
+    private final ClientServiceProvider provider = new InMemoryClientServiceProvider(broker);
+    private final List<AutoCloseable> clients = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (AutoCloseable c : clients) {
+            c.close();
+        }
+        broker.close();
+    }
+
+    @Test
+    void failingFifoMessageBlocksOnlyItsOwnGroup() throws Exception {
+        BlockingQueue<String> consumed = new LinkedBlockingQueue<>();
+        AtomicInteger a1Attempts = new AtomicInteger();
+        consumer("fifo-group", TOPIC, "*", view -> {
+            String body = body(view);
+            if (body.equals("a1") && a1Attempts.incrementAndGet() < MAX_ATTEMPTS) {
+                return ConsumeResult.FAILURE;
+            }
+            consumed.add(body);
+            return ConsumeResult.SUCCESS;
+        });
+        Producer producer = producer(null);
+        producer.send(fifo("a", "a1"));
+        producer.send(fifo("a", "a2"));
+        producer.send(fifo("b", "b1"));
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            order.add(consumed.poll(5, TimeUnit.SECONDS));
+        }
+        // b1 is not held up by the retries of a1; a2 waits for a1 to succeed
+        assertThat(order).containsExactly("b1", "a1", "a2");
+        assertThat(a1Attempts).hasValue(MAX_ATTEMPTS);
+    }
+
+    @Test
+    void tagFilterSelectsMessages() throws Exception {
+        BlockingQueue<String> consumed = new LinkedBlockingQueue<>();
+        consumer("tag-group", TOPIC, "paid || shipped", view -> {
+            consumed.add(view.getTag().orElse(""));
+            return ConsumeResult.SUCCESS;
+        });
+        Producer producer = producer(null);
+        for (String tag : List.of("created", "paid", "shipped")) {
+            producer.send(provider.newMessageBuilder().setTopic(TOPIC).setTag(tag).setBody(bytes(tag)).build());
+        }
+        assertThat(List.of(consumed.poll(5, TimeUnit.SECONDS), consumed.poll(5, TimeUnit.SECONDS)))
+                .containsExactlyInAnyOrder("paid", "shipped");
+        assertThat(consumed.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void halfMessageIsInvisibleUntilCommit() throws Exception {
+        BlockingQueue<String> consumed = collect("txn-group");
+        Producer producer = producer(view -> TransactionResolution.UNKNOWN);
+
+        Transaction committed = producer.beginTransaction();
+        producer.send(plain("commit-me"), committed);
+        Transaction rolledBack = producer.beginTransaction();
+        producer.send(plain("roll-me-back"), rolledBack);
+
+        assertThat(consumed.poll(CHECK_DELAY_MILLIS / 2, TimeUnit.MILLISECONDS)).isNull();
+        committed.commit();
+        rolledBack.rollback();
+        assertThat(consumed.poll(5, TimeUnit.SECONDS)).isEqualTo("commit-me");
+        // a late commit after the rollback changes nothing
+        rolledBack.commit();
+        assertThat(consumed.poll(CHECK_DELAY_MILLIS * 2, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void checkerIsAskedAgainWhileUnknown() throws Exception {
+        BlockingQueue<String> consumed = collect("check-group");
+        Map<String, AtomicInteger> checks = new ConcurrentHashMap<>();
+        Producer producer = producer(view -> {
+            String body = body(view);
+            int n = checks.computeIfAbsent(body, b -> new AtomicInteger()).incrementAndGet();
+            return body.equals("commit-on-second-check") && n == 2 ? TransactionResolution.COMMIT : TransactionResolution.UNKNOWN;
+        });
+        producer.send(plain("commit-on-second-check"), producer.beginTransaction());
+        producer.send(plain("never-resolved"), producer.beginTransaction());
+
+        assertThat(consumed.poll(5, TimeUnit.SECONDS)).isEqualTo("commit-on-second-check");
+        // the other one is discarded after txnMaxChecks
+        assertThat(consumed.poll(CHECK_DELAY_MILLIS * (MAX_CHECKS + 2), TimeUnit.MILLISECONDS)).isNull();
+        assertThat(checks.get("commit-on-second-check")).hasValue(2);
+        assertThat(checks.get("never-resolved")).hasValue(MAX_CHECKS);
+    }
+
+    @Test
+    void delayedMessageArrivesAtItsDeliveryTimestamp() throws Exception {
+        BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+        consumer("delay-group", TOPIC, "*", view -> {
+            arrivals.add(System.currentTimeMillis());
+            return ConsumeResult.SUCCESS;
+        });
+        long deliverAt = System.currentTimeMillis() + 300;
+        producer(null).send(provider.newMessageBuilder().setTopic(TOPIC).setDeliveryTimestamp(deliverAt)
+                .setBody(bytes("close")).build());
+
+        assertThat(arrivals.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(arrivals.poll(5, TimeUnit.SECONDS)).isGreaterThanOrEqualTo(deliverAt);
+    }
+
+    @Test
+    void exhaustedMessageMovesToDeadLetterTopic() throws Exception {
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+        consumer("dlq-group", TOPIC, "*", view -> {
+            attempts.add(view.getDeliveryAttempt());
+            if (view.getDeliveryAttempt() == 2) {
+                throw new IllegalStateException("a throwing listener counts as a failure");
+            }
+            return ConsumeResult.FAILURE;
+        });
+        BlockingQueue<MessageView> dead = new LinkedBlockingQueue<>();
+        consumer("dlq-reader", "%DLQ%dlq-group", "*", view -> {
+            dead.add(view);
+            return ConsumeResult.SUCCESS;
+        });
+        Producer producer = producer(null);
+        String id = producer.send(fifo("order-1", "poison")).getMessageId().toString();
+        producer.send(fifo("order-1", "behind-poison"));
+
+        MessageView first = dead.poll(5, TimeUnit.SECONDS);
+        assertThat(first).isNotNull();
+        assertThat(first.getMessageId().toString()).isEqualTo(id);
+        assertThat(first.getTopic()).isEqualTo("%DLQ%dlq-group");
+        assertThat(first.getTag()).contains("t");
+        assertThat(first.getMessageGroup()).isEmpty();
+        assertThat(first.getDeliveryAttempt()).isEqualTo(1);
+        assertThat(body(first)).isEqualTo("poison");
+        // the group moves on once the poison message is dead-lettered
+        assertThat(body(dead.poll(5, TimeUnit.SECONDS))).isEqualTo("behind-poison");
+        assertThat(attempts).containsExactly(1, 2, 3, 1, 2, 3);
+    }
+
+    private PushConsumer consumer(String group, String topic, String tags, MessageListener listener)
+            throws ClientException {
+        PushConsumer consumer = provider.newPushConsumerBuilder()
+                .setConsumerGroup(group)
+                .setSubscriptionExpressions(Map.of(topic, new FilterExpression(tags, FilterExpressionType.TAG)))
+                .setMessageListener(listener)
+                .build();
+        clients.add(consumer);
+        return consumer;
+    }
+
+    private BlockingQueue<String> collect(String group) throws ClientException {
+        BlockingQueue<String> consumed = new LinkedBlockingQueue<>();
+        consumer(group, TOPIC, "*", view -> {
+            consumed.add(body(view));
+            return ConsumeResult.SUCCESS;
+        });
+        return consumed;
+    }
+
+    private Producer producer(TransactionChecker checker) throws ClientException {
+        Producer producer = provider.newProducerBuilder().setTransactionChecker(checker).build();
+        clients.add(producer);
+        return producer;
+    }
+
+    private Message plain(String body) {
+        return provider.newMessageBuilder().setTopic(TOPIC).setTag("t").setBody(bytes(body)).build();
+    }
+
+    private Message fifo(String group, String body) {
+        return provider.newMessageBuilder().setTopic(TOPIC).setTag("t").setMessageGroup(group).setBody(bytes(body)).build();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String body(MessageView view) {
+        return StandardCharsets.UTF_8.decode(view.getBody()).toString();
+    }
+}
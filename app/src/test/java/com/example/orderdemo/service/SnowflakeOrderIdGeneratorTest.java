@@ -0,0 +1,105 @@
+package com.example.orderdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeOrderIdGeneratorTest {
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 100_000;
+    private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+    @Test
+    void concurrentIdsAreUniqueAndSortInTimeOrder() throws Exception {
+        SnowflakeOrderIdGenerator generator = new SnowflakeOrderIdGenerator(1);
+        long before = System.currentTimeMillis();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<List<String>> perThread = new ArrayList<>();
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    List<String> ids = new ArrayList<>(IDS_PER_THREAD);
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids.add(generator.nextId());
+                    }
+                    return ids;
+                }));
+            }
+            go.countDown();
+            for (Future<List<String>> f : results) {
+                perThread.add(f.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        String after = generator.nextId();
+
+        Set<String> seen = new HashSet<>(THREADS * IDS_PER_THREAD);
+        for (List<String> ids : perThread) {
+            seen.addAll(ids);
+            // each thread sees its ids in the order it asked for them
+            assertThat(ids).isSortedAccordingTo(String::compareTo);
+            assertThat(ids).doesNotHaveDuplicates();
+        }
+        assertThat(seen).hasSize(THREADS * IDS_PER_THREAD);
+        // string order is numeric order, and a later id sorts after every earlier one
+        List<String> sorted = new ArrayList<>(seen);
+        sorted.sort(null);
+        assertThat(sorted).isSortedAccordingTo((a, b) -> Long.compare(decode(a), decode(b)));
+        assertThat(after).isGreaterThan(sorted.get(sorted.size() - 1));
+        long firstMillis = millis(sorted.get(0));
+        assertThat(firstMillis).isGreaterThanOrEqualTo(before);
+        assertThat(millis(after)).isGreaterThanOrEqualTo(firstMillis);
+    }
+
+    @Test
+    void nodesProduceDistinctIdsInTheSameMillisecond() {
+        String a = new SnowflakeOrderIdGenerator(1).nextId();
+        String b = new SnowflakeOrderIdGenerator(2).nextId();
+        assertThat(a).isNotEqualTo(b);
+        assertThat(a).startsWith("order-").hasSize("order-".length() + 13);
+    }
+
+    @Test
+    void encodingIsFixedWidthAndOrderPreserving() {
+        long[] values = {0, 1, 31, 32, 1L << 22, (1L << 40) + 7, Long.MAX_VALUE};
+        for (int i = 1; i < values.length; i++) {
+            String lower = SnowflakeOrderIdGenerator.encode(values[i - 1]);
+            String higher = SnowflakeOrderIdGenerator.encode(values[i]);
+            assertThat(lower).hasSameSizeAs(higher).isLessThan(higher);
+            assertThat(decode(higher)).isEqualTo(values[i]);
+        }
+    }
+
+    @Test
+    void rejectsNodeIdOutOfRange() {
+        assertThatThrownBy(() -> new SnowflakeOrderIdGenerator(SnowflakeOrderIdGenerator.MAX_NODE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long decode(String id) {
+        long v = 0;
+        for (int i = "order-".length(); i < id.length(); i++) {
+            v = (v << 5) | ALPHABET.indexOf(id.charAt(i));
+        }
+        return v;
+    }
+
+    private static long millis(String id) {
+        return (decode(id) >>> (SnowflakeOrderIdGenerator.NODE_BITS + SnowflakeOrderIdGenerator.SEQUENCE_BITS))
+                + SnowflakeOrderIdGenerator.EPOCH;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.orderdemo.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Embedded H2 shards wired like ShardingConfig does for the shards-local profile. */
+final class H2Shards implements AutoCloseable {
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    final ShardRouter router;
+    /** The routed datasource the application sees. */
+    final DataSource dataSource;
+    final TransactionTemplate txTemplate;
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private final ShardRoutingDataSource routing;
+
+    H2Shards(int count) {
+        router = new ShardRouter(count);
+        int run = NEXT.incrementAndGet();
+        for (int i = 0; i < count; i++) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setJdbcUrl("jdbc:h2:mem:shards" + run + "-" + i + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+            pool.setUsername("sa");
+            pool.setPassword("");
+            pool.setMaximumPoolSize(4);
+            new ResourceDatabasePopulator(new ClassPathResource("db/h2-schema.sql")).execute(pool);
+            pools.add(pool);
+        }
+        routing = new ShardRoutingDataSource(router, pools);
+        routing.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routing);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    /** Talks to one shard directly, bypassing the router. */
+    JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(pools.get(shard));
+    }
+
+    long count(int shard, String table) {
+        Long n = shard(shard).queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return n == null ? 0 : n;
+    }
+
+    @Override
+    public void close() {
+        routing.close();
+        router.shutdown();
+    }
+}
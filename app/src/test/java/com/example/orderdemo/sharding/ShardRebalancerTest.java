@@ -0,0 +1,149 @@
+package com.example.orderdemo.sharding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardRebalancerTest {
+    private static final int SHARDS = 3;
+    private static final int ORDERS = 60;
+    private static final int CHUNK = 10;
+
+    private final H2Shards h2 = new H2Shards(SHARDS);
+    private final List<String> orderIds = IntStream.range(0, ORDERS).mapToObj(i -> "order-" + (2000 + i)).toList();
+
+    @BeforeEach
+    void everythingOnTheFirstShard() {
+        // as if the tree had one shard before the other two were added
+        JdbcTemplate first = h2.shard(0);
+        for (String id : orderIds) {
+            first.update("INSERT INTO orders (order_id, amount, status) VALUES (?, 9.90, 'PAID')", id);
+            first.update("INSERT INTO message_log (dedup_key, message_id, bucket) VALUES (?, ?, 0)",
+                    "order:" + id + ":PAID", "msg-" + id);
+        }
+    }
+
+    @AfterEach
+    void close() {
+        h2.close();
+    }
+
+    @Test
+    void dryRunOnlyCounts() throws InterruptedException {
+        ShardRebalancer.Status status = runToEnd(rebalancer(jdbc(), named()), true);
+
+        long misplaced = orderIds.stream().filter(id -> h2.router.shardOf(id) != 0).count();
+        assertThat(status.state()).isEqualTo("DONE");
+        assertThat(status.misplaced()).isEqualTo(2 * misplaced);
+        assertThat(status.moved()).isZero();
+        assertThat(status.moves().values().stream().mapToLong(Long::longValue).sum()).isEqualTo(2 * misplaced);
+        assertThat(h2.count(0, "orders")).isEqualTo(ORDERS);
+    }
+
+    @Test
+    void rebalanceMovesEveryRowToItsShard() throws InterruptedException {
+        ShardRebalancer.Status status = runToEnd(rebalancer(jdbc(), named()), false);
+
+        assertThat(status.state()).isEqualTo("DONE");
+        assertThat(status.moved()).isEqualTo(status.misplaced()).isPositive();
+        assertEveryRowOnItsShardOnce();
+    }
+
+    @Test
+    void rerunAfterFailedCopyFinishesTheJob() throws InterruptedException {
+        JdbcTemplate failing = new JdbcTemplate(h2.dataSource) {
+            private int batches;
+
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (++batches == 3) {
+                    throw new DataAccessResourceFailureException("target shard went away");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        ShardRebalancer.Status failed = runToEnd(rebalancer(failing, named()), false);
+        assertThat(failed.state()).isEqualTo("FAILED");
+        assertThat(failed.moved()).isPositive();
+        assertThat(h2.count(0, "orders")).isGreaterThan(ORDERS - failed.misplaced());
+
+        ShardRebalancer.Status rerun = runToEnd(rebalancer(jdbc(), named()), false);
+        assertThat(rerun.state()).isEqualTo("DONE");
+        assertEveryRowOnItsShardOnce();
+    }
+
+    @Test
+    void rerunAfterCopyWithoutDeleteSkipsTheCopies() throws InterruptedException {
+        NamedParameterJdbcTemplate failing = new NamedParameterJdbcTemplate(h2.dataSource) {
+            @Override
+            public int update(String sql, SqlParameterSource paramSource) {
+                throw new DataAccessResourceFailureException("killed between copy and delete");
+            }
+        };
+        ShardRebalancer.Status failed = runToEnd(rebalancer(jdbc(), failing), false);
+        assertThat(failed.state()).isEqualTo("FAILED");
+        // the first copied chunk is on its target and still on shard 0
+        long copies = h2.count(1, "orders") + h2.count(2, "orders");
+        assertThat(copies).isPositive();
+        assertThat(h2.count(0, "orders")).isEqualTo(ORDERS);
+
+        ShardRebalancer.Status rerun = runToEnd(rebalancer(jdbc(), named()), false);
+        assertThat(rerun.state()).isEqualTo("DONE");
+        assertEveryRowOnItsShardOnce();
+    }
+
+    private ShardRebalancer rebalancer(JdbcTemplate jdbc, NamedParameterJdbcTemplate named) {
+        return new ShardRebalancer(h2.router, jdbc, named, h2.txTemplate, new SimpleMeterRegistry(), CHUNK);
+    }
+
+    private JdbcTemplate jdbc() {
+        return new JdbcTemplate(h2.dataSource);
+    }
+
+    private NamedParameterJdbcTemplate named() {
+        return new NamedParameterJdbcTemplate(h2.dataSource);
+    }
+
+    private static ShardRebalancer.Status runToEnd(ShardRebalancer rebalancer, boolean dryRun) throws InterruptedException {
+        rebalancer.start(dryRun, 0);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while ("RUNNING".equals(rebalancer.status().state()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return rebalancer.status();
+    }
+
+    private void assertEveryRowOnItsShardOnce() {
+        List<String> allOrders = new ArrayList<>();
+        List<String> allKeys = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int s = shard;
+            List<String> orders = h2.shard(shard).queryForList("SELECT order_id FROM orders", String.class);
+            List<String> keys = h2.shard(shard).queryForList("SELECT dedup_key FROM message_log", String.class);
+            assertThat(orders).allMatch(id -> h2.router.shardOf(id) == s);
+            assertThat(keys).allMatch(key -> h2.router.shardOfDedupKey(key) == s);
+            allOrders.addAll(orders);
+            allKeys.addAll(keys);
+        }
+        assertThat(allOrders).containsExactlyInAnyOrderElementsOf(orderIds);
+        assertThat(allKeys).hasSize(ORDERS).doesNotHaveDuplicates();
+        // copied columns survive the move
+        String moved = orderIds.stream().filter(id -> h2.router.shardOf(id) == 2).findFirst().orElseThrow();
+        assertThat(h2.shard(2).queryForObject("SELECT status FROM orders WHERE order_id = ?", String.class, moved))
+                .isEqualTo("PAID");
+        assertThat(h2.shard(2).queryForObject("SELECT message_id FROM message_log WHERE dedup_key = ?", String.class,
+                "order:" + moved + ":PAID")).isEqualTo("msg-" + moved);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.orderdemo.sharding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardRouterTest {
+    private static final int SHARDS = 3;
+
+    private final H2Shards h2 = new H2Shards(SHARDS);
+    private final ShardRouter router = h2.router;
+    private final JdbcTemplate jdbc = new JdbcTemplate(h2.dataSource);
+
+    @AfterEach
+    void close() {
+        h2.close();
+    }
+
+    @Test
+    void routingMatchesMysqlCrc32() {
+        // SELECT CRC32('MySQL'), CRC32('mysql') in the MySQL reference manual
+        Map<String, Long> mysql = Map.of("MySQL", 3259397556L, "mysql", 2501908538L);
+        for (int n = 2; n <= 8; n++) {
+            ShardRouter r = new ShardRouter(n);
+            try {
+                for (Map.Entry<String, Long> e : mysql.entrySet()) {
+                    assertThat(r.shardOf(e.getKey())).as("%s %% %d", e.getKey(), n).isEqualTo((int) (e.getValue() % n));
+                }
+            } finally {
+                r.shutdown();
+            }
+        }
+        assertThat(new ShardRouter(1).shardOf("MySQL")).isEqualTo(ShardRouter.HOME);
+    }
+
+    @Test
+    void pinnedWritesLandOnTheOwningShard() {
+        List<String> ids = orderIds(30);
+        for (String id : ids) {
+            h2.txTemplate.executeWithoutResult(s -> {
+                router.pin(id);
+                jdbc.update("INSERT INTO orders (order_id, amount, status) VALUES (?, 1, 'CREATED')", id);
+            });
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int s = shard;
+            List<String> expected = ids.stream().filter(id -> router.shardOf(id) == s).toList();
+            assertThat(h2.shard(shard).queryForList("SELECT order_id FROM orders", String.class))
+                    .containsExactlyInAnyOrderElementsOf(expected);
+        }
+        List<String> found = router.gather(ids,
+                part -> jdbc.queryForList("SELECT order_id FROM orders WHERE order_id IN (" +
+                        String.join(",", part.stream().map(id -> "'" + id + "'").toList()) + ")", String.class));
+        assertThat(found).containsExactlyInAnyOrderElementsOf(ids);
+    }
+
+    @Test
+    void transactionStaysOnItsFirstShard() {
+        String a = onShard(1);
+        String b = onShard(2);
+        h2.txTemplate.executeWithoutResult(s -> {
+            router.pin(a);
+            router.pin(a);
+            assertThatThrownBy(() -> router.pin(b)).isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> router.call(2, () -> 0)).isInstanceOf(IllegalStateException.class);
+        });
+        // the pin ends with the transaction
+        h2.txTemplate.executeWithoutResult(s -> router.pin(b));
+
+        assertThatThrownBy(() -> router.pin(a)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void unpinnedStatementBindsTransactionToHome() {
+        String other = onShard(1);
+        h2.txTemplate.executeWithoutResult(s -> {
+            jdbc.queryForObject("SELECT COUNT(*) FROM dlq_message", Long.class);
+            assertThatThrownBy(() -> router.pin(other)).isInstanceOf(IllegalStateException.class);
+        });
+    }
+
+    @Test
+    void dedupKeysOfAnOrderLiveWithIt() {
+        for (String id : orderIds(50)) {
+            int shard = router.shardOf(id);
+            for (String step : List.of("CREATED", "PAID", "SHIPPED", "CLOSE")) {
+                assertThat(router.shardOfDedupKey("order:" + id + ":" + step)).isEqualTo(shard);
+            }
+        }
+        assertThat(router.shardOfDedupKey("close:42")).isEqualTo(router.shardOf("close:42"));
+        assertThat(router.shardOfDedupKey("order:")).isEqualTo(router.shardOf("order:"));
+
+        String id = onShard(2);
+        h2.txTemplate.executeWithoutResult(s -> {
+            router.pin(id);
+            jdbc.update("INSERT INTO orders (order_id, amount, status) VALUES (?, 1, 'PAID')", id);
+            router.pinShard(router.shardOfDedupKey("order:" + id + ":PAID"));
+            jdbc.update("INSERT INTO message_log (dedup_key, bucket) VALUES (?, 0)", "order:" + id + ":PAID");
+        });
+        assertThat(h2.count(2, "orders")).isEqualTo(1);
+        assertThat(h2.count(2, "message_log")).isEqualTo(1);
+    }
+
+    private static List<String> orderIds(int n) {
+        return IntStream.range(0, n).mapToObj(i -> "order-" + (1000 + i)).toList();
+    }
+
+    private String onShard(int shard) {
+        return orderIds(100).stream().filter(id -> router.shardOf(id) == shard).findFirst().orElseThrow();
+    }
+}
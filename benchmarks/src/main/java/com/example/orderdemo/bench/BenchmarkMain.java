@@ -0,0 +1,47 @@
+package com.example.orderdemo.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point of benchmarks.jar.
+ * Accepts the usual JMH command line (e.g. {@code OrderEventCodec -f 1 -wi 3 -i 5}) and adds
+ * defaults for this project: throughput in ops/ms, the GC profiler (allocation rate per op),
+ * and a JSON result file that can be diffed between two runs.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        // values set here win over the parent, so each default is applied only when not given on the command line
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cli);
+        if (!cli.getTimeUnit().hasValue()) {
+            opts.timeUnit(TimeUnit.MILLISECONDS);
+        }
+        if (!cli.getResult().hasValue()) {
+            opts.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+        }
+        if (cli.getIncludes().isEmpty()) {
+            opts.include("com\\.example\\.orderdemo\\.bench\\..*Benchmark");
+        }
+        if (cli.getProfilers().isEmpty()) {
+            opts.addProfiler(GCProfiler.class);
+        }
+        if (!cli.getForkCount().hasValue()) {
+            opts.forks(1);
+        }
+        if (!cli.getWarmupIterations().hasValue()) {
+            opts.warmupIterations(3);
+        }
+        if (!cli.getMeasurementIterations().hasValue()) {
+            opts.measurementIterations(5);
+        }
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.bench.support.OrderFixture;
+import com.example.orderdemo.bench.support.StubMessageView;
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.rocketmq.ConsumerMetrics;
+import com.example.orderdemo.rocketmq.DelayEventListener;
+import com.example.orderdemo.rocketmq.FifoEventListener;
+import com.example.orderdemo.rocketmq.OrderEvent;
+import com.example.orderdemo.rocketmq.OrderEventCodec;
+import com.example.orderdemo.rocketmq.OrderEventHandlers;
+import com.example.orderdemo.rocketmq.OrderEventType;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.message.MessageView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Listener dispatch as the push consumer drives it: route by tag → handler → OrderService.
+ * fifoPaidLegacyTag sends the same event under the old shared tag, which is routed by decoding the body.
+ * Messages cycle over a fixed set of orders, so after the first pass every FIFO message is a
+ * redelivery answered by the dedup cache and every close hits an order that is already cancelled;
+ * this measures the per-message overhead, not the state change.
+ */
+@State(Scope.Benchmark)
+public class ConsumerDispatchBenchmark {
+
+    @Param({"binary", "text"})
+    public String format;
+
+    private static final int ORDERS = 1024;
+
+    private OrderFixture fixture;
+    private FifoEventListener fifoListener;
+    private DelayEventListener delayListener;
+    private MessageView[] paidMessages;
+    private MessageView[] legacyPaidMessages;
+    private MessageView[] closeMessages;
+    private MessageView malformed;
+    private int next;
+
+    @Setup
+    public void setup() {
+        fixture = new OrderFixture();
+        OrderEventHandlers handlers = new OrderEventHandlers()
+                .on(OrderEventType.PAID, fixture.orderService::markPaid)
+                .on(OrderEventType.SHIPPED, fixture.orderService::markShipped);
+        fifoListener = new FifoEventListener(handlers, new ConsumerMetrics(fixture.registry, "fifo"));
+        delayListener = new DelayEventListener(fixture.orderService, fixture.shards, new ConsumerMetrics(fixture.registry, "delay"));
+        paidMessages = new MessageView[ORDERS];
+        legacyPaidMessages = new MessageView[ORDERS];
+        closeMessages = new MessageView[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            String orderId = String.format("order-%08x", i);
+            fixture.seed(orderId, OrderStatus.CREATED);
+            paidMessages[i] = message(orderId, OrderEventType.PAID.tag(), OrderEvent.of(orderId, OrderEventType.PAID));
+            legacyPaidMessages[i] = message(orderId, OrderEventType.LEGACY_FIFO_TAG, OrderEvent.of(orderId, OrderEventType.PAID));
+            closeMessages[i] = message(orderId, OrderEventType.CLOSE.tag(), OrderEvent.of(orderId, OrderEventType.CLOSE));
+        }
+        malformed = new StubMessageView("bad", "order_fifo_topic", OrderEventType.LEGACY_FIFO_TAG, "bad", new byte[]{'x'});
+    }
+
+    private MessageView message(String orderId, String tag, OrderEvent event) {
+        byte[] body = "text".equals(format) ? OrderEventCodec.encodeText(event) : OrderEventCodec.encode(event);
+        return new StubMessageView("msg-" + orderId + "-" + tag, "order_topic", tag, orderId, body);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public ConsumeResult fifoPaid() {
+        return fifoListener.consume(paidMessages[next++ & (ORDERS - 1)]);
+    }
+
+    @Benchmark
+    public ConsumeResult fifoPaidLegacyTag() {
+        return fifoListener.consume(legacyPaidMessages[next++ & (ORDERS - 1)]);
+    }
+
+    @Benchmark
+    public ConsumeResult delayClose() {
+        return delayListener.consume(closeMessages[next++ & (ORDERS - 1)]);
+    }
+}
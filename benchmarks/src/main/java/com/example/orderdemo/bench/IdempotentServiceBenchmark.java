@@ -0,0 +1,44 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.bench.support.InMemoryRepositories;
+import com.example.orderdemo.service.IdempotentService;
+import com.example.orderdemo.sharding.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedup check cost. firstDelivery claims a new key every call (cache miss + insert);
+ * redelivery repeats one key, so after the first call it is answered by the front cache.
+ * The database round trip itself is not part of either number.
+ */
+@State(Scope.Benchmark)
+public class IdempotentServiceBenchmark {
+    private static final Runnable NOOP = () -> { };
+
+    private IdempotentService idem;
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        // the cache is bounded, so a long run of unique keys also pays for eviction like production does
+        idem = new IdempotentService(InMemoryRepositories.messageLogs(), new JdbcTemplate(), new ShardRouter(1),
+                new SimpleMeterRegistry(), 100_000, Duration.ofMinutes(10), Duration.ofDays(7));
+    }
+
+    @Benchmark
+    public boolean firstDelivery() {
+        return idem.processOnce("order:bench-" + seq.incrementAndGet() + ":PAID", null, NOOP);
+    }
+
+    @Benchmark
+    public boolean redelivery() {
+        return idem.processOnce("order:bench-dup:PAID", null, NOOP);
+    }
+}
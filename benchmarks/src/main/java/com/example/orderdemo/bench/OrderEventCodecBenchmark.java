@@ -0,0 +1,83 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.rocketmq.OrderEvent;
+import com.example.orderdemo.rocketmq.OrderEventCodec;
+import com.example.orderdemo.rocketmq.OrderEventType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message body encode/decode, binary v1 against the legacy "orderId:STATUS" text format,
+ * and the v2 batch body (scores are per event).
+ * Decode reads from a read-only heap buffer, the same shape MessageView.getBody() hands out.
+ */
+@State(Scope.Thread)
+public class OrderEventCodecBenchmark {
+    /* one bulk-create request worth of close events, compare per event against the single-event numbers */
+    private static final int BATCH = 100;
+
+    private OrderEvent paid;
+    private OrderEvent created;
+    private byte[] binaryBody;
+    private byte[] textBody;
+    private List<OrderEvent> closeBatch;
+    private byte[] batchBody;
+
+    @Setup
+    public void setup() {
+        paid = OrderEvent.of("order-3f2a9c1e", OrderEventType.PAID);
+        created = OrderEvent.of("order-3f2a9c1e", OrderEventType.CREATED, new BigDecimal("99.90"));
+        binaryBody = OrderEventCodec.encode(paid);
+        textBody = OrderEventCodec.encodeText(paid);
+        closeBatch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            closeBatch.add(OrderEvent.of(String.format("order-%08x", i), OrderEventType.CLOSE));
+        }
+        batchBody = OrderEventCodec.encodeBatch(closeBatch);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return OrderEventCodec.encode(paid);
+    }
+
+    @Benchmark
+    public byte[] encodeBinaryWithAmount() {
+        return OrderEventCodec.encode(created);
+    }
+
+    @Benchmark
+    public byte[] encodeText() {
+        return OrderEventCodec.encodeText(paid);
+    }
+
+    @Benchmark
+    public OrderEvent decodeBinary() {
+        return OrderEventCodec.decode(ByteBuffer.wrap(binaryBody).asReadOnlyBuffer());
+    }
+
+    @Benchmark
+    public OrderEvent decodeLegacyText() {
+        return OrderEventCodec.decode(ByteBuffer.wrap(textBody).asReadOnlyBuffer());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeBatch() {
+        return OrderEventCodec.encodeBatch(closeBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<OrderEvent> decodeBatch() {
+        return OrderEventCodec.decodeAll(ByteBuffer.wrap(batchBody).asReadOnlyBuffer());
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.service.OrderIdGenerator;
+import com.example.orderdemo.service.SnowflakeOrderIdGenerator;
+import com.example.orderdemo.service.UuidOrderIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Order id generation, snowflake against the previous UUID-prefix scheme.
+ * Run with -t N to see the shared AtomicLong under contention (e.g. -t 1 and -t 8).
+ * Uniqueness and ordering under concurrency are covered by SnowflakeOrderIdGeneratorTest.
+ */
+@State(Scope.Benchmark)
+public class OrderIdGeneratorBenchmark {
+    @Param({"snowflake", "uuid"})
+    public String scheme;
+
+    private OrderIdGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        generator = "uuid".equals(scheme) ? new UuidOrderIdGenerator() : new SnowflakeOrderIdGenerator(1);
+    }
+
+    @Benchmark
+    public String nextId() {
+        return generator.nextId();
+    }
+}
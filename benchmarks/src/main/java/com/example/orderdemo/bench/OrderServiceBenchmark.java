@@ -0,0 +1,67 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.bench.support.OrderFixture;
+import com.example.orderdemo.model.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+
+/**
+ * OrderService state transitions without a database or broker.
+ * create: half message + save + delay close message + commit, through the real publisher and codec.
+ * lifecycle: create → markPaid → markShipped, each step claiming a fresh dedup key.
+ * createThenClose: create → autoClose of the still unpaid order.
+ * The order map is cleared every iteration so it does not grow into a GC benchmark.
+ */
+@State(Scope.Benchmark)
+public class OrderServiceBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("99.90");
+
+    private OrderFixture fixture;
+
+    @Setup
+    public void setup() {
+        fixture = new OrderFixture();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOrders() {
+        fixture.orders.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public String create() throws Exception {
+        return OrderFixture.inCommittedTx(() -> fixture.orderService.create(AMOUNT));
+    }
+
+    @Benchmark
+    public OrderStatus lifecycle() throws Exception {
+        String orderId = OrderFixture.inCommittedTx(() -> fixture.orderService.create(AMOUNT));
+        OrderFixture.inCommittedTx(() -> {
+            fixture.orderService.markPaid(orderId);
+            return null;
+        });
+        OrderFixture.inCommittedTx(() -> {
+            fixture.orderService.markShipped(orderId);
+            return null;
+        });
+        return fixture.orders.get(orderId).getStatus();
+    }
+
+    @Benchmark
+    public OrderStatus createThenClose() throws Exception {
+        String orderId = OrderFixture.inCommittedTx(() -> fixture.orderService.create(AMOUNT));
+        fixture.orderService.autoClose(orderId);
+        return fixture.orders.get(orderId).getStatus();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.orderdemo.bench;
+
+import com.example.orderdemo.rocketmq.OrderEvent;
+import com.example.orderdemo.rocketmq.OrderEventCodec;
+import com.example.orderdemo.rocketmq.OrderEventType;
+import com.example.orderdemo.rocketmq.SpoolJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Publish spool appends: the record PublishSpool writes for one PAID event when its send fails.
+ * forceOnAppend=false leaves records in the page cache (a process crash loses nothing), true forces
+ * each one to disk. Every 64K appends the journal is committed to its end, as the drainer would,
+ * so drained segments are deleted and segment rolling is part of the score.
+ */
+@State(Scope.Benchmark)
+public class SpoolJournalBenchmark {
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    @Param({"false", "true"})
+    public boolean forceOnAppend;
+
+    private Path dir;
+    private SpoolJournal journal;
+    private ByteBuffer body;
+    private List<String> keys;
+    private long appended;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("spool-bench");
+        journal = new SpoolJournal(dir, SEGMENT_SIZE, forceOnAppend);
+        body = ByteBuffer.wrap(OrderEventCodec.encode(OrderEvent.of("1790000000000000001", OrderEventType.PAID)))
+                .asReadOnlyBuffer();
+        keys = List.of("1790000000000000001");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        long position = journal.append(System.currentTimeMillis(), "OrderFifoTopic", OrderEventType.PAID.tag(),
+                "1790000000000000001", keys, Map.of(), body);
+        if ((++appended & 0xFFFF) == 0) {
+            journal.commit(journal.writePosition());
+        }
+        return position;
+    }
+}
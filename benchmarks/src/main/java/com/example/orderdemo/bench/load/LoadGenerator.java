@@ -0,0 +1,296 @@
+package com.example.orderdemo.bench.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load generator: drives create → pay → ship through the HTTP API and waits until the
+ * order is observed as SHIPPED, so the measured flow includes the producer, the broker (or the
+ * in-memory stand-in), the FIFO consumer and the database.
+ * <p>
+ * Run against an app started with {@code --spring.profiles.active=inmemory}:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.orderdemo.bench.load.LoadGenerator \
+ *      --url=http://localhost:8088 --concurrency=64 --warmup=10s --duration=60s [--rate=2000]
+ * </pre>
+ * Without {@code --rate} every worker starts the next flow as soon as the previous one ends (closed loop).
+ * With {@code --rate} flows start on a fixed schedule and latency is measured from the scheduled
+ * start, so a stalled server shows up as queueing time instead of being hidden (coordinated omission).
+ */
+public class LoadGenerator {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final String[] OPS = {"create", "pay", "ship", "visible", "flow"};
+
+    private final HttpClient http;
+    private final String baseUrl;
+    private final int concurrency;
+    private final Duration warmup;
+    private final Duration duration;
+    private final double rate;
+    private final boolean fullFlow;
+    private final Duration pollInterval;
+    private final Duration visibleTimeout;
+
+    private final Map<String, Recorder> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder flows = new LongAdder();
+    private final AtomicLong tickets = new AtomicLong();
+    private volatile boolean running = true;
+
+    LoadGenerator(Map<String, String> opts) {
+        this.baseUrl = opts.getOrDefault("url", "http://localhost:8088").replaceAll("/+$", "");
+        this.concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "32"));
+        this.warmup = parseDuration(opts.getOrDefault("warmup", "10s"));
+        this.duration = parseDuration(opts.getOrDefault("duration", "60s"));
+        this.rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        this.fullFlow = !"create".equals(opts.getOrDefault("flow", "full"));
+        this.pollInterval = parseDuration(opts.getOrDefault("pollInterval", "5ms"));
+        this.visibleTimeout = parseDuration(opts.getOrDefault("visibleTimeout", "10s"));
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (String op : OPS) {
+            latencies.put(op, new Recorder(MAX_LATENCY_NANOS, 3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("usage: LoadGenerator [--url=..] [--concurrency=32] [--warmup=10s] [--duration=60s] "
+                        + "[--rate=flows/s] [--flow=full|create] [--pollInterval=5ms] [--visibleTimeout=10s] [--out=file.json]");
+                System.exit(2);
+            }
+            int eq = arg.indexOf('=');
+            opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        LoadGenerator gen = new LoadGenerator(opts);
+        Map<String, Object> report = gen.run();
+        String out = opts.get("out");
+        if (out != null) {
+            Files.writeString(Path.of(out), JSON.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+    }
+
+    Map<String, Object> run() throws InterruptedException {
+        List<Thread> workers = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            Thread t = new Thread(() -> work(start), "load-" + i);
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+        System.out.printf("warming up for %ds with %d workers%s%n", warmup.toSeconds(), concurrency,
+                rate > 0 ? " at " + rate + " flows/s" : " (closed loop)");
+        Thread.sleep(warmup.toMillis());
+        // drop everything recorded during warmup
+        latencies.values().forEach(Recorder::getIntervalHistogram);
+        errors.clear();
+        flows.reset();
+
+        long measureStart = System.nanoTime();
+        long end = measureStart + duration.toNanos();
+        long lastFlows = 0;
+        long lastTick = measureStart;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(5000, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()) + 1));
+            long now = System.nanoTime();
+            long total = flows.sum();
+            System.out.printf("%6.1fs  %8d flows  %8.1f flows/s  errors=%s%n", (now - measureStart) / 1e9,
+                    total, (total - lastFlows) / ((now - lastTick) / 1e9), snapshotErrors());
+            lastFlows = total;
+            lastTick = now;
+        }
+        running = false;
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        for (Thread t : workers) {
+            t.join(visibleTimeout.toMillis() + 5000);
+        }
+        return report(seconds);
+    }
+
+    private void work(long start) {
+        long periodNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+        while (running) {
+            long intended;
+            if (periodNanos > 0) {
+                intended = start + tickets.getAndIncrement() * periodNanos;
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                intended = System.nanoTime();
+            }
+            try {
+                if (flow(intended)) {
+                    flows.increment();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                error("io:" + e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /** One order through its lifecycle; returns false if a step failed (already counted as an error). */
+    private boolean flow(long intended) throws IOException, InterruptedException {
+        HttpResponse<String> created = post("/api/orders", "{\"amount\":" + (1 + (intended & 0xff)) + "}");
+        if (!ok("create", created)) {
+            return false;
+        }
+        record("create", intended);
+        if (!fullFlow) {
+            record("flow", intended);
+            return true;
+        }
+        String orderId = JSON.readTree(created.body()).path("orderId").asText();
+
+        long t = System.nanoTime();
+        if (!ok("pay", post("/api/orders/" + orderId + "/pay", ""))) {
+            return false;
+        }
+        record("pay", t);
+
+        t = System.nanoTime();
+        if (!ok("ship", post("/api/orders/" + orderId + "/ship", ""))) {
+            return false;
+        }
+        record("ship", t);
+
+        t = System.nanoTime();
+        long deadline = t + visibleTimeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            HttpResponse<String> r = get("/api/orders/" + orderId);
+            if (r.statusCode() == 200) {
+                JsonNode view = JSON.readTree(r.body());
+                if ("SHIPPED".equals(view.path("status").asText())) {
+                    record("visible", t);
+                    record("flow", intended);
+                    return true;
+                }
+            }
+            LockSupport.parkNanos(pollInterval.toNanos());
+        }
+        error("visible:timeout");
+        return false;
+    }
+
+    private boolean ok(String op, HttpResponse<String> r) {
+        if (r.statusCode() / 100 == 2) {
+            return true;
+        }
+        error(op + ":" + r.statusCode());
+        return false;
+    }
+
+    private void record(String op, long startNanos) {
+        latencies.get(op).recordValue(Math.min(System.nanoTime() - startNanos, MAX_LATENCY_NANOS));
+    }
+
+    private void error(String kind) {
+        errors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    private Map<String, Long> snapshotErrors() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        errors.forEach((k, v) -> m.put(k, v.sum()));
+        return m;
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Map<String, Object> report(double seconds) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", seconds);
+        report.put("concurrency", concurrency);
+        report.put("rate", rate);
+        report.put("flows", flows.sum());
+        report.put("flowsPerSecond", flows.sum() / seconds);
+        report.put("errors", snapshotErrors());
+        Map<String, Object> ops = new LinkedHashMap<>();
+        System.out.printf("%n%-8s %9s %10s %9s %9s %9s %9s %9s%n",
+                "op", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        latencies.forEach((op, recorder) -> {
+            Histogram h = recorder.getIntervalHistogram();
+            if (h.getTotalCount() == 0) {
+                return;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("count", h.getTotalCount());
+            row.put("perSecond", h.getTotalCount() / seconds);
+            row.put("p50Ms", ms(h.getValueAtPercentile(50)));
+            row.put("p90Ms", ms(h.getValueAtPercentile(90)));
+            row.put("p99Ms", ms(h.getValueAtPercentile(99)));
+            row.put("p999Ms", ms(h.getValueAtPercentile(99.9)));
+            row.put("maxMs", ms(h.getMaxValue()));
+            ops.put(op, row);
+            System.out.printf("%-8s %9d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", op, h.getTotalCount(),
+                    h.getTotalCount() / seconds, row.get("p50Ms"), row.get("p90Ms"), row.get("p99Ms"),
+                    row.get("p999Ms"), row.get("maxMs"));
+        });
+        report.put("latency", ops);
+        System.out.printf("%nflows: %d (%.1f/s)  errors: %s%n", flows.sum(), flows.sum() / seconds, snapshotErrors());
+        return report;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /* 500ms, 10s, 2m, or a plain number of seconds */
+    static Duration parseDuration(String s) {
+        s = s.trim();
+        if (s.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+        }
+        if (s.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        if (s.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(s));
+    }
+}
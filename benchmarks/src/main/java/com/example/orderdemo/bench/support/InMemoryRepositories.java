@@ -0,0 +1,101 @@
+package com.example.orderdemo.bench.support;
+
+import com.example.orderdemo.model.MessageLog;
+import com.example.orderdemo.model.Order;
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.repository.MessageLogRepository;
+import com.example.orderdemo.repository.OrderRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map-backed stand-ins for the Spring Data repositories.
+ * Only the methods used on the measured paths are implemented; anything else throws,
+ * so a benchmark that starts touching a new repository method fails loudly.
+ */
+public final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    public static OrderRepository orders(Map<String, Order> store) {
+        return proxy(OrderRepository.class, (p, m, args) -> switch (m.getName()) {
+            case "findByOrderId" -> Optional.ofNullable(store.get((String) args[0]));
+            case "existsByOrderId" -> store.containsKey((String) args[0]);
+            case "save" -> {
+                Order o = (Order) args[0];
+                store.put(o.getOrderId(), o);
+                yield o;
+            }
+            case "transition" -> {
+                // same compare-and-set as the conditional UPDATE
+                OrderStatus target = (OrderStatus) args[1];
+                Collection<?> from = (Collection<?>) args[2];
+                boolean[] changed = new boolean[1];
+                store.computeIfPresent((String) args[0], (id, o) -> {
+                    if (from.contains(o.getStatus())) {
+                        o.setStatus(target);
+                        changed[0] = true;
+                    }
+                    return o;
+                });
+                yield changed[0] ? 1 : 0;
+            }
+            case "findExistingOrderIds" -> {
+                List<String> found = new ArrayList<>();
+                for (Object id : (Collection<?>) args[0]) {
+                    if (store.containsKey(id)) {
+                        found.add((String) id);
+                    }
+                }
+                yield found;
+            }
+            case "findByOrderIdIn" -> {
+                List<Order> found = new ArrayList<>();
+                for (Object id : (Collection<?>) args[0]) {
+                    Order o = store.get(id);
+                    if (o != null) {
+                        found.add(o);
+                    }
+                }
+                yield found;
+            }
+            default -> objectMethod(p, m.getName(), args);
+        });
+    }
+
+    public static OrderRepository orders() {
+        return orders(new ConcurrentHashMap<>());
+    }
+
+    public static MessageLogRepository messageLogs() {
+        Set<String> keys = ConcurrentHashMap.newKeySet();
+        return proxy(MessageLogRepository.class, (p, m, args) -> switch (m.getName()) {
+            case "insertIfAbsent" -> keys.add((String) args[0]) ? 1 : 0;
+            case "findByDedupKey" -> keys.contains((String) args[0]) ? Optional.of(new MessageLog()) : Optional.empty();
+            default -> objectMethod(p, m.getName(), args);
+        });
+    }
+
+    private static Object objectMethod(Object proxy, String name, Object[] args) {
+        return switch (name) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "InMemoryRepository@" + Integer.toHexString(System.identityHashCode(proxy));
+            default -> throw new UnsupportedOperationException(name + " is not supported by the in-memory stand-in");
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.orderdemo.bench.support;
+
+import com.example.orderdemo.model.Order;
+import com.example.orderdemo.model.OrderStatus;
+import com.example.orderdemo.repository.OrderRepository;
+import com.example.orderdemo.rocketmq.OrderEventPublisher;
+import com.example.orderdemo.rocketmq.OrderTransactionChecker;
+import com.example.orderdemo.rocketmq.ProducerPool;
+import com.example.orderdemo.rocketmq.PublishSpool;
+import com.example.orderdemo.service.DelayMessageCloseEngine;
+import com.example.orderdemo.service.IdempotentService;
+import com.example.orderdemo.service.OrderService;
+import com.example.orderdemo.service.OrderStateMachine;
+import com.example.orderdemo.service.SnowflakeOrderIdGenerator;
+import com.example.orderdemo.sharding.ShardRouter;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * The OrderService object graph wired by hand: real codec, publisher, producer pool, dedup
+ * cache and transaction checker; repositories and brokers replaced by in-memory stand-ins.
+ * What remains is the CPU and allocation cost of our own code on each hot path.
+ */
+public class OrderFixture implements AutoCloseable {
+    public final Map<String, Order> orders = new ConcurrentHashMap<>();
+    public final OrderRepository orderRepo;
+    /* a single shard: pinning and routing are no-ops, as with app.sharding.enabled=false */
+    public final ShardRouter shards = new ShardRouter(1);
+    public final IdempotentService idem;
+    public final OrderTransactionChecker txnChecker;
+    public final ProducerPool fifoProducers;
+    public final OrderEventPublisher publisher;
+    public final OrderService orderService;
+    /* the same registry type as production, so meter recording costs what it costs there */
+    public final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    public OrderFixture() {
+        this(Duration.ZERO, UnaryOperator.identity());
+    }
+
+    /**
+     * @param brokerLatency round trip of every blocking producer call (half message, delay send, commit)
+     * @param decorateRepo  wraps the map-backed order repository, e.g. to add database latency
+     */
+    public OrderFixture(Duration brokerLatency, UnaryOperator<OrderRepository> decorateRepo) {
+        this.orderRepo = decorateRepo.apply(InMemoryRepositories.orders(orders));
+        this.idem = new IdempotentService(InMemoryRepositories.messageLogs(), new JdbcTemplate(), shards, registry,
+                1_000_000, Duration.ofMinutes(10), Duration.ofDays(7));
+        this.txnChecker = new OrderTransactionChecker(orderRepo, shards, registry, 1_000_000, Duration.ofMinutes(30),
+                Duration.ofMillis(10), 500, Duration.ofSeconds(3));
+        this.fifoProducers = new ProducerPool(new Producer[]{new StubProducer(brokerLatency), new StubProducer(brokerLatency)}, 4096, registry);
+        ClientServiceProvider provider = ClientServiceProvider.loadService();
+        PublishSpool spool = new PublishSpool(fifoProducers, provider, registry, false, "spool", DataSize.ofMegabytes(64),
+                DataSize.ofGigabytes(1), false, Duration.ofSeconds(2), 100, Duration.ofSeconds(3), Duration.ofSeconds(1),
+                Duration.ofSeconds(30));
+        this.publisher = new OrderEventPublisher(provider, fifoProducers, spool, new StubProducer(brokerLatency), registry,
+                "order_fifo_topic", "order_txn_topic", "order_delay_topic", "binary");
+        this.orderService = new OrderService(orderRepo, publisher, idem,
+                new DelayMessageCloseEngine(publisher, Duration.ofMinutes(30)), txnChecker, event -> { },
+                new OrderStateMachine(orderRepo, new JdbcTemplate(), event -> { }, shards),
+                new SnowflakeOrderIdGenerator(1), shards);
+    }
+
+    /** Insert an order row directly, bypassing the create flow. */
+    public Order seed(String orderId, OrderStatus status) {
+        Order o = new Order();
+        o.setOrderId(orderId);
+        o.setAmount(new BigDecimal("99.90"));
+        o.setStatus(status);
+        orders.put(orderId, o);
+        return o;
+    }
+
+    /** Run the call as if inside a Spring transaction that commits: synchronizations fire afterwards. */
+    public static <T> T inCommittedTx(Callable<T> call) throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            T result = call.call();
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            return result;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        txnChecker.shutdown();
+        fifoProducers.close();
+    }
+}
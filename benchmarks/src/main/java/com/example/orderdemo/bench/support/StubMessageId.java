@@ -0,0 +1,15 @@
+package com.example.orderdemo.bench.support;
+
+import org.apache.rocketmq.client.apis.message.MessageId;
+
+public record StubMessageId(String id) implements MessageId {
+    @Override
+    public String getVersion() {
+        return "V1";
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
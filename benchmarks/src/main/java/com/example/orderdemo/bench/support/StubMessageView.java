@@ -0,0 +1,83 @@
+package com.example.orderdemo.bench.support;
+
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/** Delivered message as the push consumer hands it to a listener (read-only body, like MessageViewImpl). */
+public class StubMessageView implements MessageView {
+    private final MessageId messageId;
+    private final String topic;
+    private final byte[] body;
+    private final String tag;
+    private final String key;
+
+    public StubMessageView(String messageId, String topic, String tag, String key, byte[] body) {
+        this.messageId = new StubMessageId(messageId);
+        this.topic = topic;
+        this.tag = tag;
+        this.key = key;
+        this.body = body;
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public ByteBuffer getBody() {
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Optional<String> getTag() {
+        return Optional.ofNullable(tag);
+    }
+
+    @Override
+    public Collection<String> getKeys() {
+        return List.of(key);
+    }
+
+    @Override
+    public Optional<String> getMessageGroup() {
+        return Optional.of(key);
+    }
+
+    @Override
+    public Optional<Long> getDeliveryTimestamp() {
+        return Optional.empty();
+    }
+
+    @Override
+    public String getBornHost() {
+        return "bench";
+    }
+
+    @Override
+    public long getBornTimestamp() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public int getDeliveryAttempt() {
+        return 1;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.orderdemo.bench.support;
+
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.RecallReceipt;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Producer that acknowledges every send immediately, so only the caller's own work is measured.
+ * With a latency, blocking sends and the transaction commit / rollback park the caller for that long,
+ * standing in for the proxy round trip (async sends still complete at once).
+ */
+public class StubProducer implements Producer {
+    private static final MessageId MESSAGE_ID = new StubMessageId("0100000000000000000000000000");
+    private static final SendReceipt RECEIPT = new SendReceipt() {
+        @Override
+        public MessageId getMessageId() {
+            return MESSAGE_ID;
+        }
+
+        @Override
+        public String getRecallHandle() {
+            return null;
+        }
+    };
+    private static final CompletableFuture<SendReceipt> DONE = CompletableFuture.completedFuture(RECEIPT);
+    private final long latencyNanos;
+    private final Transaction tx = new Transaction() {
+        @Override
+        public void commit() {
+            roundTrip();
+        }
+
+        @Override
+        public void rollback() {
+            roundTrip();
+        }
+    };
+
+    public StubProducer() {
+        this(Duration.ZERO);
+    }
+
+    public StubProducer(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    private void roundTrip() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @Override
+    public SendReceipt send(Message message) {
+        roundTrip();
+        return RECEIPT;
+    }
+
+    @Override
+    public SendReceipt send(Message message, Transaction transaction) {
+        roundTrip();
+        return RECEIPT;
+    }
+
+    @Override
+    public CompletableFuture<SendReceipt> sendAsync(Message message) {
+        return DONE;
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        return tx;
+    }
+
+    @Override
+    public RecallReceipt recallMessage(String topic, String recallHandle) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<RecallReceipt> recallMessageAsync(String topic, String recallHandle) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.orderdemo.bench.threads;
+
+import com.example.orderdemo.bench.support.OrderFixture;
+import com.example.orderdemo.repository.OrderRepository;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Platform vs virtual threads on the synchronous create path ({@code OrderService.create}).
+ * Requests run the real service code from {@link OrderFixture}; the broker and the database are
+ * replaced by fixed latencies so the comparison is about the threads that wait on them:
+ * <ul>
+ *   <li>{@code pool}: a fixed pool of {@code --poolThreads} platform threads (Tomcat's default max is 200)</li>
+ *   <li>{@code platform}: one new platform thread per request</li>
+ *   <li>{@code virtual}: one new virtual thread per request ({@code spring.threads.virtual.enabled=true})</li>
+ * </ul>
+ * Each request holds a "connection" for the whole transaction, as {@code @Transactional} does:
+ * {@code --connections} bounds them like the Hikari pool (0 = unbounded). Database waits happen either
+ * inside a monitor ({@code --driver=monitor}, like Connector/J 8.x) or not ({@code --driver=lock}, 9.x),
+ * which is what decides whether a virtual thread pins its carrier.
+ * <p>
+ * One mode per JVM, so resident memory is comparable:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.orderdemo.bench.threads.ThreadModeComparison \
+ *      --mode=virtual --concurrency=2000 --brokerLatency=2ms --dbLatency=1ms
+ * </pre>
+ */
+public class ThreadModeComparison {
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final String mode;
+    private final int concurrency;
+    private final int poolThreads;
+    private final Duration warmup;
+    private final Duration duration;
+    private final long dbLatencyNanos;
+    private final boolean monitorDriver;
+    private final int connectionLimit;
+    private final Semaphore connections;
+    private final OrderFixture fixture;
+    private final Recorder latency = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong peakRssKb = new AtomicLong();
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+    private volatile boolean running = true;
+
+    ThreadModeComparison(Map<String, String> opts) {
+        this.mode = opts.getOrDefault("mode", "virtual");
+        this.concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "2000"));
+        this.poolThreads = Integer.parseInt(opts.getOrDefault("poolThreads", "200"));
+        this.warmup = parseDuration(opts.getOrDefault("warmup", "5s"));
+        this.duration = parseDuration(opts.getOrDefault("duration", "20s"));
+        this.dbLatencyNanos = parseDuration(opts.getOrDefault("dbLatency", "1ms")).toNanos();
+        this.monitorDriver = "monitor".equals(opts.getOrDefault("driver", "lock"));
+        this.connectionLimit = Integer.parseInt(opts.getOrDefault("connections", "0"));
+        this.connections = connectionLimit > 0 ? new Semaphore(connectionLimit) : null;
+        this.fixture = new OrderFixture(parseDuration(opts.getOrDefault("brokerLatency", "2ms")), this::withDbLatency);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (!a.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + a);
+            }
+            opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        new ThreadModeComparison(opts).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        ExecutorService executor = switch (mode) {
+            case "pool" -> new ThreadPoolExecutor(poolThreads, poolThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), Thread.ofPlatform().name("pool-", 0).daemon(true).factory());
+            case "platform" -> Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("req-", 0).daemon(true).factory());
+            case "virtual" -> Executors.newVirtualThreadPerTaskExecutor();
+            default -> throw new IllegalArgumentException("--mode must be pool, platform or virtual");
+        };
+        Thread driver = Thread.ofPlatform().name("driver").daemon(true).start(() -> drive(executor));
+        Thread sampler = Thread.ofPlatform().name("sampler").daemon(true).start(this::sample);
+
+        TimeUnit.MILLISECONDS.sleep(warmup.toMillis());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        latency.reset();
+        completed.reset();
+        errors.reset();
+        peakHeapBytes.set(0);
+        long start = System.nanoTime();
+        TimeUnit.MILLISECONDS.sleep(duration.toMillis());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long done = completed.sum();
+        Histogram h = latency.getIntervalHistogram();
+        running = false;
+
+        System.out.printf("%-8s conc=%-5d conns=%-4s driver=%-7s %9.0f ops/s  p50=%7.2fms p99=%7.2fms p99.9=%7.2fms  " +
+                        "peakThreads=%-5d peakRss=%5dMB peakHeap=%5dMB errors=%d%n",
+                mode, concurrency, connectionLimit > 0 ? String.valueOf(connectionLimit) : "-",
+                monitorDriver ? "monitor" : "lock", done / seconds,
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6,
+                threads.getPeakThreadCount(), peakRssKb.get() / 1024, peakHeapBytes.get() >> 20, errors.sum());
+        driver.join(TimeUnit.SECONDS.toMillis(5));
+        sampler.interrupt();
+        fixture.close();
+    }
+
+    /** Closed loop: keep {@code concurrency} requests in flight; latency includes time queued in the executor. */
+    private void drive(ExecutorService executor) {
+        Semaphore inFlight = new Semaphore(concurrency);
+        BigDecimal amount = new BigDecimal("99.90");
+        while (running) {
+            inFlight.acquireUninterruptibly();
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    request(amount);
+                    latency.recordValue(Math.min(MAX_LATENCY_NANOS, System.nanoTime() - submitted));
+                    completed.increment();
+                } catch (Throwable t) {
+                    errors.increment();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void request(BigDecimal amount) throws Exception {
+        if (connections != null) {
+            connections.acquire();
+        }
+        try {
+            dbRoundTrip();  // begin
+            String orderId = OrderFixture.inCommittedTx(() -> fixture.orderService.create(amount));
+            dbRoundTrip();  // commit
+            fixture.orders.remove(orderId);  // keep the stand-in table from growing over the run
+        } finally {
+            if (connections != null) {
+                connections.release();
+            }
+        }
+    }
+
+    private OrderRepository withDbLatency(OrderRepository delegate) {
+        return (OrderRepository) Proxy.newProxyInstance(OrderRepository.class.getClassLoader(),
+                new Class<?>[]{OrderRepository.class}, (p, m, args) -> {
+                    if ("save".equals(m.getName())) {
+                        dbRoundTrip();
+                    }
+                    try {
+                        return m.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /*
+     * The monitor is the request's own thread object: never contended and never elided, so the only
+     * effect of --driver=monitor is that the wait happens while holding a monitor, as in Connector/J 8.x.
+     */
+    private void dbRoundTrip() {
+        if (dbLatencyNanos <= 0) {
+            return;
+        }
+        if (monitorDriver) {
+            synchronized (Thread.currentThread()) {
+                LockSupport.parkNanos(dbLatencyNanos);
+            }
+        } else {
+            LockSupport.parkNanos(dbLatencyNanos);
+        }
+    }
+
+    private void sample() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Path status = Path.of("/proc/self/status");
+        while (running) {
+            peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            if (Files.isReadable(status)) {
+                try {
+                    for (String line : Files.readAllLines(status)) {
+                        if (line.startsWith("VmRSS:")) {
+                            long kb = Long.parseLong(line.replaceAll("\\D", ""));
+                            peakRssKb.accumulateAndGet(kb, Math::max);
+                        }
+                    }
+                } catch (IOException | NumberFormatException ignored) {
+                    // not on Linux: RSS stays 0
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static Duration parseDuration(String s) {
+        if (s.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+        }
+        if (s.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        if (s.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(s));
+    }
+}
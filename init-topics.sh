@@ -8,6 +8,12 @@ mqadmin updateTopic -n 127.0.0.1:9876 -t OrderTxnTopic  -c DefaultCluster -a +me
 echo "Topics and group created."
 '
 
+# Optional: one FIFO consumer group per event type (app.rocketmq.fifoGroups), each scaled on its own
+# docker exec -it rmqbroker sh -lc '
+# mqadmin updateSubGroup -n 127.0.0.1:9876 -c DefaultCluster -g OrderPaidGroup -o true
+# mqadmin updateSubGroup -n 127.0.0.1:9876 -c DefaultCluster -g OrderShippedGroup -o true
+# '
+
 # 3) DELAY topic for auto-close & its consumer group
 docker exec -it rmqbroker sh -lc '
 mqadmin updateTopic -n 127.0.0.1:9876 -t OrderDelayTopic -c DefaultCluster -a +message.type=DELAY
@@ -1,4 +1,6 @@
 -- Initializes demo schema and table
+-- With app.sharding.enabled=true run this on every shard: orders, message_log and order_outbox are split by
+-- CRC32(order_id) % N across them, dlq_message is only used on shard 0. db/h2-schema.sql is the H2 copy for shards-local.
 CREATE DATABASE IF NOT EXISTS orderdb CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
 USE orderdb;
 
@@ -8,16 +10,80 @@ CREATE TABLE IF NOT EXISTS orders (
     amount DECIMAL(12,2) NOT NULL,
     status VARCHAR(32) NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_status_created_at (status, created_at)
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- Add CANCELLED status through app logic (enum already governs values)
+-- Existing databases: ALTER TABLE orders ADD INDEX idx_status_created_at (status, created_at);
+
+-- Transactional outbox (app.order.createMode=outbox): rows are written with the order and sent by OutboxRelay
+-- sent: 0 pending -> 2 claimed (claimed_at set) -> 1 sent; unacknowledged rows go back to 0, and so do rows
+-- left claimed longer than app.order.outbox.claimTimeout.
+-- Existing databases: ALTER TABLE order_outbox ADD COLUMN claimed_at TIMESTAMP(3) NULL AFTER sent_at;
+CREATE TABLE IF NOT EXISTS order_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    topic VARCHAR(128) NOT NULL,
+    tag VARCHAR(64) NULL,
+    msg_keys VARCHAR(1024) NULL,
+    message_group VARCHAR(128) NULL,
+    deliver_at BIGINT NULL,
+    properties VARCHAR(1024) NULL,
+    body VARBINARY(16384) NOT NULL,
+    sent TINYINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3),
+    sent_at TIMESTAMP(3) NULL,
+    claimed_at TIMESTAMP(3) NULL,
+    INDEX idx_sent_id (sent, id)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Dead-lettered messages kept for replay (DlqStore / DlqReplayer, /admin/dlq)
+-- topic is where the replay publishes (OrderFifoTopic / OrderDelayTopic), not the %DLQ% topic.
+-- status: PENDING -> REPLAYING (claimed, claimed_at set) -> REPLAYED, or back to PENDING after a failed replay
+-- and FAILED after app.rocketmq.dlqReplay.maxAttempts of them. REPLAYING rows older than claimTimeout return to PENDING.
+-- Existing databases: ALTER TABLE dlq_message ADD COLUMN claimed_at TIMESTAMP(3) NULL AFTER replayed_at;
+-- To retry parked rows: UPDATE dlq_message SET status = 'PENDING', attempts = 0 WHERE status = 'FAILED';
+CREATE TABLE IF NOT EXISTS dlq_message (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    consumer_group VARCHAR(128) NOT NULL,
+    message_id VARCHAR(128) NOT NULL,
+    topic VARCHAR(128) NOT NULL,
+    tag VARCHAR(64) NULL,
+    msg_keys VARCHAR(1024) NULL,
+    message_group VARCHAR(128) NULL,
+    properties VARCHAR(1024) NULL,
+    body VARBINARY(16384) NOT NULL,
+    status VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    dead_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3),
+    replayed_at TIMESTAMP(3) NULL,
+    claimed_at TIMESTAMP(3) NULL,
+    UNIQUE KEY uk_group_message (consumer_group, message_id),
+    INDEX idx_status_group_id (status, consumer_group, id),
+    INDEX idx_status_replayed_at (status, replayed_at)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- Idempotency message log
+-- bucket = UTC epoch day (FLOOR(unix_millis / 86400000)); dedup only looks at buckets inside app.idempotent.retention.window.
+-- RANGE partitioned by bucket so expired days are dropped as whole partitions (DROP PARTITION, no row deletes).
+-- MySQL requires every unique key to contain the partition column, hence PRIMARY KEY (id, bucket) and uk_dedup_key_bucket.
+-- MessageLogRetention adds the daily partitions ahead of time by splitting pmax.
+-- Existing databases (rewrites the table, run in a maintenance window):
+--   ALTER TABLE message_log ADD COLUMN bucket INT NOT NULL DEFAULT 0;
+--   UPDATE message_log SET bucket = FLOOR(UNIX_TIMESTAMP(processed_at) / 86400);
+--   ALTER TABLE message_log DROP INDEX dedup_key, DROP PRIMARY KEY, ADD PRIMARY KEY (id, bucket),
+--     ADD UNIQUE KEY uk_dedup_key_bucket (dedup_key, bucket), ADD KEY idx_bucket (bucket);
+--   ALTER TABLE message_log PARTITION BY RANGE (bucket) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+-- Without partitioning the retention job falls back to chunked DELETE ... WHERE bucket < ? LIMIT n.
 CREATE TABLE IF NOT EXISTS message_log (
-                                           id BIGINT PRIMARY KEY AUTO_INCREMENT,
-                                           dedup_key VARCHAR(128) NOT NULL UNIQUE,
+                                           id BIGINT NOT NULL AUTO_INCREMENT,
+                                           dedup_key VARCHAR(128) NOT NULL,
     message_id VARCHAR(128) NULL,
     status VARCHAR(16) NOT NULL DEFAULT 'SUCCESS',
-    processed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_unicode_ci;
+    bucket INT NOT NULL,
+    processed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, bucket),
+    UNIQUE KEY uk_dedup_key_bucket (dedup_key, bucket),
+    KEY idx_bucket (bucket)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_unicode_ci
+    PARTITION BY RANGE (bucket) (PARTITION pmax VALUES LESS THAN MAXVALUE);